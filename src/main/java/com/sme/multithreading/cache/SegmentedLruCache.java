@@ -0,0 +1,426 @@
+package com.sme.multithreading.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded read-through cache with segmented LRU eviction.
+ * <p>
+ * A new entry is put in the probation segment. The second hit promotes the entry to the protected segment, so one-hit keys are evicted first and
+ * frequently used keys survive a scan. Both segments are ordered by access and guarded by one lock; the loader is always called outside the lock.
+ * </p>
+ * <p>
+ * Concurrent misses of the same key share one in-flight load (single-flight). An optional time-to-live expires entries after write.
+ * </p>
+ *
+ * @param <K> The type of keys;
+ * @param <V> The type of values.
+ */
+public class SegmentedLruCache<K, V>
+{
+    private static final double PROTECTED_RATIO = 0.8d;
+
+    private final int maximumSize;
+    private final int protectedSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier ticker;
+    private final Function<? super K, ? extends V> loader;
+
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    /**
+     * Creates the cache without expiration.
+     * 
+     * @param maximumSize The max count of entries;
+     * @param loader The function to load a value on miss.
+     */
+    public SegmentedLruCache(int maximumSize, Function<? super K, ? extends V> loader)
+    {
+        this(maximumSize, 0, TimeUnit.NANOSECONDS, loader);
+    }
+
+    /**
+     * Creates the cache.
+     * 
+     * @param maximumSize The max count of entries;
+     * @param timeToLive The time to keep an entry after write, zero means no expiration;
+     * @param unit The time unit of time to live;
+     * @param loader The function to load a value on miss.
+     */
+    public SegmentedLruCache(int maximumSize, long timeToLive, TimeUnit unit, Function<? super K, ? extends V> loader)
+    {
+        this(maximumSize, timeToLive, unit, loader, System::nanoTime);
+    }
+
+    SegmentedLruCache(int maximumSize, long timeToLive, TimeUnit unit, Function<? super K, ? extends V> loader, LongSupplier ticker)
+    {
+        if (maximumSize < 1)
+        {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        }
+        if (timeToLive < 0)
+        {
+            throw new IllegalArgumentException("Time to live must not be negative: " + timeToLive);
+        }
+
+        this.maximumSize = maximumSize;
+        this.protectedSize = Math.max(1, (int) (maximumSize * PROTECTED_RATIO));
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.loader = loader;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Returns a cached value or loads it.
+     * 
+     * @param key The key;
+     * @return Returns the value by key.
+     */
+    public V get(K key)
+    {
+        V value = getIfPresent(key);
+        if (value != null)
+        {
+            hitCount.increment();
+            return value;
+        }
+
+        missCount.increment();
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> loading = inFlight.putIfAbsent(key, future);
+        if (loading != null)
+        {
+            return join(loading);
+        }
+
+        try
+        {
+            // the previous owner could finish the load between the cache lookup and putIfAbsent
+            value = getIfPresent(key);
+            if (value == null)
+            {
+                value = load(key);
+                put(key, value);
+            }
+            future.complete(value);
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Discards a cached value by key.
+     * 
+     * @param key The key.
+     */
+    public void invalidate(K key)
+    {
+        lock.lock();
+        try
+        {
+            if (probation.remove(key) == null)
+            {
+                protectedSegment.remove(key);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a count of cached entries.
+     */
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            return probation.size() + protectedSegment.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     */
+    public Stats stats()
+    {
+        return new Stats(hitCount.sum(), missCount.sum(), loadCount.sum(), loadFailureCount.sum(), totalLoadTime.sum(), evictionCount.sum(),
+                expirationCount.sum());
+    }
+
+    private V getIfPresent(K key)
+    {
+        long now = ticker.getAsLong();
+
+        lock.lock();
+        try
+        {
+            Entry<V> entry = protectedSegment.get(key);
+            if (entry == null)
+            {
+                entry = probation.remove(key);
+                if (entry == null)
+                {
+                    return null;
+                }
+                if (isExpired(entry, now))
+                {
+                    expirationCount.increment();
+                    return null;
+                }
+                promote(key, entry);
+                return entry.value;
+            }
+
+            if (isExpired(entry, now))
+            {
+                protectedSegment.remove(key);
+                expirationCount.increment();
+                return null;
+            }
+            return entry.value;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private V load(K key)
+    {
+        long start = ticker.getAsLong();
+        try
+        {
+            V value = loader.apply(key);
+            if (value == null)
+            {
+                throw new IllegalStateException("Loader returned null value for " + key + " key");
+            }
+            loadCount.increment();
+            return value;
+        }
+        catch (RuntimeException | Error e)
+        {
+            loadFailureCount.increment();
+            throw e;
+        }
+        finally
+        {
+            totalLoadTime.add(ticker.getAsLong() - start);
+        }
+    }
+
+    private void put(K key, V value)
+    {
+        Entry<V> entry = new Entry<>(value, ticker.getAsLong());
+
+        lock.lock();
+        try
+        {
+            if (protectedSegment.containsKey(key))
+            {
+                protectedSegment.put(key, entry);
+                return;
+            }
+
+            probation.put(key, entry);
+            while (probation.size() + protectedSegment.size() > maximumSize)
+            {
+                removeEldest(probation.isEmpty() ? protectedSegment : probation);
+                evictionCount.increment();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // the caller holds the lock
+    private void promote(K key, Entry<V> entry)
+    {
+        protectedSegment.put(key, entry);
+        if (protectedSegment.size() > protectedSize)
+        {
+            Iterator<Map.Entry<K, Entry<V>>> iterator = protectedSegment.entrySet().iterator();
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            iterator.remove();
+            probation.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void removeEldest(LinkedHashMap<K, Entry<V>> segment)
+    {
+        Iterator<K> iterator = segment.keySet().iterator();
+        iterator.next();
+        iterator.remove();
+    }
+
+    private boolean isExpired(Entry<V> entry, long now)
+    {
+        return timeToLiveNanos > 0 && now - entry.writeTime >= timeToLiveNanos;
+    }
+
+    private static <V> V join(CompletableFuture<V> future)
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Holds a cached value with the time of write.
+     */
+    private static final class Entry<V>
+    {
+        private final V value;
+        private final long writeTime;
+
+        Entry(V value, long writeTime)
+        {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the cache statistics.
+     */
+    public static final class Stats
+    {
+        private final long hitCount;
+        private final long missCount;
+        private final long loadCount;
+        private final long loadFailureCount;
+        private final long totalLoadTime;
+        private final long evictionCount;
+        private final long expirationCount;
+
+        Stats(long hitCount, long missCount, long loadCount, long loadFailureCount, long totalLoadTime, long evictionCount, long expirationCount)
+        {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadCount = loadCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTime = totalLoadTime;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+        }
+
+        public long getHitCount()
+        {
+            return hitCount;
+        }
+
+        /**
+         * Returns a count of misses including the misses that joined an in-flight load.
+         */
+        public long getMissCount()
+        {
+            return missCount;
+        }
+
+        public long getLoadCount()
+        {
+            return loadCount;
+        }
+
+        public long getLoadFailureCount()
+        {
+            return loadFailureCount;
+        }
+
+        /**
+         * Returns the total time spent in the loader in nanoseconds.
+         */
+        public long getTotalLoadTime()
+        {
+            return totalLoadTime;
+        }
+
+        public long getEvictionCount()
+        {
+            return evictionCount;
+        }
+
+        public long getExpirationCount()
+        {
+            return expirationCount;
+        }
+
+        /**
+         * Returns the ratio of hits to all requests.
+         */
+        public double getHitRate()
+        {
+            long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0d : (double) hitCount / requestCount;
+        }
+
+        /**
+         * Returns the average time of one load in nanoseconds.
+         */
+        public double getAverageLoadPenalty()
+        {
+            long count = loadCount + loadFailureCount;
+            return count == 0 ? 0.0d : (double) totalLoadTime / count;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Stats [hitCount=" + hitCount + ", missCount=" + missCount + ", loadCount=" + loadCount + ", loadFailureCount=" + loadFailureCount
+                    + ", totalLoadTime=" + totalLoadTime + ", evictionCount=" + evictionCount + ", expirationCount=" + expirationCount + "]";
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.sme.multithreading.consumerproducer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sme.multithreading.model.Message;
+
+/**
+ * Consumes messages from {@link BlockingQueue} in batches.
+ * <p>
+ * A consumer that calls {@link BlockingQueue#take()} per message pays a lock handoff and often a wakeup per message. The batch consumer waits for
+ * the first message and drains up to N - 1 messages more with one {@link BlockingQueue#drainTo(java.util.Collection, int)} call, so a batch has up
+ * to N messages and the cost is paid once per batch.
+ * </p>
+ * <p>
+ * N adapts to the load: it doubles while the drain fills the batches, i.e. the queue keeps up with N, and it halves when the handler takes longer
+ * than the latency target, so a message does not wait behind a too large batch. The decision takes no more calls of the queue.
+ * </p>
+ */
+public class BatchConsumer implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchConsumer.class);
+
+    // the thread checks the running flag at least once per interval
+    private static final long POLL_TIMEOUT_MILLIS = 10;
+
+    private final BlockingQueue<Message> queue;
+    private final Consumer<List<Message>> handler;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long latencyTargetNanos;
+    private final Thread thread;
+
+    private final LongAdder messageCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    private volatile int batchSize;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts the consumer.
+     * 
+     * @param queue The queue to consume;
+     * @param handler The handler of batches, called in the consumer thread, every call gets a new list the handler may keep;
+     * @param minBatchSize The min size of batch;
+     * @param maxBatchSize The max size of batch;
+     * @param latencyTarget The max time to handle one batch;
+     * @param unit The time unit of latency target.
+     */
+    public BatchConsumer(BlockingQueue<Message> queue, Consumer<List<Message>> handler, int minBatchSize, int maxBatchSize, long latencyTarget,
+            TimeUnit unit)
+    {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize)
+        {
+            throw new IllegalArgumentException("Expects 1 <= minBatchSize <= maxBatchSize, but got " + minBatchSize + " and " + maxBatchSize);
+        }
+
+        this.queue = Objects.requireNonNull(queue, "queue");
+        this.handler = Objects.requireNonNull(handler, "handler");
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.latencyTargetNanos = unit.toNanos(latencyTarget);
+        this.batchSize = minBatchSize;
+
+        this.thread = new Thread(this::consume, "BatchConsumer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void consume()
+    {
+        while (running)
+        {
+            try
+            {
+                Message first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null)
+                {
+                    int size = batchSize;
+                    List<Message> batch = new ArrayList<>(size);
+                    batch.add(first);
+                    queue.drainTo(batch, size - 1);
+                    handle(batch, size);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                LOGGER.error("{} thread is interrupted", Thread.currentThread().getName());
+                return;
+            }
+        }
+
+        // handle the rest of messages on close
+        List<Message> batch = new ArrayList<>(maxBatchSize);
+        while (queue.drainTo(batch, maxBatchSize) > 0)
+        {
+            handle(batch, maxBatchSize);
+            batch = new ArrayList<>(maxBatchSize);
+        }
+    }
+
+    // the handler may keep the batch, so the batch is not reused
+    private void handle(List<Message> batch, int requestedSize)
+    {
+        int size = batch.size();
+        long start = System.nanoTime();
+        try
+        {
+            handler.accept(batch);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("Handler failed with batch of {} messages", size, e);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        messageCount.add(size);
+        batchCount.increment();
+        adapt(size, requestedSize, elapsed);
+    }
+
+    private void adapt(int size, int requestedSize, long elapsed)
+    {
+        int current = batchSize;
+        if (elapsed > latencyTargetNanos)
+        {
+            batchSize = Math.max(minBatchSize, current >> 1);
+        }
+        else if (size == requestedSize)
+        {
+            // the drain has filled the batch
+            batchSize = Math.min(maxBatchSize, current << 1);
+        }
+    }
+
+    /**
+     * Returns the current max size of batch.
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Returns the count of handled messages.
+     */
+    public long getMessageCount()
+    {
+        return messageCount.sum();
+    }
+
+    /**
+     * Returns the count of handled batches.
+     */
+    public long getBatchCount()
+    {
+        return batchCount.sum();
+    }
+
+    /**
+     * Returns the average size of handled batches.
+     */
+    public double getAverageBatchSize()
+    {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) messageCount.sum() / batches;
+    }
+
+    /**
+     * Stops the consumer after the messages left in the queue are handled.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        Uninterruptibles.joinUninterruptibly(thread);
+    }
+}
@@ -0,0 +1,482 @@
+package com.sme.multithreading.consumerproducer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Multi-stage producer/consumer pipeline with backpressure.
+ * <p>
+ * Every stage has own bounded queue and own pool of worker threads. A worker takes an item from the stage queue, applies the stage function and
+ * puts the result to the queue of the next stage. When a stage cannot keep up, its queue fills up, the workers of the previous stage block on put,
+ * its queue fills up in turn, and finally {@link #submit(Object)} blocks the producer. So the backpressure propagates upstream stage by stage and
+ * the memory is bounded by the sum of queue capacities.
+ * </p>
+ * <p>
+ * Each {@link Stage} exposes the queue depth, the service time, the time spent blocked on the next stage and the utilization to find the bottleneck
+ * at runtime, see {@link #getBottleneck()}.
+ * </p>
+ *
+ * @param <I> The type of input items.
+ */
+public class Pipeline<I> implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Pipeline.class);
+
+    // the workers check the running flag at least once per interval
+    private static final long POLL_TIMEOUT_MILLIS = 10;
+    // the flag of state, the rest bits count the submits in progress
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    private final List<Stage> stages;
+    // one word for the closed flag and the submits in progress, so a submit is either rejected or waited by close
+    private final AtomicInteger state = new AtomicInteger();
+
+    private Pipeline(List<Stage> stages)
+    {
+        this.stages = Collections.unmodifiableList(stages);
+        this.stages.forEach(Stage::start);
+    }
+
+    /**
+     * Creates the builder of pipeline.
+     * 
+     * @param <T> The type of input items.
+     * @return Returns the builder.
+     */
+    public static <T> Builder<T, T> builder()
+    {
+        return new Builder<>(new ArrayList<>());
+    }
+
+    /**
+     * Puts the item into the first stage, waiting if the stage queue is full.
+     * 
+     * @param item The item.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void submit(I item) throws InterruptedException
+    {
+        enter();
+        try
+        {
+            stages.get(0).put(item);
+        }
+        finally
+        {
+            state.decrementAndGet();
+        }
+    }
+
+    /**
+     * Puts the item into the first stage, waiting up to the timeout if the stage queue is full.
+     * 
+     * @param item The item;
+     * @param timeout The time to wait;
+     * @param unit The time unit of timeout.
+     * @return Returns true if the item is accepted, false if the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean offer(I item, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        enter();
+        try
+        {
+            return stages.get(0).offer(item, timeout, unit);
+        }
+        finally
+        {
+            state.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the stages in the order of processing.
+     */
+    public List<Stage> getStages()
+    {
+        return stages;
+    }
+
+    /**
+     * Returns the stage with the highest utilization, i.e. the stage that limits the throughput of pipeline.
+     */
+    public Stage getBottleneck()
+    {
+        return stages.stream().max(Comparator.comparingDouble(Stage::getUtilization)).get();
+    }
+
+    /**
+     * Stops accepting new items, waits until the submits in progress put their items and every stage processes the accepted ones, and stops the
+     * workers.
+     */
+    @Override
+    public void close()
+    {
+        int current;
+        do
+        {
+            current = state.get();
+            if ((current & CLOSED) != 0)
+            {
+                return;
+            }
+        }
+        while (!state.compareAndSet(current, current | CLOSED));
+
+        // the workers keep running, so a submit blocked on the full queue completes
+        while (state.get() != CLOSED)
+        {
+            Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+        }
+        for (Stage stage : stages)
+        {
+            stage.awaitIdle();
+            stage.stop();
+        }
+    }
+
+    // registers the submit in progress unless the pipeline is closed
+    private void enter()
+    {
+        int current;
+        do
+        {
+            current = state.get();
+            if ((current & CLOSED) != 0)
+            {
+                throw new IllegalStateException("Pipeline is closed");
+            }
+        }
+        while (!state.compareAndSet(current, current + 1));
+    }
+
+    /**
+     * The builder of {@link Pipeline}.
+     *
+     * @param <I> The type of input items of pipeline;
+     * @param <O> The type of output items of the last added stage.
+     */
+    public static final class Builder<I, O>
+    {
+        private final List<Stage> stages;
+
+        private Builder(List<Stage> stages)
+        {
+            this.stages = stages;
+        }
+
+        /**
+         * Adds the stage that transforms items. A null result drops the item.
+         * 
+         * @param <R> The type of output items of the stage;
+         * @param name The name of stage;
+         * @param parallelism The count of worker threads;
+         * @param capacity The capacity of stage queue;
+         * @param function The function of stage.
+         * @return Returns the builder.
+         */
+        public <R> Builder<I, R> stage(String name, int parallelism, int capacity, Function<? super O, ? extends R> function)
+        {
+            Objects.requireNonNull(function, "function");
+            addStage(name, parallelism, capacity, function);
+            return new Builder<>(stages);
+        }
+
+        /**
+         * Adds the last stage that consumes items and builds the started pipeline.
+         * 
+         * @param name The name of stage;
+         * @param parallelism The count of worker threads;
+         * @param capacity The capacity of stage queue;
+         * @param consumer The consumer of stage.
+         * @return Returns the pipeline.
+         */
+        public Pipeline<I> build(String name, int parallelism, int capacity, Consumer<? super O> consumer)
+        {
+            Objects.requireNonNull(consumer, "consumer");
+            addStage(name, parallelism, capacity, item ->
+            {
+                consumer.accept(item);
+                return null;
+            });
+            return new Pipeline<>(stages);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addStage(String name, int parallelism, int capacity, Function<? super O, ?> function)
+        {
+            Stage stage = new Stage(name, parallelism, capacity, (Function<Object, Object>) function);
+            if (!stages.isEmpty())
+            {
+                stages.get(stages.size() - 1).next = stage;
+            }
+            stages.add(stage);
+        }
+    }
+
+    /**
+     * The stage of pipeline with own queue and workers.
+     */
+    public static final class Stage
+    {
+        private final String name;
+        private final int parallelism;
+        private final int capacity;
+        private final BlockingQueue<Object> queue;
+        private final Function<Object, Object> function;
+        private final ExecutorService executor;
+        private Stage next;
+        private long startTime;
+
+        // accepted and completed counts tell when the stage is idle, an item in a worker is neither in the queue nor completed
+        private final AtomicLong acceptedCount = new AtomicLong();
+        private final AtomicLong completedCount = new AtomicLong();
+        private final LongAdder failedCount = new LongAdder();
+        private final LongAdder serviceTime = new LongAdder();
+        private final LongAdder blockedTime = new LongAdder();
+
+        private volatile boolean running = true;
+
+        private Stage(String name, int parallelism, int capacity, Function<Object, Object> function)
+        {
+            if (parallelism < 1 || capacity < 1)
+            {
+                throw new IllegalArgumentException("Expects positive parallelism and capacity of " + name + " stage");
+            }
+
+            this.name = name;
+            this.parallelism = parallelism;
+            this.capacity = capacity;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.function = function;
+            this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("Pipeline-" + name + "-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+
+        private void start()
+        {
+            startTime = System.nanoTime();
+            for (int i = 0; i < parallelism; i++)
+            {
+                executor.execute(this::work);
+            }
+        }
+
+        private void put(Object item) throws InterruptedException
+        {
+            acceptedCount.incrementAndGet();
+            try
+            {
+                queue.put(item);
+            }
+            catch (InterruptedException e)
+            {
+                acceptedCount.decrementAndGet();
+                throw e;
+            }
+        }
+
+        private boolean offer(Object item, long timeout, TimeUnit unit) throws InterruptedException
+        {
+            acceptedCount.incrementAndGet();
+            boolean accepted = false;
+            try
+            {
+                accepted = queue.offer(item, timeout, unit);
+                return accepted;
+            }
+            finally
+            {
+                if (!accepted)
+                {
+                    acceptedCount.decrementAndGet();
+                }
+            }
+        }
+
+        private void work()
+        {
+            while (running)
+            {
+                Object item;
+                try
+                {
+                    item = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                if (item != null)
+                {
+                    try
+                    {
+                        process(item);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        LOGGER.error("{} stage is interrupted while passing item to {} stage", name, next.name);
+                        return;
+                    }
+                    finally
+                    {
+                        completedCount.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        private void process(Object item) throws InterruptedException
+        {
+            Object result;
+            long start = System.nanoTime();
+            try
+            {
+                result = function.apply(item);
+            }
+            catch (RuntimeException e)
+            {
+                failedCount.increment();
+                LOGGER.error("{} stage failed with {} item", name, item, e);
+                return;
+            }
+            finally
+            {
+                serviceTime.add(System.nanoTime() - start);
+            }
+
+            if (result != null && next != null)
+            {
+                start = System.nanoTime();
+                next.put(result);
+                blockedTime.add(System.nanoTime() - start);
+            }
+        }
+
+        private void awaitIdle()
+        {
+            while (completedCount.get() < acceptedCount.get())
+            {
+                Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void stop()
+        {
+            running = false;
+            executor.shutdown();
+            Uninterruptibles.awaitTerminationUninterruptibly(executor);
+        }
+
+        /**
+         * Returns the name of stage.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the count of worker threads.
+         */
+        public int getParallelism()
+        {
+            return parallelism;
+        }
+
+        /**
+         * Returns the count of items waiting in the stage queue.
+         */
+        public int getQueueDepth()
+        {
+            return queue.size();
+        }
+
+        /**
+         * Returns the capacity of stage queue.
+         */
+        public int getQueueCapacity()
+        {
+            return capacity;
+        }
+
+        /**
+         * Returns the count of processed items.
+         */
+        public long getProcessedCount()
+        {
+            return completedCount.get();
+        }
+
+        /**
+         * Returns the count of items failed in the stage function.
+         */
+        public long getFailedCount()
+        {
+            return failedCount.sum();
+        }
+
+        /**
+         * Returns the average time of stage function in nanoseconds.
+         */
+        public long getAverageServiceTime()
+        {
+            long processed = completedCount.get();
+            return processed == 0 ? 0 : serviceTime.sum() / processed;
+        }
+
+        /**
+         * Returns the total time the workers waited for space in the queue of the next stage in nanoseconds.
+         */
+        public long getBlockedTime()
+        {
+            return blockedTime.sum();
+        }
+
+        /**
+         * Returns the share of time the workers spent in the stage function, from 0 to 1.
+         */
+        public double getUtilization()
+        {
+            long elapsed = System.nanoTime() - startTime;
+            return elapsed <= 0 ? 0 : Math.min(1, (double) serviceTime.sum() / elapsed / parallelism);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[parallelism=%d, depth=%d/%d, processed=%d, failed=%d, service=%d us, blocked=%d ms, utilization=%.2f]",
+                    name,
+                    parallelism,
+                    getQueueDepth(),
+                    capacity,
+                    getProcessedCount(),
+                    getFailedCount(),
+                    TimeUnit.NANOSECONDS.toMicros(getAverageServiceTime()),
+                    TimeUnit.NANOSECONDS.toMillis(getBlockedTime()),
+                    getUtilization());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.sme.multithreading.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sme.multithreading.model.ScheduledMessage;
+
+/**
+ * Releases {@link ScheduledMessage}s to the consumer at their deadline.
+ * <p>
+ * Producers put messages in a lock-free queue and never take a lock, unlike {@link DelayQueue} where producers and consumers share one lock. The
+ * dispatcher thread moves the messages to a private heap, waits for the earliest deadline and hands due messages to the consumer in
+ * bounded batches. The thread parks until a few microseconds before the deadline and yields the rest to cut the park jitter.
+ * </p>
+ * <p>
+ * {@link #drainTo(Collection)} drains all due messages without waiting, so the dispatcher can be polled as well.
+ * </p>
+ */
+public class DeadlineDispatcher implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadlineDispatcher.class);
+
+    // bounds the time the first message of a batch waits for the last one to be drained
+    private static final int MAX_BATCH_SIZE = 1_024;
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // the thread wakes up at least once per interval to move new messages to the heap, so the heap is ready by the deadline
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Consumer<List<ScheduledMessage>> consumer;
+    private final Thread thread;
+
+    private final Queue<ScheduledMessage> incoming = new ConcurrentLinkedQueue<>();
+    private final Lock lock = new ReentrantLock();
+    private final PriorityQueue<ScheduledMessage> heap = new PriorityQueue<>();
+
+    private final LongAdder offerCount = new LongAdder();
+    private final LongAdder dispatchCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile boolean parked;
+    private volatile long wakeupTime;
+
+    /**
+     * Creates and starts the dispatcher.
+     * 
+     * @param consumer The consumer of due messages, called in the dispatcher thread.
+     */
+    public DeadlineDispatcher(Consumer<List<ScheduledMessage>> consumer)
+    {
+        this.consumer = consumer;
+        this.thread = new Thread(this::dispatch, "DeadlineDispatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Puts the message to release at its deadline.
+     * 
+     * @param message The message.
+     */
+    public void offer(ScheduledMessage message)
+    {
+        incoming.add(message);
+        offerCount.increment();
+
+        // wake up the dispatcher only if it sleeps past the new deadline
+        if (parked && message.getDeadline() - wakeupTime < 0)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Drains all messages due now.
+     * 
+     * @param collection The collection to add the messages to;
+     * @return Returns a count of drained messages.
+     */
+    public int drainTo(Collection<? super ScheduledMessage> collection)
+    {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Drains at most the given count of messages due now.
+     * 
+     * @param collection The collection to add the messages to;
+     * @param maxElements The max count of messages to drain;
+     * @return Returns a count of drained messages.
+     */
+    public int drainTo(Collection<? super ScheduledMessage> collection, int maxElements)
+    {
+        lock.lock();
+        try
+        {
+            transferIncoming();
+
+            long now = System.nanoTime();
+            int count = 0;
+            ScheduledMessage message;
+            while (count < maxElements && (message = heap.peek()) != null && message.getDeadline() - now <= 0)
+            {
+                collection.add(heap.poll());
+                count++;
+            }
+            return count;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a count of not dispatched messages.
+     */
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            transferIncoming();
+            return heap.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public long getOfferCount()
+    {
+        return offerCount.sum();
+    }
+
+    public long getDispatchCount()
+    {
+        return dispatchCount.sum();
+    }
+
+    public long getBatchCount()
+    {
+        return batchCount.sum();
+    }
+
+    /**
+     * Stops the dispatcher thread, not due messages are not released.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(thread);
+        Uninterruptibles.joinUninterruptibly(thread);
+    }
+
+    private void dispatch()
+    {
+        List<ScheduledMessage> batch = new ArrayList<>();
+        while (running)
+        {
+            if (drainTo(batch, MAX_BATCH_SIZE) > 0)
+            {
+                dispatchCount.add(batch.size());
+                batchCount.increment();
+                try
+                {
+                    consumer.accept(batch);
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.error("Consumer failed to process {} messages", batch.size(), e);
+                }
+                // the consumer may keep the batch
+                batch = new ArrayList<>();
+                continue;
+            }
+
+            awaitNextDeadline();
+        }
+    }
+
+    private void awaitNextDeadline()
+    {
+        long now = System.nanoTime();
+        long deadline = nextDeadline(now);
+        long wait = deadline - now;
+
+        if (wait <= SPIN_NANOS)
+        {
+            Thread.yield();
+            return;
+        }
+
+        long park = Math.min(wait - SPIN_NANOS, MAX_PARK_NANOS);
+        wakeupTime = now + park;
+        parked = true;
+
+        // a producer could offer the message before parked flag is set
+        if (incoming.isEmpty() && running)
+        {
+            LockSupport.parkNanos(this, park);
+        }
+        parked = false;
+    }
+
+    private long nextDeadline(long now)
+    {
+        lock.lock();
+        try
+        {
+            transferIncoming();
+            ScheduledMessage message = heap.peek();
+            return message != null ? message.getDeadline() : now + MAX_PARK_NANOS;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    // the caller holds the lock
+    private void transferIncoming()
+    {
+        ScheduledMessage message;
+        while ((message = incoming.poll()) != null)
+        {
+            heap.add(message);
+        }
+    }
+}
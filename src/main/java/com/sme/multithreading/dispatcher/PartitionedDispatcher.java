@@ -0,0 +1,365 @@
+package com.sme.multithreading.dispatcher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.queue.MpmcArrayQueue;
+
+/**
+ * Dispatches messages to N lanes by a key, every lane is drained by exactly one worker.
+ * <p>
+ * One FIFO queue with one consumer keeps the order but uses one core, a thread pool uses all cores but loses the order. Here all messages of a key
+ * go to the same lane, so the messages of a key are handled in the order of dispatch and the messages of different keys are handled in parallel.
+ * </p>
+ * <p>
+ * The key is hashed to one of {@link #SLOTS} slots and a table maps the slots to lanes. {@link #rebalance()} moves slots from the most loaded lane
+ * to the least loaded one when a hot key skews the load. A moved slot is fenced: the dispatch of its messages waits until the old lane handles
+ * the messages of the slot it has, so the order of a key survives the move.
+ * </p>
+ *
+ * @param <K> The type of message key.
+ */
+public class PartitionedDispatcher<K> implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedDispatcher.class);
+
+    /**
+     * The count of slots, the unit of rebalancing.
+     */
+    public static final int SLOTS = 1_024;
+
+    private static final int MIGRATING = -1;
+    private static final long POLL_TIMEOUT_MILLIS = 10;
+    private static final long FENCE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final Function<? super Message, ? extends K> keyFunction;
+    private final Consumer<? super Message> handler;
+    private final List<Lane> lanes = new ArrayList<>();
+
+    // slot -> lane, or MIGRATING while the slot is moved
+    private final AtomicIntegerArray slotLanes = new AtomicIntegerArray(SLOTS);
+    // dispatched and not handled messages of the slot
+    private final AtomicIntegerArray slotPending = new AtomicIntegerArray(SLOTS);
+    // dispatched messages of the slot since the last rebalancing
+    private final AtomicLongArray slotLoads = new AtomicLongArray(SLOTS);
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts the dispatcher.
+     * 
+     * @param laneCount The count of lanes and workers;
+     * @param laneCapacity The capacity of lane queue;
+     * @param keyFunction The function to get the key of message;
+     * @param handler The handler of messages, called in the lane workers.
+     */
+    public PartitionedDispatcher(int laneCount, int laneCapacity, Function<? super Message, ? extends K> keyFunction, Consumer<? super Message> handler)
+    {
+        if (laneCount < 1 || laneCount > SLOTS)
+        {
+            throw new IllegalArgumentException("Expects lane count in [1.." + SLOTS + "] range, but got " + laneCount);
+        }
+
+        this.keyFunction = Objects.requireNonNull(keyFunction, "keyFunction");
+        this.handler = Objects.requireNonNull(handler, "handler");
+
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            slotLanes.set(slot, slot % laneCount);
+        }
+        for (int i = 0; i < laneCount; i++)
+        {
+            lanes.add(new Lane(i, laneCapacity));
+        }
+    }
+
+    /**
+     * Puts the message to the lane of its key, waiting if the lane is full.
+     * 
+     * @param message The message.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void dispatch(Message message) throws InterruptedException
+    {
+        if (!running)
+        {
+            throw new IllegalStateException("Dispatcher is closed");
+        }
+
+        int slot = slotOf(keyFunction.apply(message));
+        while (true)
+        {
+            int lane = slotLanes.get(slot);
+            if (lane != MIGRATING)
+            {
+                slotPending.incrementAndGet(slot);
+                // the slot may start moving between the reads, then the rebalancing waits for this message or this message waits for the move
+                if (slotLanes.get(slot) == lane)
+                {
+                    try
+                    {
+                        lanes.get(lane).put(slot, message);
+                    }
+                    catch (InterruptedException | RuntimeException e)
+                    {
+                        // the message is not in the lane, so the rebalancing must not wait for it
+                        slotPending.decrementAndGet(slot);
+                        throw e;
+                    }
+                    slotLoads.incrementAndGet(slot);
+                    return;
+                }
+                slotPending.decrementAndGet(slot);
+            }
+
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(FENCE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Moves slots from the most loaded lanes to the least loaded one while it reduces the difference of their loads. The load of a slot is the count
+     * of messages dispatched since the previous rebalancing. The hottest slot of a lane is never moved, because it would only move the skew.
+     * 
+     * @return Returns the count of moved slots.
+     */
+    public synchronized int rebalance()
+    {
+        long[] loads = new long[SLOTS];
+        long[] laneLoads = new long[lanes.size()];
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            loads[slot] = slotLoads.getAndSet(slot, 0);
+            laneLoads[slotLanes.get(slot)] += loads[slot];
+        }
+
+        int moved = 0;
+        while (true)
+        {
+            int min = 0;
+            for (int i = 1; i < laneLoads.length; i++)
+            {
+                min = laneLoads[i] < laneLoads[min] ? i : min;
+            }
+
+            // the most loaded lane may have only the hot slot, then try the next one
+            int from = -1;
+            int slot = -1;
+            for (int lane : lanesByLoad(laneLoads))
+            {
+                slot = findSlotToMove(loads, lane, (laneLoads[lane] - laneLoads[min]) / 2);
+                if (slot >= 0)
+                {
+                    from = lane;
+                    break;
+                }
+            }
+            if (slot < 0)
+            {
+                break;
+            }
+
+            move(slot, min);
+            laneLoads[from] -= loads[slot];
+            laneLoads[min] += loads[slot];
+            moved++;
+        }
+
+        if (moved > 0)
+        {
+            LOGGER.debug("Moved {} slots, lane loads: {}", moved, laneLoads);
+        }
+        return moved;
+    }
+
+    private static int[] lanesByLoad(long[] laneLoads)
+    {
+        return IntStream.range(0, laneLoads.length)
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer lane) -> laneLoads[lane]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // finds the largest slot of the lane not larger than the limit, except the hottest one
+    private int findSlotToMove(long[] loads, int lane, long limit)
+    {
+        int hottest = -1;
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            if (slotLanes.get(slot) == lane && (hottest < 0 || loads[slot] > loads[hottest]))
+            {
+                hottest = slot;
+            }
+        }
+
+        int result = -1;
+        for (int slot = 0; slot < SLOTS; slot++)
+        {
+            if (slot != hottest && slotLanes.get(slot) == lane && loads[slot] > 0 && loads[slot] <= limit
+                && (result < 0 || loads[slot] > loads[result]))
+            {
+                result = slot;
+            }
+        }
+        return result;
+    }
+
+    private void move(int slot, int lane)
+    {
+        slotLanes.set(slot, MIGRATING);
+        while (slotPending.get(slot) > 0)
+        {
+            LockSupport.parkNanos(FENCE_PARK_NANOS);
+        }
+        slotLanes.set(slot, lane);
+    }
+
+    private static int slotOf(Object key)
+    {
+        int h = Objects.hashCode(key);
+        return (h ^ h >>> 16) & SLOTS - 1;
+    }
+
+    /**
+     * Returns the count of lanes.
+     */
+    public int getLaneCount()
+    {
+        return lanes.size();
+    }
+
+    /**
+     * Returns the lane of the key.
+     * 
+     * @param key The key of message.
+     * @return Returns the lane index, or -1 while the key is moved to another lane.
+     */
+    public int getLane(K key)
+    {
+        return slotLanes.get(slotOf(key));
+    }
+
+    /**
+     * Returns the count of messages waiting in every lane.
+     */
+    public int[] getBacklogs()
+    {
+        return lanes.stream().mapToInt(lane -> lane.queue.size()).toArray();
+    }
+
+    /**
+     * Returns the count of handled messages of every lane.
+     */
+    public long[] getHandledCounts()
+    {
+        return lanes.stream().mapToLong(lane -> lane.handledCount).toArray();
+    }
+
+    /**
+     * Stops the dispatcher after the lanes handle dispatched messages. Expects no {@link #dispatch(Message)} calls in progress.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        lanes.forEach(lane -> Uninterruptibles.joinUninterruptibly(lane.thread));
+    }
+
+    /**
+     * The lane with own queue and worker.
+     */
+    private final class Lane
+    {
+        private final BlockingQueue<Entry> queue;
+        private final Thread thread;
+        // written by the lane thread only
+        private volatile long handledCount;
+
+        private Lane(int index, int capacity)
+        {
+            this.queue = new MpmcArrayQueue<>(capacity);
+            this.thread = new Thread(this::work, "PartitionedDispatcher-lane-" + index);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private void put(int slot, Message message) throws InterruptedException
+        {
+            queue.put(new Entry(slot, message));
+        }
+
+        private void work()
+        {
+            while (running || !queue.isEmpty())
+            {
+                Entry entry;
+                try
+                {
+                    entry = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    LOGGER.error("{} thread is interrupted", Thread.currentThread().getName());
+                    return;
+                }
+
+                if (entry != null)
+                {
+                    handle(entry.slot, entry.message);
+                }
+            }
+        }
+
+        private void handle(int slot, Message message)
+        {
+            try
+            {
+                handler.accept(message);
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("Handler failed with {} message", message, e);
+            }
+            finally
+            {
+                handledCount++;
+                // the slot of dispatch, the handler may change the message and so its key
+                slotPending.decrementAndGet(slot);
+            }
+        }
+    }
+
+    /**
+     * The message with the slot it was dispatched to.
+     */
+    private static final class Entry
+    {
+        private final int slot;
+        private final Message message;
+
+        private Entry(int slot, Message message)
+        {
+            this.slot = slot;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.sme.multithreading.exchange;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Double buffer to hand the latest state from one writer to many readers without blocking the readers and without allocations.
+ * <p>
+ * The writer fills the back buffer while the readers read the front one, then {@link #publish()} flips the index of the front buffer. The next
+ * {@link #beginWrite()} reuses the old front buffer, so it invalidates the optimistic stamps of {@link StampedLock} first: a reader that still reads
+ * the old front buffer fails the validation and reads again from the new front one. The readers never take a lock and never wait for the writer,
+ * they repeat a read only when the writer laps them.
+ * </p>
+ * <p>
+ * Use {@link TripleBuffer} for one reader: it gets a buffer for exclusive use and never repeats a read.
+ * </p>
+ *
+ * @param <T> The type of buffer.
+ */
+public class DoubleBuffer<T>
+{
+    private final Object[] buffers = new Object[2];
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder retryCount = new LongAdder();
+
+    private volatile int front;
+    // owned by the writer
+    private boolean writing;
+
+    /**
+     * Creates the double buffer.
+     * 
+     * @param factory The factory of two buffers.
+     */
+    public DoubleBuffer(Supplier<? extends T> factory)
+    {
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = Objects.requireNonNull(factory.get());
+        }
+    }
+
+    /**
+     * Returns the back buffer to fill, called by the writer before it changes the buffer.
+     */
+    public T beginWrite()
+    {
+        if (!writing)
+        {
+            // no reader holds a read lock, so it never waits, but it fails the validation of readers of the back buffer
+            lock.unlockWrite(lock.writeLock());
+            writing = true;
+        }
+        return buffer(1 - front);
+    }
+
+    /**
+     * Publishes the back buffer, called by the writer.
+     */
+    public void publish()
+    {
+        if (!writing)
+        {
+            throw new IllegalStateException("Expects beginWrite() before publish()");
+        }
+        front = 1 - front;
+        writing = false;
+    }
+
+    /**
+     * Reads the latest published buffer, called by any count of readers.
+     * 
+     * @param <R> The type of result;
+     * @param reader The function to read the buffer, it may be called more than once if the writer overwrites the buffer during the call, so it
+     *            must not change the buffer and must not keep a reference to it.
+     * @return Returns the result of the function.
+     */
+    public <R> R read(Function<? super T, ? extends R> reader)
+    {
+        while (true)
+        {
+            long stamp = lock.tryOptimisticRead();
+            try
+            {
+                R result = reader.apply(buffer(front));
+                if (stamp != 0 && lock.validate(stamp))
+                {
+                    return result;
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // an inconsistent state may fail the function, it is an error only if the state is valid
+                if (stamp != 0 && lock.validate(stamp))
+                {
+                    throw e;
+                }
+            }
+            retryCount.increment();
+        }
+    }
+
+    /**
+     * Returns the count of reads repeated because the writer has overwritten the buffer.
+     */
+    public long getRetryCount()
+    {
+        return retryCount.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T buffer(int index)
+    {
+        return (T) buffers[index];
+    }
+}
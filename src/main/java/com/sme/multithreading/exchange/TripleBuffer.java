@@ -0,0 +1,89 @@
+package com.sme.multithreading.exchange;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Triple buffer to hand the latest state from one writer to one reader without locks and allocations.
+ * <p>
+ * Compare with wait/notifyAll on a shared mutable object, where the writer and the readers take the same monitor and every update wakes all
+ * waiters. Here three buffers are preallocated: the writer owns the back one, the reader owns the front one and the middle one is the last
+ * published state. {@link #publish()} swaps the back buffer with the middle one by one atomic operation, {@link #getReadBuffer()} swaps the front
+ * buffer with the middle one if it has been published since the previous call. Nobody waits: the writer overwrites a state the reader has not
+ * seen yet, and the reader gets the same state again if nothing is published.
+ * </p>
+ *
+ * @param <T> The type of buffer.
+ */
+public class TripleBuffer<T>
+{
+    private static final int INDEX_MASK = 0b11;
+    private static final int DIRTY = 0b100;
+
+    private final Object[] buffers = new Object[3];
+    // the index of the middle buffer and the flag of a state not seen by the reader
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // owned by the writer and the reader
+    private int back;
+    private int front = 2;
+
+    /**
+     * Creates the triple buffer.
+     * 
+     * @param factory The factory of three buffers.
+     */
+    public TripleBuffer(Supplier<? extends T> factory)
+    {
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = Objects.requireNonNull(factory.get());
+        }
+    }
+
+    /**
+     * Returns the buffer to fill, called by the writer.
+     */
+    public T getWriteBuffer()
+    {
+        return buffer(back);
+    }
+
+    /**
+     * Publishes the filled buffer and returns the next buffer to fill, called by the writer.
+     * 
+     * @return Returns the next write buffer, it contains an older state.
+     */
+    public T publish()
+    {
+        back = middle.getAndSet(back | DIRTY) & INDEX_MASK;
+        return buffer(back);
+    }
+
+    /**
+     * Returns the latest published buffer, called by the reader. The buffer is owned by the reader until the next call.
+     */
+    public T getReadBuffer()
+    {
+        if ((middle.get() & DIRTY) != 0)
+        {
+            front = middle.getAndSet(front) & INDEX_MASK;
+        }
+        return buffer(front);
+    }
+
+    /**
+     * Returns true if a buffer is published since the last {@link #getReadBuffer()} call.
+     */
+    public boolean hasUpdate()
+    {
+        return (middle.get() & DIRTY) != 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T buffer(int index)
+    {
+        return (T) buffers[index];
+    }
+}
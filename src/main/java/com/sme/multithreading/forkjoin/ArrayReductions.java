@@ -0,0 +1,357 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Parallel reductions of arrays by {@link RangeTask}.
+ */
+public final class ArrayReductions
+{
+    /** The default length of range not to split, small enough to balance and big enough to hide the cost of a task. */
+    public static final int DEFAULT_MIN_SPLIT_SIZE = 4_096;
+
+    // private
+    private ArrayReductions()
+    {
+    }
+
+    /**
+     * Returns the sum of elements.
+     * 
+     * @param pool The pool;
+     * @param array The array.
+     */
+    public static long sum(ForkJoinPool pool, int[] array)
+    {
+        return pool.invoke(new IntSumTask(array, 0, array.length, DEFAULT_MIN_SPLIT_SIZE));
+    }
+
+    /**
+     * Returns the sum of elements, the length of leaves is tuned by the controller.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param controller The controller of cutoff.
+     */
+    public static long sum(ForkJoinPool pool, int[] array, GranularityController controller)
+    {
+        return pool.invoke(new IntSumTask(array, 0, array.length, controller));
+    }
+
+    /**
+     * Reduces the elements by the associative operator.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static int reduce(ForkJoinPool pool, int[] array, int identity, IntBinaryOperator operator)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new IntReduceTask(array, 0, array.length, DEFAULT_MIN_SPLIT_SIZE, identity, operator));
+    }
+
+    /**
+     * Reduces the elements by the associative operator, the length of leaves is tuned by the controller.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator;
+     * @param controller The controller of cutoff.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static int reduce(ForkJoinPool pool, int[] array, int identity, IntBinaryOperator operator, GranularityController controller)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new IntReduceTask(array, 0, array.length, controller, identity, operator));
+    }
+
+    /**
+     * Reduces the elements by the associative operator.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static long reduce(ForkJoinPool pool, long[] array, long identity, LongBinaryOperator operator)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new LongReduceTask(array, 0, array.length, DEFAULT_MIN_SPLIT_SIZE, identity, operator));
+    }
+
+    /**
+     * Reduces the elements by the associative operator, the length of leaves is tuned by the controller.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator;
+     * @param controller The controller of cutoff.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static long reduce(ForkJoinPool pool, long[] array, long identity, LongBinaryOperator operator, GranularityController controller)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new LongReduceTask(array, 0, array.length, controller, identity, operator));
+    }
+
+    /**
+     * Reduces the elements by the associative operator.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static <T> T reduce(ForkJoinPool pool, T[] array, T identity, BinaryOperator<T> operator)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new ReduceTask<>(array, 0, array.length, DEFAULT_MIN_SPLIT_SIZE, identity, operator));
+    }
+
+    /**
+     * Reduces the elements by the associative operator, the length of leaves is tuned by the controller.
+     * 
+     * @param pool The pool;
+     * @param array The array;
+     * @param identity The identity value of operator;
+     * @param operator The associative operator;
+     * @param controller The controller of cutoff.
+     * @return Returns the reduced value or identity for empty array.
+     */
+    public static <T> T reduce(ForkJoinPool pool, T[] array, T identity, BinaryOperator<T> operator, GranularityController controller)
+    {
+        Objects.requireNonNull(operator, "operator");
+        return pool.invoke(new ReduceTask<>(array, 0, array.length, controller, identity, operator));
+    }
+
+    /**
+     * Sums int elements to long without boxing per element.
+     */
+    private static final class IntSumTask extends RangeTask<Long>
+    {
+        private final int[] array;
+
+        private IntSumTask(int[] array, int from, int to, int minSplitSize)
+        {
+            super(from, to, minSplitSize);
+            this.array = array;
+        }
+
+        private IntSumTask(int[] array, int from, int to, GranularityController controller)
+        {
+            super(from, to, controller);
+            this.array = array;
+        }
+
+        private IntSumTask(IntSumTask parent, int from, int to)
+        {
+            super(parent, from, to);
+            this.array = parent.array;
+        }
+
+        @Override
+        protected RangeTask<Long> createSubtask(int from, int to)
+        {
+            return new IntSumTask(this, from, to);
+        }
+
+        @Override
+        protected Long computeDirectly(int from, int to)
+        {
+            long sum = 0;
+            for (int i = from; i < to; i++)
+            {
+                sum += array[i];
+            }
+            return sum;
+        }
+
+        @Override
+        protected Long combine(Long left, Long right)
+        {
+            return left + right;
+        }
+    }
+
+    /**
+     * Reduces int elements.
+     */
+    private static final class IntReduceTask extends RangeTask<Integer>
+    {
+        private final int[] array;
+        private final int identity;
+        private final IntBinaryOperator operator;
+
+        private IntReduceTask(int[] array, int from, int to, int minSplitSize, int identity, IntBinaryOperator operator)
+        {
+            super(from, to, minSplitSize);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private IntReduceTask(int[] array, int from, int to, GranularityController controller, int identity, IntBinaryOperator operator)
+        {
+            super(from, to, controller);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private IntReduceTask(IntReduceTask parent, int from, int to)
+        {
+            super(parent, from, to);
+            this.array = parent.array;
+            this.identity = parent.identity;
+            this.operator = parent.operator;
+        }
+
+        @Override
+        protected RangeTask<Integer> createSubtask(int from, int to)
+        {
+            return new IntReduceTask(this, from, to);
+        }
+
+        @Override
+        protected Integer computeDirectly(int from, int to)
+        {
+            int result = identity;
+            for (int i = from; i < to; i++)
+            {
+                result = operator.applyAsInt(result, array[i]);
+            }
+            return result;
+        }
+
+        @Override
+        protected Integer combine(Integer left, Integer right)
+        {
+            return operator.applyAsInt(left, right);
+        }
+    }
+
+    /**
+     * Reduces long elements.
+     */
+    private static final class LongReduceTask extends RangeTask<Long>
+    {
+        private final long[] array;
+        private final long identity;
+        private final LongBinaryOperator operator;
+
+        private LongReduceTask(long[] array, int from, int to, int minSplitSize, long identity, LongBinaryOperator operator)
+        {
+            super(from, to, minSplitSize);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private LongReduceTask(long[] array, int from, int to, GranularityController controller, long identity, LongBinaryOperator operator)
+        {
+            super(from, to, controller);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private LongReduceTask(LongReduceTask parent, int from, int to)
+        {
+            super(parent, from, to);
+            this.array = parent.array;
+            this.identity = parent.identity;
+            this.operator = parent.operator;
+        }
+
+        @Override
+        protected RangeTask<Long> createSubtask(int from, int to)
+        {
+            return new LongReduceTask(this, from, to);
+        }
+
+        @Override
+        protected Long computeDirectly(int from, int to)
+        {
+            long result = identity;
+            for (int i = from; i < to; i++)
+            {
+                result = operator.applyAsLong(result, array[i]);
+            }
+            return result;
+        }
+
+        @Override
+        protected Long combine(Long left, Long right)
+        {
+            return operator.applyAsLong(left, right);
+        }
+    }
+
+    /**
+     * Reduces object elements.
+     */
+    private static final class ReduceTask<T> extends RangeTask<T>
+    {
+        private final T[] array;
+        private final T identity;
+        private final BinaryOperator<T> operator;
+
+        private ReduceTask(T[] array, int from, int to, int minSplitSize, T identity, BinaryOperator<T> operator)
+        {
+            super(from, to, minSplitSize);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private ReduceTask(T[] array, int from, int to, GranularityController controller, T identity, BinaryOperator<T> operator)
+        {
+            super(from, to, controller);
+            this.array = array;
+            this.identity = identity;
+            this.operator = operator;
+        }
+
+        private ReduceTask(ReduceTask<T> parent, int from, int to)
+        {
+            super(parent, from, to);
+            this.array = parent.array;
+            this.identity = parent.identity;
+            this.operator = parent.operator;
+        }
+
+        @Override
+        protected RangeTask<T> createSubtask(int from, int to)
+        {
+            return new ReduceTask<>(this, from, to);
+        }
+
+        @Override
+        protected T computeDirectly(int from, int to)
+        {
+            T result = identity;
+            for (int i = from; i < to; i++)
+            {
+                result = operator.apply(result, array[i]);
+            }
+            return result;
+        }
+
+        @Override
+        protected T combine(T left, T right)
+        {
+            return operator.apply(left, right);
+        }
+    }
+}
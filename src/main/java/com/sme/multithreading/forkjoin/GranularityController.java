@@ -0,0 +1,149 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sme.multithreading.util.Histogram;
+
+/**
+ * Self-tuning sequential cutoff of {@link RangeTask}.
+ * <p>
+ * A fixed threshold fits one kind of work and one machine only: a small one makes the cost of tasks dominate the work, a big one leaves the
+ * workers without tasks. The controller measures the time of every leaf and, when the leaf is out of the target band, sets the cutoff to the
+ * length that takes the middle of band at the measured cost per element. The step is limited to 4 times to damp the outliers, e.g. the leaves
+ * interpreted before JIT.
+ * </p>
+ * <p>
+ * The cutoff is a plain volatile field: the tasks race to set it, but all of them compute close values from the same kind of work.
+ * </p>
+ */
+public class GranularityController
+{
+    private static final int MAX_STEP = 4;
+
+    private final long minLeafNanos;
+    private final long maxLeafNanos;
+    private final Histogram leafTime = new Histogram();
+    private final LongAdder taskCount = new LongAdder();
+    private final LongAdder adjustmentCount = new LongAdder();
+
+    private volatile int cutoff;
+
+    /**
+     * Creates the controller.
+     * 
+     * @param minLeafTime The lower bound of the leaf time;
+     * @param maxLeafTime The upper bound of the leaf time;
+     * @param unit The unit of bounds;
+     * @param initialCutoff The cutoff to start with.
+     */
+    public GranularityController(long minLeafTime, long maxLeafTime, TimeUnit unit, int initialCutoff)
+    {
+        if (minLeafTime <= 0 || minLeafTime > maxLeafTime)
+        {
+            throw new IllegalArgumentException("Expects 0 < minLeafTime <= maxLeafTime");
+        }
+        if (initialCutoff < 1)
+        {
+            throw new IllegalArgumentException("Expects positive initial cutoff");
+        }
+
+        this.minLeafNanos = unit.toNanos(minLeafTime);
+        this.maxLeafNanos = unit.toNanos(maxLeafTime);
+        this.cutoff = initialCutoff;
+    }
+
+    /**
+     * Returns the length of range not to split anymore.
+     */
+    public int getCutoff()
+    {
+        return cutoff;
+    }
+
+    /**
+     * Records the computed leaf and adjusts the cutoff if the leaf is out of the target band.
+     * 
+     * @param length The length of leaf range;
+     * @param nanos The time of leaf.
+     */
+    public void recordLeaf(int length, long nanos)
+    {
+        leafTime.record(nanos);
+        if (length == 0 || nanos >= minLeafNanos && nanos <= maxLeafNanos)
+        {
+            return;
+        }
+
+        int current = cutoff;
+        // the length to take the middle of band, nanos is at least 1 to not divide by zero
+        double target = (double) length * ((minLeafNanos + maxLeafNanos) / 2) / Math.max(nanos, 1);
+        long next = Math.round(Math.max(current / (double) MAX_STEP, Math.min(current * (double) MAX_STEP, target)));
+        next = Math.max(1, Math.min(Integer.MAX_VALUE, next));
+        if (next != current)
+        {
+            cutoff = (int) next;
+            adjustmentCount.increment();
+        }
+    }
+
+    /**
+     * Records the forked task.
+     */
+    public void recordTask()
+    {
+        taskCount.increment();
+    }
+
+    /**
+     * Returns the count of forked tasks.
+     */
+    public long getTaskCount()
+    {
+        return taskCount.sum();
+    }
+
+    /**
+     * Returns the count of computed leaves.
+     */
+    public long getLeafCount()
+    {
+        return leafTime.snapshot().getCount();
+    }
+
+    /**
+     * Returns the count of cutoff changes.
+     */
+    public long getAdjustmentCount()
+    {
+        return adjustmentCount.sum();
+    }
+
+    /**
+     * Returns the distribution of the leaf time in nanoseconds.
+     */
+    public Histogram.Snapshot getLeafTime()
+    {
+        return leafTime.snapshot();
+    }
+
+    /**
+     * Resets the leaf time and counts, but keeps the learned cutoff.
+     */
+    public void reset()
+    {
+        leafTime.snapshotAndReset();
+        taskCount.reset();
+        adjustmentCount.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("cutoff: %d, tasks: %d, adjustments: %d, leaf time: %s",
+                cutoff,
+                getTaskCount(),
+                getAdjustmentCount(),
+                getLeafTime().toMicrosString());
+    }
+}
@@ -0,0 +1,106 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+
+/**
+ * Parallel fan-out of ids to results by {@link RangeTask}.
+ * <p>
+ * A task that returns the list of its subtree copies the lists of children on every level, so n results are copied n log(n) times. Here the
+ * result array is allocated once for all ids, and every leaf writes the result of id at the index of id. The tasks return nothing, so the join
+ * phase neither allocates nor copies, and the returned list is a view of the array.
+ * </p>
+ */
+public final class IndexedFanOut
+{
+    // private
+    private IndexedFanOut()
+    {
+    }
+
+    /**
+     * Maps the ids in parallel, the tasks split while the surplus of queued tasks is low.
+     * 
+     * @param pool The pool;
+     * @param ids The ids;
+     * @param mapper The function to get the result by id.
+     * @return Returns the unmodifiable list of results in the order of ids.
+     */
+    public static <T> List<T> map(ForkJoinPool pool, int[] ids, IntFunction<? extends T> mapper)
+    {
+        return map(pool, ids, mapper, 1);
+    }
+
+    /**
+     * Maps the ids in parallel.
+     * 
+     * @param pool The pool;
+     * @param ids The ids;
+     * @param mapper The function to get the result by id;
+     * @param minSplitSize The count of ids not to split anymore.
+     * @return Returns the unmodifiable list of results in the order of ids.
+     */
+    public static <T> List<T> map(ForkJoinPool pool, int[] ids, IntFunction<? extends T> mapper, int minSplitSize)
+    {
+        Objects.requireNonNull(mapper, "mapper");
+        Object[] results = new Object[ids.length];
+        pool.invoke(new FanOutTask(ids, results, mapper, 0, ids.length, minSplitSize));
+
+        // the array contains only the results of mapper
+        @SuppressWarnings("unchecked")
+        List<T> list = (List<T>) Arrays.asList(results);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Writes the results of own range to the shared array.
+     */
+    private static final class FanOutTask extends RangeTask<Void>
+    {
+        private final int[] ids;
+        private final Object[] results;
+        private final IntFunction<?> mapper;
+
+        private FanOutTask(int[] ids, Object[] results, IntFunction<?> mapper, int from, int to, int minSplitSize)
+        {
+            super(from, to, minSplitSize);
+            this.ids = ids;
+            this.results = results;
+            this.mapper = mapper;
+        }
+
+        private FanOutTask(FanOutTask parent, int from, int to)
+        {
+            super(parent, from, to);
+            this.ids = parent.ids;
+            this.results = parent.results;
+            this.mapper = parent.mapper;
+        }
+
+        @Override
+        protected RangeTask<Void> createSubtask(int from, int to)
+        {
+            return new FanOutTask(this, from, to);
+        }
+
+        @Override
+        protected Void computeDirectly(int from, int to)
+        {
+            for (int i = from; i < to; i++)
+            {
+                results[i] = mapper.apply(ids[i]);
+            }
+            return null;
+        }
+
+        @Override
+        protected Void combine(Void left, Void right)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.sme.multithreading.util.Histogram;
+
+/**
+ * Runs blocking calls inside {@link ForkJoinPool} tasks by {@link ForkJoinPool.ManagedBlocker}.
+ * <p>
+ * A worker blocked by I/O or sleep keeps own place in the parallelism of pool, so a few blocking tasks starve the common pool that parallel
+ * streams and {@link CompletableFuture} share. {@link ForkJoinPool#managedBlock(ForkJoinPool.ManagedBlocker)} tells the pool that the worker is
+ * blocked, and the pool starts or wakes a spare thread to keep the parallelism.
+ * </p>
+ * <p>
+ * The calls over {@code maxCompensation} concurrent ones block the worker without compensation, so a burst of blocking calls does not create
+ * hundreds of threads. The calls outside the pool threads just run.
+ * </p>
+ */
+public class ManagedBlocking
+{
+    private final Semaphore permits;
+    private final Histogram blockedTime = new Histogram();
+    private final LongAdder managedCount = new LongAdder();
+    private final LongAdder uncompensatedCount = new LongAdder();
+    private final AtomicInteger peakPoolSizeOverParallelism = new AtomicInteger();
+
+    /**
+     * Creates the instance.
+     * 
+     * @param maxCompensation The max count of concurrent blocking calls the pool may compensate.
+     */
+    public ManagedBlocking(int maxCompensation)
+    {
+        if (maxCompensation < 1)
+        {
+            throw new IllegalArgumentException("Expects positive max compensation");
+        }
+        this.permits = new Semaphore(maxCompensation);
+    }
+
+    /**
+     * Runs the blocking call.
+     * 
+     * @param call The blocking call;
+     * @return Returns the result of call.
+     */
+    public <T> T call(Supplier<T> call)
+    {
+        Objects.requireNonNull(call, "call");
+        Thread thread = Thread.currentThread();
+        if (!(thread instanceof ForkJoinWorkerThread))
+        {
+            return call.get();
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            if (!permits.tryAcquire())
+            {
+                uncompensatedCount.increment();
+                return call.get();
+            }
+
+            try
+            {
+                Blocker<T> blocker = new Blocker<>(call, ((ForkJoinWorkerThread) thread).getPool());
+                ForkJoinPool.managedBlock(blocker);
+                return blocker.result;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("The blocking call is interrupted", e);
+            }
+            finally
+            {
+                // a failed call is managed too
+                managedCount.increment();
+                permits.release();
+            }
+        }
+        finally
+        {
+            blockedTime.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Runs the blocking call.
+     * 
+     * @param call The blocking call.
+     */
+    public void run(Runnable call)
+    {
+        Objects.requireNonNull(call, "call");
+        call(() ->
+        {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the count of calls the pool was told about, including the failed ones.
+     */
+    public long getManagedCount()
+    {
+        return managedCount.sum();
+    }
+
+    /**
+     * Returns the count of calls in the pool over the max compensation.
+     */
+    public long getUncompensatedCount()
+    {
+        return uncompensatedCount.sum();
+    }
+
+    /**
+     * Returns the max difference of the pool size and the parallelism seen by the managed calls.
+     * <p>
+     * It is not the count of created compensation threads: the pool may reuse the spare threads created before, and the difference includes them.
+     * </p>
+     */
+    public int getPeakPoolSizeOverParallelism()
+    {
+        return peakPoolSizeOverParallelism.get();
+    }
+
+    /**
+     * Returns the distribution of the blocked time of calls in the pool in nanoseconds.
+     */
+    public Histogram.Snapshot getBlockedTime()
+    {
+        return blockedTime.snapshot();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("managed: %d, uncompensated: %d, peak pool size over parallelism: %d, blocked time: %s",
+                getManagedCount(),
+                getUncompensatedCount(),
+                getPeakPoolSizeOverParallelism(),
+                getBlockedTime().toMicrosString());
+    }
+
+    /**
+     * Runs the call once in {@link #block()}.
+     */
+    private final class Blocker<T> implements ForkJoinPool.ManagedBlocker
+    {
+        private final Supplier<T> call;
+        private final ForkJoinPool pool;
+        private boolean done;
+        private T result;
+
+        private Blocker(Supplier<T> call, ForkJoinPool pool)
+        {
+            this.call = call;
+            this.pool = pool;
+        }
+
+        @Override
+        public boolean block()
+        {
+            // the pool compensates before it calls block()
+            int spare = pool.getPoolSize() - pool.getParallelism();
+            peakPoolSizeOverParallelism.accumulateAndGet(spare, Math::max);
+
+            result = call.get();
+            done = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable()
+        {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * {@link RecursiveTask} over the {@code [from, to)} index range of a shared source.
+ * <p>
+ * The subtasks get the bounds of the range rather than {@link Arrays#copyOfRange} of the array, so no element is copied. A task does not split by
+ * a fixed length: it forks the right half while {@link #getSurplusQueuedTaskCount()} shows that the idle workers took the previous forks, and
+ * computes the rest directly. So a busy pool gets a few big tasks and an idle pool gets more of smaller ones.
+ * </p>
+ * <p>
+ * With {@link GranularityController} the task splits the range down to the cutoff of the controller regardless of the surplus, and reports the time
+ * of every leaf to the controller to tune the cutoff.
+ * </p>
+ * <p>
+ * The forked halves are combined from left to right, so the combiner has to be associative only.
+ * </p>
+ *
+ * @param <R> The type of result.
+ */
+public abstract class RangeTask<R> extends RecursiveTask<R>
+{
+    /** The count of queued tasks over the idle workers to stop splitting, recommended by {@link ForkJoinTask#getSurplusQueuedTaskCount()}. */
+    public static final int MAX_SURPLUS = 3;
+
+    protected final int from;
+    protected final int to;
+    private final int minSplitSize;
+    private final GranularityController controller;
+    // the forked tasks, the last forked task is the first one
+    private RangeTask<R> next;
+
+    /**
+     * Creates the task.
+     * 
+     * @param from The first index, inclusive;
+     * @param to The last index, exclusive;
+     * @param minSplitSize The length of range not to split anymore.
+     */
+    protected RangeTask(int from, int to, int minSplitSize)
+    {
+        checkRange(from, to);
+        if (minSplitSize < 1)
+        {
+            throw new IllegalArgumentException("Expects positive min split size");
+        }
+
+        this.from = from;
+        this.to = to;
+        this.minSplitSize = minSplitSize;
+        this.controller = null;
+    }
+
+    /**
+     * Creates the task with the self-tuning cutoff.
+     * 
+     * @param from The first index, inclusive;
+     * @param to The last index, exclusive;
+     * @param controller The controller of cutoff, shared by all tasks of the computation.
+     */
+    protected RangeTask(int from, int to, GranularityController controller)
+    {
+        checkRange(from, to);
+
+        this.from = from;
+        this.to = to;
+        this.minSplitSize = 0;
+        this.controller = Objects.requireNonNull(controller, "controller");
+    }
+
+    /**
+     * Creates the subtask with the min split size or the controller of the parent task.
+     * 
+     * @param parent The task to split;
+     * @param from The first index, inclusive;
+     * @param to The last index, exclusive.
+     */
+    protected RangeTask(RangeTask<R> parent, int from, int to)
+    {
+        checkRange(from, to);
+
+        this.from = from;
+        this.to = to;
+        this.minSplitSize = parent.minSplitSize;
+        this.controller = parent.controller;
+    }
+
+    /**
+     * Creates the task of subrange with the same source, usually by {@link #RangeTask(RangeTask, int, int)}.
+     * 
+     * @param from The first index, inclusive;
+     * @param to The last index, exclusive.
+     * @return Returns new task.
+     */
+    protected abstract RangeTask<R> createSubtask(int from, int to);
+
+    /**
+     * Computes the subrange sequentially.
+     * 
+     * @param from The first index, inclusive;
+     * @param to The last index, exclusive.
+     * @return Returns the result of subrange.
+     */
+    protected abstract R computeDirectly(int from, int to);
+
+    /**
+     * Combines the results of two adjacent subranges.
+     * 
+     * @param left The result of the left subrange;
+     * @param right The result of the right subrange.
+     * @return Returns the combined result.
+     */
+    protected abstract R combine(R left, R right);
+
+    /**
+     * Returns the min length of range to split, 0 if the task has the controller.
+     */
+    protected final int getMinSplitSize()
+    {
+        return minSplitSize;
+    }
+
+    /**
+     * Returns the controller of cutoff or null if the task has the fixed min split size.
+     */
+    protected final GranularityController getController()
+    {
+        return controller;
+    }
+
+    @Override
+    protected final R compute()
+    {
+        int high = to;
+        RangeTask<R> forks = null;
+        while (shouldSplit(high - from))
+        {
+            int middle = (from + high) >>> 1;
+            RangeTask<R> right = createSubtask(middle, high);
+            right.next = forks;
+            forks = right;
+            right.fork();
+            high = middle;
+            if (controller != null)
+            {
+                controller.recordTask();
+            }
+        }
+
+        R result;
+        if (controller == null)
+        {
+            result = computeDirectly(from, high);
+        }
+        else
+        {
+            long start = System.nanoTime();
+            result = computeDirectly(from, high);
+            controller.recordLeaf(high - from, System.nanoTime() - start);
+        }
+
+        // the last fork is the nearest right subrange
+        for (RangeTask<R> fork = forks; fork != null; fork = fork.next)
+        {
+            result = combine(result, fork.join());
+        }
+        return result;
+    }
+
+    private static void checkRange(int from, int to)
+    {
+        if (from < 0 || from > to)
+        {
+            throw new IllegalArgumentException("Expects valid [" + from + ", " + to + ") range");
+        }
+    }
+
+    private boolean shouldSplit(int length)
+    {
+        if (controller != null)
+        {
+            return length > controller.getCutoff();
+        }
+        return length > minSplitSize && getSurplusQueuedTaskCount() <= MAX_SURPLUS;
+    }
+}
@@ -0,0 +1,160 @@
+package com.sme.multithreading.forkjoin;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * Parallel reduction of a tree in {@link ForkJoinPool}.
+ * <p>
+ * A task per node creates millions of tiny tasks on a big tree and overflows the stack on a deep one, because every join may run the forked child
+ * in the same thread. Here a task walks own part of the tree in pre-order with an explicit stack. After every {@code threshold} nodes the task
+ * forks the bottom half of the stack, i.e. the siblings close to the root with the biggest subtrees left. So a small tree is reduced by one task,
+ * and the tasks are forked only where the stack grows: at wide branches and along the deep paths with siblings.
+ * </p>
+ * <p>
+ * The forked part is always a suffix of the remaining pre-order walk, so the results are combined in pre-order and the combiner has to be
+ * associative only, not commutative.
+ * </p>
+ *
+ * @param <N> The type of nodes;
+ * @param <R> The type of result.
+ */
+public final class TreeReducer<N, R>
+{
+    private final Function<? super N, ? extends List<? extends N>> children;
+    private final Function<? super N, ? extends R> mapper;
+    private final BinaryOperator<R> combiner;
+    private final int threshold;
+
+    /**
+     * Creates the reducer.
+     * 
+     * @param children The function to get the children of node;
+     * @param mapper The function to get the value of node;
+     * @param combiner The associative function to combine values;
+     * @param threshold The count of nodes a task reduces sequentially before it forks a part of own work.
+     */
+    public TreeReducer(Function<? super N, ? extends List<? extends N>> children,
+            Function<? super N, ? extends R> mapper,
+            BinaryOperator<R> combiner,
+            int threshold)
+    {
+        if (threshold < 1)
+        {
+            throw new IllegalArgumentException("Expects positive threshold");
+        }
+
+        this.children = Objects.requireNonNull(children, "children");
+        this.mapper = Objects.requireNonNull(mapper, "mapper");
+        this.combiner = Objects.requireNonNull(combiner, "combiner");
+        this.threshold = threshold;
+    }
+
+    /**
+     * Reduces the tree in the common pool.
+     * 
+     * @param root The root of tree.
+     * @return Returns the combined value of all nodes.
+     */
+    public R reduce(N root)
+    {
+        return reduce(ForkJoinPool.commonPool(), root);
+    }
+
+    /**
+     * Reduces the tree in the given pool.
+     * 
+     * @param pool The pool;
+     * @param root The root of tree.
+     * @return Returns the combined value of all nodes.
+     */
+    public R reduce(ForkJoinPool pool, N root)
+    {
+        ArrayDeque<N> stack = new ArrayDeque<>();
+        stack.push(Objects.requireNonNull(root, "root"));
+        return pool.invoke(new ReduceTask(stack));
+    }
+
+    /**
+     * Reduces the nodes of stack and their subtrees. {@link RecursiveTask} rather than {@link CountedCompleter}, because the forks are joined in
+     * pre-order.
+     */
+    private final class ReduceTask extends RecursiveTask<R>
+    {
+        private final ArrayDeque<N> stack;
+        // the forked tasks, the last forked task is the first one
+        private ReduceTask next;
+
+        private ReduceTask(ArrayDeque<N> stack)
+        {
+            this.stack = stack;
+        }
+
+        @Override
+        protected R compute()
+        {
+            ReduceTask forks = null;
+            R result = null;
+            boolean empty = true;
+            int visited = 0;
+
+            while (!stack.isEmpty())
+            {
+                N node = stack.pop();
+                R value = mapper.apply(node);
+                result = empty ? value : combiner.apply(result, value);
+                empty = false;
+                pushChildren(node);
+
+                if (++visited >= threshold && stack.size() > 1)
+                {
+                    ReduceTask fork = new ReduceTask(splitBottomHalf());
+                    fork.next = forks;
+                    forks = fork;
+                    fork.fork();
+                    visited = 0;
+                }
+            }
+
+            // the last fork is the nearest suffix of the walk, the first fork is the farthest one
+            for (ReduceTask fork = forks; fork != null; fork = fork.next)
+            {
+                result = combiner.apply(result, fork.join());
+            }
+            return result;
+        }
+
+        // the first child is on the top of stack
+        private void pushChildren(N node)
+        {
+            List<? extends N> nodes = children.apply(node);
+            if (nodes == null || nodes.isEmpty())
+            {
+                return;
+            }
+
+            for (ListIterator<? extends N> it = nodes.listIterator(nodes.size()); it.hasPrevious();)
+            {
+                stack.push(it.previous());
+            }
+        }
+
+        private ArrayDeque<N> splitBottomHalf()
+        {
+            int count = stack.size() / 2;
+            ArrayDeque<N> bottom = new ArrayDeque<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                bottom.addFirst(stack.pollLast());
+            }
+            return bottom;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.sme.multithreading.ipc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Ordered and volatile access to off-heap memory shared with another process.
+ * <p>
+ * Java 8 has no API to publish a write to a {@link ByteBuffer} with the release semantic, so the methods of {@code sun.misc.Unsafe} are looked up
+ * once as method handles. The code does not depend on the internal class at compile time and the static final handles are inlined by JIT.
+ * </p>
+ */
+final class MemoryAccess
+{
+    private static final MethodHandle PUT_ORDERED_LONG;
+    private static final MethodHandle GET_LONG_VOLATILE;
+    private static final MethodHandle GET_LONG;
+    private static final long ADDRESS_OFFSET;
+
+    static
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            PUT_ORDERED_LONG = lookup.findVirtual(unsafeClass, "putOrderedLong", MethodType.methodType(void.class, Object.class, long.class, long.class))
+                    .bindTo(unsafe);
+            GET_LONG_VOLATILE = lookup.findVirtual(unsafeClass, "getLongVolatile", MethodType.methodType(long.class, Object.class, long.class))
+                    .bindTo(unsafe);
+            GET_LONG = lookup.findVirtual(unsafeClass, "getLong", MethodType.methodType(long.class, Object.class, long.class))
+                    .bindTo(unsafe);
+            ADDRESS_OFFSET = (long) lookup.findVirtual(unsafeClass, "objectFieldOffset", MethodType.methodType(long.class, Field.class))
+                    .bindTo(unsafe)
+                    .invoke(Buffer.class.getDeclaredField("address"));
+        }
+        catch (Throwable e)
+        {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private MemoryAccess()
+    {
+    }
+
+    /**
+     * Returns the native address of the direct buffer.
+     * 
+     * @param buffer The direct buffer.
+     */
+    static long address(ByteBuffer buffer)
+    {
+        if (!buffer.isDirect())
+        {
+            throw new IllegalArgumentException("Expects direct buffer");
+        }
+        try
+        {
+            return (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the value after all previous writes are visible to other processes.
+     * 
+     * @param address The native address;
+     * @param value The value.
+     */
+    static void putOrderedLong(long address, long value)
+    {
+        try
+        {
+            PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the value, the following reads see the writes done before the value was written.
+     * 
+     * @param address The native address.
+     * @return Returns the value.
+     */
+    static long getLongVolatile(long address)
+    {
+        try
+        {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+        }
+        catch (Throwable e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
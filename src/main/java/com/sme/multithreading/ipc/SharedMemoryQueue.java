@@ -0,0 +1,412 @@
+package com.sme.multithreading.ipc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.model.MessageCodec;
+import com.sme.multithreading.queue.WaitStrategies;
+import com.sme.multithreading.queue.WaitStrategy;
+
+/**
+ * Single-producer/single-consumer ring buffer of messages in a memory-mapped file shared by two processes on the same host.
+ * <p>
+ * Put the file to {@code /dev/shm} on Linux to keep it in memory. A message is encoded with {@link MessageCodec} directly into the ring, then the
+ * producer publishes the new tail index with an ordered write, so the consumer that reads the tail sees the whole record. The consumer publishes
+ * the head index the same way to free the space. Compare with a loopback socket where every message makes two system calls and two copies.
+ * </p>
+ * <p>
+ * File layout: the header, the tail and the head in own cache lines, then the ring. The header keeps magic, version, capacity, pids and states of
+ * both sides, so a side detects that the other one has closed the queue or has crashed, see {@link #isPeerAlive()}. Record layout in the ring:
+ * length (int), payload, padded to 8 bytes; a record does not wrap, the rest of the ring is skipped with {@link #PADDING} length instead.
+ * </p>
+ */
+public final class SharedMemoryQueue implements AutoCloseable
+{
+    private static final long MAGIC = 0x534d45_51554555L;
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int PRODUCER_PID_OFFSET = 16;
+    private static final int CONSUMER_PID_OFFSET = 24;
+    private static final int PRODUCER_STATE_OFFSET = 32;
+    private static final int CONSUMER_STATE_OFFSET = 36;
+    // the indexes are written by different processes, so they live in own cache lines, 128 bytes against the adjacent line prefetch
+    private static final int TAIL_OFFSET = 128;
+    private static final int HEAD_OFFSET = 256;
+    private static final int DATA_OFFSET = 384;
+
+    private static final int NONE = 0;
+    private static final int ACTIVE = 1;
+    private static final int CLOSED = 2;
+
+    private static final int PADDING = -1;
+    private static final int ALIGNMENT = 8;
+    private static final long ATTACH_POLL_MILLIS = 1;
+
+    private final boolean producer;
+    private final MappedByteBuffer mapped;
+    private final ByteBuffer data;
+    private final int capacity;
+    private final int mask;
+    private final long tailAddress;
+    private final long headAddress;
+    private final WaitStrategy waitStrategy;
+
+    // the own index of this side and the cached index of the other side
+    private long index;
+    private long otherIndexCache;
+
+    private SharedMemoryQueue(boolean producer, MappedByteBuffer mapped, int capacity, WaitStrategy waitStrategy)
+    {
+        this.producer = producer;
+        this.mapped = mapped;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy");
+
+        mapped.position(DATA_OFFSET);
+        this.data = mapped.slice();
+        mapped.position(0);
+
+        long address = MemoryAccess.address(mapped);
+        this.tailAddress = address + TAIL_OFFSET;
+        this.headAddress = address + HEAD_OFFSET;
+    }
+
+    /**
+     * Creates the queue file, or resets the existing one, and attaches to it as the producer.
+     * 
+     * @param path The path of the file, e.g. in {@code /dev/shm};
+     * @param capacity The capacity of the ring in bytes, the power of two;
+     * @param waitStrategy The strategy to wait for free space in {@link #put(Message)}.
+     * @return Returns the producer side of the queue.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public static SharedMemoryQueue createProducer(Path path, int capacity, WaitStrategy waitStrategy) throws IOException
+    {
+        if (capacity < ALIGNMENT || Integer.bitCount(capacity) != 1)
+        {
+            throw new IllegalArgumentException("Expects capacity as the power of two, but got " + capacity);
+        }
+
+        MappedByteBuffer mapped = map(path, DATA_OFFSET + capacity);
+        // the consumer does not attach until the magic is written after the rest of the header
+        MemoryAccess.putOrderedLong(MemoryAccess.address(mapped) + MAGIC_OFFSET, 0);
+        mapped.putInt(VERSION_OFFSET, VERSION);
+        mapped.putInt(CAPACITY_OFFSET, capacity);
+        mapped.putLong(PRODUCER_PID_OFFSET, currentPid());
+        mapped.putLong(CONSUMER_PID_OFFSET, 0);
+        mapped.putInt(PRODUCER_STATE_OFFSET, ACTIVE);
+        mapped.putInt(CONSUMER_STATE_OFFSET, NONE);
+        mapped.putLong(TAIL_OFFSET, 0);
+        mapped.putLong(HEAD_OFFSET, 0);
+        MemoryAccess.putOrderedLong(MemoryAccess.address(mapped) + MAGIC_OFFSET, MAGIC);
+
+        return new SharedMemoryQueue(true, mapped, capacity, waitStrategy);
+    }
+
+    /**
+     * Attaches to the queue as the consumer, waiting until the producer creates it.
+     * 
+     * @param path The path of the file;
+     * @param timeout The time to wait for the producer;
+     * @param unit The time unit of timeout;
+     * @param waitStrategy The strategy to wait for messages in {@link #take()}.
+     * @return Returns the consumer side of the queue.
+     * @throws IOException if the file cannot be mapped.
+     * @throws TimeoutException if the producer does not create the queue in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static SharedMemoryQueue attachConsumer(Path path, long timeout, TimeUnit unit, WaitStrategy waitStrategy)
+            throws IOException, TimeoutException, InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        MappedByteBuffer header = null;
+        while (true)
+        {
+            if (header == null && Files.exists(path) && Files.size(path) > DATA_OFFSET)
+            {
+                // the header is mapped once, the mapping sees the magic written by the producer later
+                header = map(path, DATA_OFFSET);
+            }
+            if (header != null && MemoryAccess.getLongVolatile(MemoryAccess.address(header) + MAGIC_OFFSET) == MAGIC)
+            {
+                break;
+            }
+
+            if (deadline - System.nanoTime() <= 0)
+            {
+                throw new TimeoutException("Queue " + path + " is not created in " + timeout + " " + unit);
+            }
+            TimeUnit.MILLISECONDS.sleep(ATTACH_POLL_MILLIS);
+        }
+
+        if (header.getInt(VERSION_OFFSET) != VERSION)
+        {
+            throw new IllegalStateException("Expects " + VERSION + " version of " + path + ", but got " + header.getInt(VERSION_OFFSET));
+        }
+
+        int capacity = header.getInt(CAPACITY_OFFSET);
+        MappedByteBuffer mapped = map(path, DATA_OFFSET + capacity);
+        mapped.putLong(CONSUMER_PID_OFFSET, currentPid());
+        mapped.putInt(CONSUMER_STATE_OFFSET, ACTIVE);
+
+        SharedMemoryQueue queue = new SharedMemoryQueue(false, mapped, capacity, waitStrategy);
+        queue.index = MemoryAccess.getLongVolatile(queue.headAddress);
+        return queue;
+    }
+
+    /**
+     * Attaches to the queue as the consumer with {@link WaitStrategies#PARK} strategy.
+     * 
+     * @param path The path of the file;
+     * @param timeout The time to wait for the producer;
+     * @param unit The time unit of timeout.
+     * @return Returns the consumer side of the queue.
+     * @throws IOException if the file cannot be mapped.
+     * @throws TimeoutException if the producer does not create the queue in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public static SharedMemoryQueue attachConsumer(Path path, long timeout, TimeUnit unit) throws IOException, TimeoutException, InterruptedException
+    {
+        return attachConsumer(path, timeout, unit, WaitStrategies.PARK);
+    }
+
+    /**
+     * Writes the message to the ring.
+     * 
+     * @param message The message.
+     * @return Returns false if the ring has no room for the message.
+     */
+    public boolean offer(Message message)
+    {
+        checkRole(true);
+
+        long tail = index;
+        int offset = (int) tail & mask;
+        int contiguous = capacity - offset;
+
+        int length = write(message, offset, Math.min(contiguous, free(tail)));
+        if (length == 0)
+        {
+            otherIndexCache = MemoryAccess.getLongVolatile(headAddress);
+            length = write(message, offset, Math.min(contiguous, free(tail)));
+        }
+        if (length > 0)
+        {
+            publish(tail + align(Integer.BYTES + length));
+            return true;
+        }
+
+        // a record never wraps, so the rest of the ring is skipped when the message does not fit it
+        if (offset != 0)
+        {
+            length = write(message, 0, free(tail) - contiguous);
+            if (length > 0)
+            {
+                data.putInt(offset, PADDING);
+                publish(tail + contiguous + align(Integer.BYTES + length));
+                return true;
+            }
+        }
+
+        if (Integer.BYTES + MessageCodec.encodedLength(message) > capacity)
+        {
+            throw new IllegalArgumentException("Message does not fit into " + capacity + " bytes ring");
+        }
+        return false;
+    }
+
+    /**
+     * Writes the message to the ring, waiting for free space.
+     * 
+     * @param message The message.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void put(Message message) throws InterruptedException
+    {
+        int counter = 0;
+        while (!offer(message))
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            counter = waitStrategy.idle(counter);
+        }
+    }
+
+    /**
+     * Reads the next message.
+     * 
+     * @return Returns the message, or null if the ring is empty.
+     */
+    public Message poll()
+    {
+        checkRole(false);
+
+        while (true)
+        {
+            long head = index;
+            if (head >= otherIndexCache)
+            {
+                otherIndexCache = MemoryAccess.getLongVolatile(tailAddress);
+                if (head >= otherIndexCache)
+                {
+                    return null;
+                }
+            }
+
+            int offset = (int) head & mask;
+            int length = data.getInt(offset);
+            if (length == PADDING)
+            {
+                // publish the skip as well, the producer may wait for the room it frees
+                index = head + capacity - offset;
+                MemoryAccess.putOrderedLong(headAddress, index);
+                continue;
+            }
+
+            data.limit(offset + Integer.BYTES + length);
+            data.position(offset + Integer.BYTES);
+            Message message = MessageCodec.decode(data);
+            data.limit(capacity);
+
+            index = head + align(Integer.BYTES + length);
+            MemoryAccess.putOrderedLong(headAddress, index);
+            return message;
+        }
+    }
+
+    /**
+     * Reads the next message, waiting if the ring is empty.
+     * 
+     * @return Returns the message.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Message take() throws InterruptedException
+    {
+        int counter = 0;
+        Message message;
+        while ((message = poll()) == null)
+        {
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException();
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return message;
+    }
+
+    /**
+     * Returns true if the other side is attached, has not closed the queue and its process is alive. The process is checked in {@code /proc}, on
+     * other systems only the state in the header is checked.
+     */
+    public boolean isPeerAlive()
+    {
+        int state = mapped.getInt(producer ? CONSUMER_STATE_OFFSET : PRODUCER_STATE_OFFSET);
+        long pid = mapped.getLong(producer ? CONSUMER_PID_OFFSET : PRODUCER_PID_OFFSET);
+        Path proc = Paths.get("/proc");
+        return state == ACTIVE && (!Files.isDirectory(proc) || Files.exists(proc.resolve(String.valueOf(pid))));
+    }
+
+    /**
+     * Returns true if the other side has closed the queue gracefully.
+     */
+    public boolean isPeerClosed()
+    {
+        return mapped.getInt(producer ? CONSUMER_STATE_OFFSET : PRODUCER_STATE_OFFSET) == CLOSED;
+    }
+
+    /**
+     * Marks this side closed. The file is unmapped by GC, Java 8 has no API to unmap it explicitly.
+     */
+    @Override
+    public void close()
+    {
+        mapped.putInt(producer ? PRODUCER_STATE_OFFSET : CONSUMER_STATE_OFFSET, CLOSED);
+    }
+
+    // encodes the record at the offset, returns the length of payload or 0 if the room is not enough
+    private int write(Message message, int offset, int room)
+    {
+        if (room <= Integer.BYTES)
+        {
+            return 0;
+        }
+
+        data.limit(offset + room);
+        data.position(offset + Integer.BYTES);
+        try
+        {
+            int length = MessageCodec.encode(message, data);
+            data.putInt(offset, length);
+            return length;
+        }
+        catch (BufferOverflowException e)
+        {
+            return 0;
+        }
+        finally
+        {
+            data.limit(capacity);
+        }
+    }
+
+    private void publish(long tail)
+    {
+        index = tail;
+        MemoryAccess.putOrderedLong(tailAddress, tail);
+    }
+
+    // returns the count of free bytes by the cached head of the consumer
+    private int free(long tail)
+    {
+        return (int) (capacity - (tail - otherIndexCache));
+    }
+
+    private void checkRole(boolean expectedProducer)
+    {
+        if (producer != expectedProducer)
+        {
+            throw new IllegalStateException("Expects " + (expectedProducer ? "producer" : "consumer") + " side of the queue");
+        }
+    }
+
+    private static int align(int length)
+    {
+        return length + ALIGNMENT - 1 & -ALIGNMENT;
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException
+    {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static long currentPid()
+    {
+        // Java 8 has no ProcessHandle, the name of runtime is "pid@host"
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        return Long.parseLong(name.substring(0, name.indexOf('@')));
+    }
+}
@@ -0,0 +1,485 @@
+package com.sme.multithreading.journal;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.model.MessageCodec;
+
+/**
+ * Append-only journal of messages in memory-mapped segment files.
+ * <p>
+ * The messages in a {@link java.util.concurrent.BlockingQueue} are lost when the JVM dies. The journal appends every message encoded with
+ * {@link MessageCodec} to a memory-mapped file, so the record is in the page cache of the OS as soon as {@link #append(Message)} returns and
+ * survives a crash of the JVM. A flusher thread forces the pages to the disk (group commit): one fsync covers all records appended since the
+ * previous one, and {@link #appendAndSync(Message)} waits for the fsync that covers its record to survive a crash of the OS as well.
+ * </p>
+ * <p>
+ * Record layout: payload length (int), CRC32 of the payload (int), payload. A segment ends with -1 length or with less than a header of free
+ * space. A record is addressed by a position: segment index * segment size + offset in the segment. On open, the journal scans the last segment
+ * and cuts the tail after the last record with a valid checksum.
+ * </p>
+ * <p>
+ * A {@link Reader} reads the records from any position up to the last appended one, so a consumer tracks own offset and replays the journal after
+ * a restart. A named reader stores the offset in a file on {@link Reader#commit()}.
+ * </p>
+ */
+public class Journal implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(Journal.class);
+
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String OFFSET_SUFFIX = ".offset";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long flushIntervalNanos;
+
+    // appended to before the written position moves to the segment, so the readers find every segment they can read;
+    // the position and limit of these buffers never change, so any thread may duplicate them
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final CRC32 crc = new CRC32();
+    // the private duplicate of the last segment, the appender moves its position and limit
+    private ByteBuffer writeBuffer;
+    private int writeOffset;
+
+    private volatile long writtenPosition;
+    private volatile long flushedPosition;
+    private final Object flushMonitor = new Object();
+    private final LongAdder flushCount = new LongAdder();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the journal in the directory and starts the flusher.
+     * 
+     * @param directory The directory of segment files, created if it does not exist;
+     * @param segmentSize The size of segment file in bytes;
+     * @param flushInterval The max interval between two fsyncs;
+     * @param unit The time unit of interval.
+     * @throws IOException if the segments cannot be opened.
+     */
+    public Journal(Path directory, int segmentSize, long flushInterval, TimeUnit unit) throws IOException
+    {
+        if (segmentSize <= HEADER)
+        {
+            throw new IllegalArgumentException("Expects segment size larger than " + HEADER + " bytes, but got " + segmentSize);
+        }
+
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+
+        int index = 0;
+        while (Files.exists(segmentPath(index)))
+        {
+            segments.add(map(segmentPath(index)));
+            index++;
+        }
+        if (segments.isEmpty())
+        {
+            segments.add(map(segmentPath(0)));
+        }
+
+        MappedByteBuffer last = segments.get(segments.size() - 1);
+        writeOffset = recover(last);
+        writeBuffer = last.duplicate();
+        writtenPosition = position(segments.size() - 1, writeOffset);
+        flushedPosition = writtenPosition;
+
+        flusher = new Thread(this::flush, "Journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends the message.
+     * 
+     * @param message The message.
+     * @return Returns the position of the record.
+     * @throws IOException if a new segment cannot be created.
+     */
+    public synchronized long append(Message message) throws IOException
+    {
+        checkNotClosed();
+        while (true)
+        {
+            int offset = writeOffset;
+            if (offset + HEADER < segmentSize)
+            {
+                int length = encode(message, offset);
+                if (length > 0)
+                {
+                    // the length is written last, a record with zero length is not completed
+                    writeBuffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+                    writeBuffer.putInt(offset, length);
+                    writeOffset = offset + HEADER + length;
+
+                    long position = position(segments.size() - 1, offset);
+                    writtenPosition = position + HEADER + length;
+                    return position;
+                }
+                if (offset == 0)
+                {
+                    throw new IllegalArgumentException("Message does not fit into " + segmentSize + " bytes segment");
+                }
+                writeBuffer.putInt(offset, END_OF_SEGMENT);
+            }
+            roll();
+        }
+    }
+
+    /**
+     * Appends the message and waits until the record is forced to the disk.
+     * 
+     * @param message The message.
+     * @return Returns the position of the record.
+     * @throws IOException if a new segment cannot be created.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public long appendAndSync(Message message) throws IOException, InterruptedException
+    {
+        long position = append(message);
+        awaitFlushed(position);
+        return position;
+    }
+
+    /**
+     * Waits until the record at the position is forced to the disk.
+     * 
+     * @param position The position of record.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitFlushed(long position) throws InterruptedException
+    {
+        if (flushedPosition > position)
+        {
+            return;
+        }
+
+        LockSupport.unpark(flusher);
+        synchronized (flushMonitor)
+        {
+            while (flushedPosition <= position)
+            {
+                checkNotClosed();
+                flushMonitor.wait();
+            }
+        }
+    }
+
+    // encodes the message after the header, returns 0 if there is no room in the segment
+    private int encode(Message message, int offset)
+    {
+        int start = offset + HEADER;
+        writeBuffer.position(start);
+        int length;
+        try
+        {
+            length = MessageCodec.encode(message, writeBuffer);
+        }
+        catch (BufferOverflowException e)
+        {
+            return 0;
+        }
+
+        writeBuffer.position(start);
+        writeBuffer.limit(start + length);
+        crc.reset();
+        crc.update(writeBuffer);
+        writeBuffer.limit(segmentSize);
+        return length;
+    }
+
+    private void roll() throws IOException
+    {
+        MappedByteBuffer buffer = map(segmentPath(segments.size()));
+        segments.add(buffer);
+        writeBuffer = buffer.duplicate();
+        writeOffset = 0;
+        writtenPosition = position(segments.size() - 1, 0);
+    }
+
+    // returns the offset after the last valid record and clears the rest of segment
+    private int recover(MappedByteBuffer buffer)
+    {
+        int offset = 0;
+        while (offset + HEADER < segmentSize)
+        {
+            int length = buffer.getInt(offset);
+            if (length == END_OF_SEGMENT)
+            {
+                return segmentSize;
+            }
+            if (length <= 0 || offset + HEADER + length > segmentSize || !checksumMatches(buffer, offset, length))
+            {
+                break;
+            }
+            offset += HEADER + length;
+        }
+
+        int valid = offset;
+        for (; offset < segmentSize; offset++)
+        {
+            if (buffer.get(offset) != 0)
+            {
+                LOGGER.warn("Cut the torn tail of {} segment after {} offset", segments.size() - 1, valid);
+                for (int i = valid; i < segmentSize; i++)
+                {
+                    buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+        }
+        return valid;
+    }
+
+    private boolean checksumMatches(MappedByteBuffer buffer, int offset, int length)
+    {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(offset + HEADER);
+        payload.limit(offset + HEADER + length);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+    }
+
+    private void flush()
+    {
+        while (running)
+        {
+            long target = writtenPosition;
+            if (target > flushedPosition)
+            {
+                force(target);
+            }
+            // a waiter of fsync unparks the flusher earlier, the records appended during the fsync wait for the next one
+            LockSupport.parkNanos(flushIntervalNanos);
+        }
+    }
+
+    private void force(long target)
+    {
+        // the segments between the flushed and the written positions may have dirty pages
+        int last = Math.min(segmentIndex(target), segments.size() - 1);
+        for (int index = segmentIndex(flushedPosition); index <= last; index++)
+        {
+            segments.get(index).force();
+        }
+        flushCount.increment();
+
+        synchronized (flushMonitor)
+        {
+            flushedPosition = target;
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException
+    {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            return channel.map(MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentPath(int index)
+    {
+        return directory.resolve(String.format("%010d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private long position(int segmentIndex, int offset)
+    {
+        return (long) segmentIndex * segmentSize + offset;
+    }
+
+    private int segmentIndex(long position)
+    {
+        return (int) (position / segmentSize);
+    }
+
+    private void checkNotClosed()
+    {
+        if (!running)
+        {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * Creates the reader from the position.
+     * 
+     * @param position The position of the first record to read, 0 to read from the start.
+     * @return Returns the reader.
+     */
+    public Reader reader(long position)
+    {
+        return new Reader(position, null);
+    }
+
+    /**
+     * Creates the named reader from the position committed by the reader with the same name, or from the start.
+     * 
+     * @param name The name of the consumer.
+     * @return Returns the reader.
+     * @throws IOException if the offset file cannot be read.
+     */
+    public Reader reader(String name) throws IOException
+    {
+        Path offsetPath = directory.resolve(name + OFFSET_SUFFIX);
+        long position = 0;
+        if (Files.exists(offsetPath))
+        {
+            position = ByteBuffer.wrap(Files.readAllBytes(offsetPath)).getLong();
+        }
+        return new Reader(position, offsetPath);
+    }
+
+    /**
+     * Returns the position after the last appended record.
+     */
+    public long getWrittenPosition()
+    {
+        return writtenPosition;
+    }
+
+    /**
+     * Returns the position up to which the records are forced to the disk.
+     */
+    public long getFlushedPosition()
+    {
+        return flushedPosition;
+    }
+
+    /**
+     * Returns the count of fsyncs done by the flusher.
+     */
+    public long getFlushCount()
+    {
+        return flushCount.sum();
+    }
+
+    /**
+     * Returns the count of segment files.
+     */
+    public int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    /**
+     * Forces the appended records to the disk and stops the flusher. The segments are unmapped by GC, Java 8 has no API to unmap them explicitly.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        LockSupport.unpark(flusher);
+        Uninterruptibles.joinUninterruptibly(flusher);
+
+        synchronized (this)
+        {
+            force(writtenPosition);
+        }
+    }
+
+    /**
+     * Reads the records of journal in the order of append. A reader is used by one thread.
+     */
+    public final class Reader
+    {
+        private final Path offsetPath;
+        private long position;
+        private int segmentIndex = -1;
+        private ByteBuffer buffer;
+
+        private Reader(long position, Path offsetPath)
+        {
+            this.position = position;
+            this.offsetPath = offsetPath;
+        }
+
+        /**
+         * Reads the next record.
+         * 
+         * @return Returns the message, or null if the reader has reached the last appended record.
+         */
+        public Message poll()
+        {
+            while (position < writtenPosition)
+            {
+                int index = segmentIndex(position);
+                int offset = (int) (position % segmentSize);
+                if (index != segmentIndex)
+                {
+                    buffer = segments.get(index).duplicate();
+                    segmentIndex = index;
+                }
+
+                int length = offset + HEADER < segmentSize ? buffer.getInt(offset) : END_OF_SEGMENT;
+                if (length == END_OF_SEGMENT)
+                {
+                    position = position(index + 1, 0);
+                    continue;
+                }
+
+                buffer.limit(offset + HEADER + length);
+                buffer.position(offset + HEADER);
+                Message message = MessageCodec.decode(buffer);
+                buffer.limit(segmentSize);
+
+                position += HEADER + length;
+                return message;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the position of the next record to read.
+         */
+        public long getPosition()
+        {
+            return position;
+        }
+
+        /**
+         * Stores the position of the next record to read, so the reader with the same name continues from it after a restart.
+         * 
+         * @throws IOException if the offset file cannot be written.
+         */
+        public void commit() throws IOException
+        {
+            if (offsetPath == null)
+            {
+                throw new IllegalStateException("Only named reader can commit the position");
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(0, position);
+            try (FileChannel channel = FileChannel.open(offsetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+            {
+                channel.write(bytes, 0);
+                channel.force(false);
+            }
+        }
+    }
+}
@@ -1,18 +1,16 @@
 package com.sme.multithreading.model;
 
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.commons.lang3.builder.ToStringStyle;
-
 /**
  * Provides POJO message with delay option.
  */
-public final class DelayedMessage extends Message
+public final class DelayedMessage extends Message implements MessageView
 {
     private final int id;
     private final int delay;
 
+    // rendered on the first call of toString, a race renders the same value twice
+    private String text;
+
     public DelayedMessage(int id, int delay, String message)
     {
         super(message);
@@ -20,11 +18,13 @@ public final class DelayedMessage extends Message
         this.delay = delay;
     }
 
+    @Override
     public int getId()
     {
         return id;
     }
 
+    @Override
     public int getDelay()
     {
         return delay;
@@ -39,18 +39,37 @@ public final class DelayedMessage extends Message
     @Override
     public int hashCode()
     {
-        return HashCodeBuilder.reflectionHashCode(this);
+        return 31 * (31 * super.hashCode() + id) + delay;
     }
 
     @Override
     public boolean equals(Object obj)
     {
-        return EqualsBuilder.reflectionEquals(this, obj);
+        if (this == obj)
+        {
+            return true;
+        }
+        if (!super.equals(obj))
+        {
+            return false;
+        }
+
+        DelayedMessage other = (DelayedMessage) obj;
+        return id == other.id && delay == other.delay;
     }
 
     @Override
     public String toString()
     {
-        return ToStringBuilder.reflectionToString(this, ToStringStyle.JSON_STYLE);
+        String result = text;
+        if (result == null)
+        {
+            StringBuilder builder = new StringBuilder(48 + (getMessage() == null ? 4 : getMessage().length()));
+            builder.append("{\"id\":").append(id).append(",\"delay\":").append(delay).append(',');
+            appendJson(builder, "message", getMessage());
+            result = builder.append('}').toString();
+            text = result;
+        }
+        return result;
     }
 }
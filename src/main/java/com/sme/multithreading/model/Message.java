@@ -1,16 +1,12 @@
 package com.sme.multithreading.model;
 
-import static org.apache.commons.lang3.builder.EqualsBuilder.reflectionEquals;
-import static org.apache.commons.lang3.builder.HashCodeBuilder.reflectionHashCode;
-import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
-
-import org.apache.commons.lang3.builder.ToStringStyle;
-
 /**
  * Mutable POJO represents message object.
  */
 public class Message
 {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
     private String message;
 
     public Message()
@@ -36,18 +32,93 @@ public class Message
     @Override
     public int hashCode()
     {
-        return reflectionHashCode(this);
+        return message == null ? 0 : message.hashCode();
     }
 
     @Override
     public boolean equals(Object obj)
     {
-        return reflectionEquals(this, obj);
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+
+        String otherMessage = ((Message) obj).message;
+        return message == null ? otherMessage == null : message.equals(otherMessage);
     }
 
     @Override
     public String toString()
     {
-        return reflectionToString(this, ToStringStyle.JSON_STYLE);
+        StringBuilder builder = new StringBuilder(16 + (message == null ? 4 : message.length()));
+        builder.append('{');
+        appendJson(builder, "message", message);
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Appends a JSON string field like {@link org.apache.commons.lang3.builder.ToStringStyle#JSON_STYLE} does: the value is escaped like
+     * {@link org.apache.commons.lang3.StringEscapeUtils#escapeJson(String)}, the control and non-ASCII chars are written as escape sequences.
+     */
+    static void appendJson(StringBuilder builder, String name, String value)
+    {
+        builder.append('"').append(name).append("\":");
+        if (value == null)
+        {
+            builder.append("null");
+            return;
+        }
+
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append('\\').append(c);
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7F)
+                    {
+                        appendUnicodeEscape(builder, c);
+                    }
+                    else
+                    {
+                        builder.append(c);
+                    }
+            }
+        }
+        builder.append('"');
+    }
+
+    private static void appendUnicodeEscape(StringBuilder builder, char c)
+    {
+        builder.append("\\u");
+        for (int shift = 12; shift >= 0; shift -= 4)
+        {
+            builder.append(HEX_DIGITS[c >> shift & 0xF]);
+        }
     }
 }
@@ -0,0 +1,260 @@
+package com.sme.multithreading.model;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Off-heap storage of message id, delay and UTF-8 payload.
+ * <p>
+ * Records are appended to direct {@link ByteBuffer} slabs, so a large backlog of messages is a few slab objects on the heap instead of millions of
+ * {@link DelayedMessage} and {@link String} objects in the old generation. A record is addressed by a long handle and read through a reusable
+ * {@link Flyweight}.
+ * </p>
+ * <p>
+ * Record layout: id (int), delay (int), payload length (int), UTF-8 payload bytes.
+ * </p>
+ * <p>
+ * Append is thread-safe. A handle must be passed to a reader through a safe publication, for example a {@link java.util.concurrent.BlockingQueue}.
+ * Slabs are freed in bulk: {@link #reset()} rewinds all slabs to reuse them and {@link #close()} drops them. Both invalidate all handles.
+ * </p>
+ */
+public class MessageArena implements AutoCloseable
+{
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int ID_OFFSET = 0;
+    private static final int DELAY_OFFSET = Integer.BYTES;
+    private static final int LENGTH_OFFSET = 2 * Integer.BYTES;
+
+    private final int slabSize;
+    // copy on grow, so readers resolve a handle without the lock
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    // replaces malformed chars like String#getBytes does
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // the writer uses own duplicate of the current slab to not move the position of the shared one
+    private ByteBuffer writer;
+    private int slabIndex = -1;
+    private long recordCount;
+
+    /**
+     * Creates the arena.
+     * 
+     * @param slabSize The size of one slab in bytes, the max size of one record.
+     */
+    public MessageArena(int slabSize)
+    {
+        if (slabSize <= HEADER_SIZE)
+        {
+            throw new IllegalArgumentException("Expects slab size greater than " + HEADER_SIZE + " bytes, but got " + slabSize);
+        }
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Appends the message.
+     * 
+     * @param message The message;
+     * @return Returns the handle of the record.
+     */
+    public long append(MessageView message)
+    {
+        return append(message.getId(), message.getDelay(), message.getMessage());
+    }
+
+    /**
+     * Appends the message.
+     * 
+     * @param id The message id;
+     * @param delay The message delay;
+     * @param message The payload;
+     * @return Returns the handle of the record.
+     */
+    public synchronized long append(int id, int delay, String message)
+    {
+        int offset = writer != null ? tryWrite(id, delay, message) : -1;
+        if (offset < 0)
+        {
+            nextSlab();
+            offset = tryWrite(id, delay, message);
+            if (offset < 0)
+            {
+                throw new IllegalArgumentException("The message does not fit " + slabSize + " bytes slab: " + message.length() + " chars");
+            }
+        }
+
+        recordCount++;
+        return (long) slabIndex << 32 | offset;
+    }
+
+    /**
+     * Returns a new flyweight to read records; a flyweight is not thread-safe, so use one per reader thread.
+     */
+    public Flyweight newFlyweight()
+    {
+        return new Flyweight(this);
+    }
+
+    /**
+     * Returns a count of appended records since the last reset.
+     */
+    public synchronized long getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Returns a count of allocated slabs.
+     */
+    public int getSlabCount()
+    {
+        return slabs.length;
+    }
+
+    /**
+     * Returns the off-heap memory reserved by slabs in bytes.
+     */
+    public long getCapacity()
+    {
+        return (long) slabs.length * slabSize;
+    }
+
+    /**
+     * Rewinds all slabs to reuse them, all handles become invalid.
+     */
+    public synchronized void reset()
+    {
+        slabIndex = -1;
+        writer = null;
+        recordCount = 0;
+    }
+
+    /**
+     * Drops all slabs, the direct memory is released when the slabs are garbage collected. All handles become invalid.
+     */
+    @Override
+    public synchronized void close()
+    {
+        reset();
+        slabs = new ByteBuffer[0];
+    }
+
+    // the caller holds the lock, returns the offset of the record or -1 if the slab has no room
+    private int tryWrite(int id, int delay, String message)
+    {
+        int start = writer.position();
+        if (writer.remaining() < HEADER_SIZE)
+        {
+            return -1;
+        }
+
+        writer.position(start + HEADER_SIZE);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(message), writer, true);
+        if (result.isOverflow() || encoder.flush(writer).isOverflow())
+        {
+            writer.position(start);
+            return -1;
+        }
+
+        writer.putInt(start + ID_OFFSET, id);
+        writer.putInt(start + DELAY_OFFSET, delay);
+        writer.putInt(start + LENGTH_OFFSET, writer.position() - start - HEADER_SIZE);
+        return start;
+    }
+
+    // the caller holds the lock
+    private void nextSlab()
+    {
+        slabIndex++;
+        if (slabIndex == slabs.length)
+        {
+            ByteBuffer[] grown = Arrays.copyOf(slabs, slabIndex + 1);
+            grown[slabIndex] = ByteBuffer.allocateDirect(slabSize);
+            slabs = grown;
+        }
+        writer = slabs[slabIndex].duplicate();
+        writer.clear();
+    }
+
+    /**
+     * Reusable view of one record.
+     */
+    public static final class Flyweight implements MessageView
+    {
+        private final MessageArena arena;
+
+        private ByteBuffer slab;
+        private int offset;
+
+        Flyweight(MessageArena arena)
+        {
+            this.arena = arena;
+        }
+
+        /**
+         * Points the flyweight to the record.
+         * 
+         * @param handle The handle returned by {@link MessageArena#append};
+         * @return Returns this flyweight.
+         */
+        public Flyweight wrap(long handle)
+        {
+            slab = arena.slabs[(int) (handle >>> 32)];
+            offset = (int) handle;
+            return this;
+        }
+
+        @Override
+        public int getId()
+        {
+            return slab.getInt(offset + ID_OFFSET);
+        }
+
+        @Override
+        public int getDelay()
+        {
+            return slab.getInt(offset + DELAY_OFFSET);
+        }
+
+        /**
+         * Returns the length of UTF-8 payload in bytes.
+         */
+        public int getMessageLength()
+        {
+            return slab.getInt(offset + LENGTH_OFFSET);
+        }
+
+        /**
+         * Decodes the payload, the only method of the flyweight that allocates.
+         */
+        @Override
+        public String getMessage()
+        {
+            ByteBuffer payload = slab.duplicate();
+            payload.limit(offset + HEADER_SIZE + getMessageLength());
+            payload.position(offset + HEADER_SIZE);
+            return StandardCharsets.UTF_8.decode(payload).toString();
+        }
+
+        /**
+         * Copies the record to a heap {@link DelayedMessage}.
+         */
+        public DelayedMessage toDelayedMessage()
+        {
+            return new DelayedMessage(getId(), getDelay(), getMessage());
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Flyweight [id=" + getId() + ", delay=" + getDelay() + ", messageLength=" + getMessageLength() + "]";
+        }
+    }
+}
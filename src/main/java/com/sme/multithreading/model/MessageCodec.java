@@ -0,0 +1,310 @@
+package com.sme.multithreading.model;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-written binary codec of {@link Message} and {@link DelayedMessage}.
+ * <p>
+ * The codec reads and writes {@link ByteBuffer} directly: UTF-8 bytes of the payload are written char by char without an intermediate byte array.
+ * An ASCII payload in a heap buffer is decoded straight from the backing array, other payloads are decoded into a thread-local scratch char array
+ * that the result string copies once.
+ * </p>
+ * <p>
+ * Record layout: type (byte), for {@link DelayedMessage} id (int) and delay (int), payload length in bytes (int, -1 for null), UTF-8 payload.
+ * </p>
+ */
+public final class MessageCodec
+{
+    private static final byte MESSAGE = 0;
+    private static final byte DELAYED_MESSAGE = 1;
+    private static final int NULL_LENGTH = -1;
+    private static final char REPLACEMENT = '?';
+    // a larger payload gets own array, so a rare huge message does not stay in every thread
+    private static final int MAX_SCRATCH_LENGTH = 64 * 1024;
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[256]);
+
+    // private
+    private MessageCodec()
+    {
+    }
+
+    /**
+     * Returns the size of the encoded message in bytes.
+     * 
+     * @param message The message.
+     */
+    public static int encodedLength(Message message)
+    {
+        int header = message instanceof DelayedMessage ? 1 + 3 * Integer.BYTES : 1 + Integer.BYTES;
+        return header + utf8Length(message.getMessage());
+    }
+
+    /**
+     * Encodes the message at the current position of the buffer.
+     * 
+     * @param message The message;
+     * @param buffer The buffer to write to;
+     * @return Returns a count of written bytes.
+     * @throws BufferOverflowException if the buffer has no room, the position of the buffer is not changed.
+     */
+    public static int encode(Message message, ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        try
+        {
+            if (message instanceof DelayedMessage)
+            {
+                DelayedMessage delayedMessage = (DelayedMessage) message;
+                buffer.put(DELAYED_MESSAGE);
+                buffer.putInt(delayedMessage.getId());
+                buffer.putInt(delayedMessage.getDelay());
+            }
+            else
+            {
+                buffer.put(MESSAGE);
+            }
+            writeString(message.getMessage(), buffer);
+        }
+        catch (BufferOverflowException e)
+        {
+            buffer.position(start);
+            throw e;
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Decodes a message at the current position of the buffer.
+     * 
+     * @param buffer The buffer to read from;
+     * @return Returns {@link Message} or {@link DelayedMessage}.
+     * @throws BufferUnderflowException if the buffer does not contain the whole record, the position of the buffer is not changed;
+     * @throws IllegalArgumentException if the record has unknown type or malformed UTF-8 payload, the position of the buffer is not changed.
+     */
+    public static Message decode(ByteBuffer buffer)
+    {
+        int start = buffer.position();
+        try
+        {
+            byte type = buffer.get();
+            switch (type)
+            {
+                case MESSAGE:
+                    return new Message(readString(buffer));
+                case DELAYED_MESSAGE:
+                    int id = buffer.getInt();
+                    int delay = buffer.getInt();
+                    return new DelayedMessage(id, delay, readString(buffer));
+                default:
+                    throw new IllegalArgumentException("Unknown message type " + type + " at " + start + " position");
+            }
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            buffer.position(start);
+            throw e;
+        }
+    }
+
+    private static int utf8Length(String value)
+    {
+        if (value == null)
+        {
+            return 0;
+        }
+
+        int length = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                length++;
+            }
+            else if (c < 0x800)
+            {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                length += 4;
+                i++;
+            }
+            else
+            {
+                // a lone surrogate is written as '?' like String#getBytes does
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeString(String value, ByteBuffer buffer)
+    {
+        if (value == null)
+        {
+            buffer.putInt(NULL_LENGTH);
+            return;
+        }
+
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c < 0x80)
+            {
+                buffer.put((byte) c);
+            }
+            else if (c < 0x800)
+            {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c))
+            {
+                buffer.put((byte) REPLACEMENT);
+            }
+            else
+            {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+
+        buffer.putInt(lengthPosition, buffer.position() - start);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH)
+        {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+
+        if (buffer.hasArray() && isAscii(buffer.array(), buffer.arrayOffset() + buffer.position(), length))
+        {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.ISO_8859_1);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        // UTF-8 never has more chars than bytes
+        char[] chars = scratch(length);
+        int count = 0;
+        int end = buffer.position() + length;
+        while (buffer.position() < end)
+        {
+            int position = buffer.position();
+            int b = buffer.get() & 0xFF;
+            if (b < 0x80)
+            {
+                chars[count++] = (char) b;
+            }
+            else if (b >= 0xC2 && b < 0xE0)
+            {
+                checkSequence(buffer, position, 2, end);
+                chars[count++] = (char) ((b & 0x1F) << 6 | continuation(buffer, position));
+            }
+            else if (b >= 0xE0 && b < 0xF0)
+            {
+                checkSequence(buffer, position, 3, end);
+                int c = (b & 0x0F) << 12 | continuation(buffer, position) << 6 | continuation(buffer, position);
+                if (c < 0x800 || Character.isSurrogate((char) c))
+                {
+                    throw malformed(position);
+                }
+                chars[count++] = (char) c;
+            }
+            else if (b >= 0xF0 && b < 0xF5)
+            {
+                checkSequence(buffer, position, 4, end);
+                int codePoint = (b & 0x07) << 18 | continuation(buffer, position) << 12 | continuation(buffer, position) << 6
+                        | continuation(buffer, position);
+                if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT || codePoint > Character.MAX_CODE_POINT)
+                {
+                    throw malformed(position);
+                }
+                chars[count++] = Character.highSurrogate(codePoint);
+                chars[count++] = Character.lowSurrogate(codePoint);
+            }
+            else
+            {
+                // a continuation byte without a lead one or a lead byte that UTF-8 never uses
+                throw malformed(position);
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static boolean isAscii(byte[] bytes, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            if (bytes[i] < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char[] scratch(int length)
+    {
+        if (length > MAX_SCRATCH_LENGTH)
+        {
+            return new char[length];
+        }
+
+        char[] chars = SCRATCH.get();
+        if (chars.length < length)
+        {
+            chars = new char[Math.min(MAX_SCRATCH_LENGTH, Math.max(length, 2 * chars.length))];
+            SCRATCH.set(chars);
+        }
+        return chars;
+    }
+
+    // the sequence must end inside the payload, otherwise the payload length of the record is wrong
+    private static void checkSequence(ByteBuffer buffer, int position, int size, int end)
+    {
+        if (position + size > end)
+        {
+            throw new IllegalArgumentException("Truncated UTF-8 sequence at " + position + " position, the payload ends at " + end + " position");
+        }
+    }
+
+    private static int continuation(ByteBuffer buffer, int position)
+    {
+        int b = buffer.get() & 0xFF;
+        if ((b & 0xC0) != 0x80)
+        {
+            throw malformed(position);
+        }
+        return b & 0x3F;
+    }
+
+    private static IllegalArgumentException malformed(int position)
+    {
+        return new IllegalArgumentException("Malformed UTF-8 sequence at " + position + " position");
+    }
+}
@@ -0,0 +1,13 @@
+package com.sme.multithreading.model;
+
+/**
+ * Read-only getters of a message with id and delay.
+ */
+public interface MessageView
+{
+    int getId();
+
+    int getDelay();
+
+    String getMessage();
+}
@@ -0,0 +1,88 @@
+package com.sme.multithreading.model;
+
+import java.util.Objects;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides {@link DelayedMessage} with the deadline to schedule it on.
+ * <p>
+ * The deadline is in {@link System#nanoTime()} scale, the default one is the time of creation plus the delay of the message.
+ * </p>
+ */
+public final class ScheduledMessage implements Delayed
+{
+    private final DelayedMessage message;
+    private final long deadline;
+
+    public ScheduledMessage(DelayedMessage message)
+    {
+        this(message, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(message.getDelay()));
+    }
+
+    public ScheduledMessage(DelayedMessage message, long deadline)
+    {
+        this.message = message;
+        this.deadline = deadline;
+    }
+
+    public DelayedMessage getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * Returns the deadline in {@link System#nanoTime()} scale.
+     */
+    public long getDeadline()
+    {
+        return deadline;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit)
+    {
+        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other)
+    {
+        if (other instanceof ScheduledMessage)
+        {
+            // nanoTime values are compared by difference to be safe on overflow
+            long difference = deadline - ((ScheduledMessage) other).deadline;
+            return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * Objects.hashCode(message) + Long.hashCode(deadline);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+        {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass())
+        {
+            return false;
+        }
+
+        ScheduledMessage other = (ScheduledMessage) obj;
+        return deadline == other.deadline && Objects.equals(message, other.message);
+    }
+
+    @Override
+    public String toString()
+    {
+        // the order of fields is the one of reflectionToString used before
+        return "{\"deadline\":" + deadline + ",\"message\":" + message + "}";
+    }
+}
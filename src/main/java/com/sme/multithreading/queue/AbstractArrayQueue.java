@@ -0,0 +1,135 @@
+package com.sme.multithreading.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base ring buffer of {@link SpscArrayQueue} and {@link MpmcArrayQueue}.
+ * <p>
+ * The iterator and {@link #remove(Object)} walk the slots between the consumer and the producer indexes. A slot may be consumed and filled by the
+ * next lap while it is read, so the subclass validates every read in {@link #valueAt(long)}. {@link #remove(Object)} cannot close the gap in the
+ * middle of ring, so it replaces the element by {@link #REMOVED} mark with CAS, and a consumer that supports it takes the slot with getAndSet
+ * and skips the marks. Only one of them wins the slot.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+abstract class AbstractArrayQueue<E> extends AbstractWaitingBlockingQueue<E>
+{
+    /** The mark of removed element in a slot. */
+    protected static final Object REMOVED = new Object();
+
+    protected final AtomicReferenceArray<Object> buffer;
+    protected final int mask;
+
+    protected final Sequence producerIndex = new Sequence();
+    protected final Sequence consumerIndex = new Sequence();
+
+    // the marks not skipped by the consumer yet
+    private final LongAdder removedCount = new LongAdder();
+
+    protected AbstractArrayQueue(int capacity, WaitStrategy waitStrategy)
+    {
+        super(waitStrategy);
+        int size = roundToPowerOfTwo(capacity);
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Returns the value of slot at the index if the slot still keeps the element of this index, otherwise null.
+     * 
+     * @param index The index between the consumer and the producer indexes.
+     */
+    protected abstract Object valueAt(long index);
+
+    /**
+     * Called by the consumer that has taken {@link #REMOVED} mark from a slot.
+     */
+    protected final void markSkipped()
+    {
+        removedCount.decrement();
+    }
+
+    @Override
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        long end = producerIndex.get();
+        for (long index = consumerIndex.get(); index < end; index++)
+        {
+            Object e = valueAt(index);
+            if (e != null && e != REMOVED)
+            {
+                return (E) e;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        if (o == null)
+        {
+            return false;
+        }
+
+        long end = producerIndex.get();
+        for (long index = consumerIndex.get(); index < end; index++)
+        {
+            Object e = valueAt(index);
+            // the slot may be filled by the next lap with the same element after the read, that one is in the queue too
+            if (e != null && e != REMOVED && o.equals(e) && buffer.compareAndSet((int) index & mask, e, REMOVED))
+            {
+                removedCount.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected List<E> snapshot()
+    {
+        long end = producerIndex.get();
+        long start = consumerIndex.get();
+        List<E> elements = new ArrayList<>((int) Math.max(0, Math.min(capacity(), end - start)));
+        for (long index = start; index < end; index++)
+        {
+            Object e = valueAt(index);
+            if (e != null && e != REMOVED)
+            {
+                elements.add((E) e);
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public int size()
+    {
+        // read the consumer index before and after the producer one to get a consistent pair
+        long after = consumerIndex.get();
+        while (true)
+        {
+            long before = after;
+            long producer = producerIndex.get();
+            after = consumerIndex.get();
+            if (before == after)
+            {
+                // a producer can move the index before it fills the slot, a mark is counted before it is skipped
+                return (int) Math.max(0, Math.min(capacity(), producer - after - removedCount.sum()));
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.sme.multithreading.queue;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base lock-free {@link BlockingQueue}: the blocking methods retry the non-blocking ones and wait with {@link WaitStrategy} between attempts.
+ * <p>
+ * Subclasses implement {@link #offer(Object)}, {@link #poll()}, {@link #peek()}, {@link #size()}, {@link #capacity()}, {@link #snapshot()} and
+ * {@link #remove(Object)}. A lock-free queue cannot walk the slots that the other threads are changing, so the iterator walks a snapshot copy of
+ * elements and does not see the later changes. Its {@code remove()} removes the returned element by {@link #remove(Object)} if it is still in the
+ * queue. {@link #toString()}, {@link #contains(Object)} and the bulk methods of collection work by the copy too.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public abstract class AbstractWaitingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    private final WaitStrategy waitStrategy;
+
+    protected AbstractWaitingBlockingQueue(WaitStrategy waitStrategy)
+    {
+        this.waitStrategy = Objects.requireNonNull(waitStrategy, "waitStrategy");
+    }
+
+    /**
+     * Returns the max count of elements.
+     */
+    public abstract int capacity();
+
+    /**
+     * Returns the copy of elements from the head to the tail, the elements taken or added during the call may be missed.
+     */
+    protected abstract List<E> snapshot();
+
+    @Override
+    public abstract boolean remove(Object o);
+
+    @Override
+    public void put(E e) throws InterruptedException
+    {
+        int counter = 0;
+        while (!offer(e))
+        {
+            checkInterrupted();
+            counter = waitStrategy.idle(counter);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        while (!offer(e))
+        {
+            checkInterrupted();
+            if (deadline - System.nanoTime() <= 0)
+            {
+                return false;
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null)
+        {
+            checkInterrupted();
+            counter = waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int counter = 0;
+        E e;
+        while ((e = poll()) == null)
+        {
+            checkInterrupted();
+            if (deadline - System.nanoTime() <= 0)
+            {
+                return null;
+            }
+            counter = waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return capacity() - size();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        Objects.requireNonNull(c);
+        if (c == this)
+        {
+            throw new IllegalArgumentException("Cannot drain the queue to itself");
+        }
+
+        int count = 0;
+        E e;
+        while (count < maxElements && (e = poll()) != null)
+        {
+            c.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        return new SnapshotIterator(snapshot().iterator());
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the power of two not less than the given capacity.
+     */
+    protected static int roundToPowerOfTwo(int capacity)
+    {
+        if (capacity < 1 || capacity > 1 << 30)
+        {
+            throw new IllegalArgumentException("Expects capacity in [1..2^30] range, but got " + capacity);
+        }
+        return 1 << 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    /**
+     * The iterator over the copy of elements.
+     */
+    private final class SnapshotIterator implements Iterator<E>
+    {
+        private final Iterator<E> iterator;
+        private E last;
+
+        private SnapshotIterator(Iterator<E> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public E next()
+        {
+            last = iterator.next();
+            return last;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last == null)
+            {
+                throw new IllegalStateException();
+            }
+            AbstractWaitingBlockingQueue.this.remove(last);
+            last = null;
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException
+    {
+        if (Thread.interrupted())
+        {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.sme.multithreading.queue;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unbounded LIFO {@link BlockingQueue} on top of {@link EliminationBackoffStack}, so the consumers that expect a queue take the last produced
+ * element first.
+ * <p>
+ * Compare with {@link LinkedBlockingDeque} used as a stack, where all producers and consumers share one lock. The consumers wait in
+ * {@link #take()} with {@link WaitStrategy}. The iterator returns the elements from the top to the bottom.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class BlockingStack<E> extends AbstractWaitingBlockingQueue<E>
+{
+    private final EliminationBackoffStack<E> stack = new EliminationBackoffStack<>();
+    // the stack walks all nodes to count them, so the size is kept aside
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates the stack with {@link WaitStrategies#PARK} strategy.
+     */
+    public BlockingStack()
+    {
+        this(WaitStrategies.PARK);
+    }
+
+    /**
+     * Creates the stack.
+     * 
+     * @param waitStrategy The strategy to wait in the blocking methods.
+     */
+    public BlockingStack(WaitStrategy waitStrategy)
+    {
+        super(waitStrategy);
+    }
+
+    @Override
+    public int capacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        stack.push(e);
+        size.increment();
+        return true;
+    }
+
+    @Override
+    public E poll()
+    {
+        E e = stack.pop();
+        if (e != null)
+        {
+            size.decrement();
+        }
+        return e;
+    }
+
+    @Override
+    public E peek()
+    {
+        return stack.peek();
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        if (stack.remove(o))
+        {
+            size.decrement();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected List<E> snapshot()
+    {
+        return stack.toList();
+    }
+
+    @Override
+    public int size()
+    {
+        // a pop may be counted before the push of the same element
+        return (int) Math.max(0, size.sum());
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return stack.isEmpty();
+    }
+
+    /**
+     * Returns the count of push/pop pairs that met in the elimination array.
+     */
+    public long getEliminationCount()
+    {
+        return stack.getEliminationCount();
+    }
+}
@@ -0,0 +1,312 @@
+package com.sme.multithreading.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free LIFO stack with elimination backoff (Treiber stack by R. Kent Treiber, elimination by D. Hendler, N. Shavit and L. Yerushalmi).
+ * <p>
+ * The stack is a linked list with CAS on the top pointer. Under contention most CASes fail and all threads retry on the same pointer. So a thread
+ * that fails the CAS backs off to a random slot of the elimination array and waits there for a short time: a push that meets a pop hands the
+ * element over directly and both complete without touching the top pointer. A push and a pop in the same moment are linearizable in any order,
+ * so the elimination keeps the LIFO contract.
+ * </p>
+ * <p>
+ * The range of slots adapts: a thread uses fewer slots after a timeout (few partners) and more slots after a collision with a thread of the same
+ * kind.
+ * </p>
+ * <p>
+ * {@link #remove(Object)} does not unlink a node in the middle of the list, it takes the item of node with CAS and leaves the empty node to
+ * {@link #pop()}. The pop takes the item with getAndSet too and skips the empty nodes, so only one of them gets the item.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class EliminationBackoffStack<E>
+{
+    private static final int SLOTS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long EXCHANGE_TIMEOUT_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Object> ITEM = AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "item");
+
+    private final AtomicReference<Node<E>> top = new AtomicReference<>();
+    private final Exchanger[] eliminationArray = new Exchanger[SLOTS];
+    private final LongAdder eliminationCount = new LongAdder();
+
+    // the range is per thread, but a shared approximate value is good enough and avoids a thread local
+    private volatile int range = 1;
+
+    /**
+     * Creates the empty stack.
+     */
+    public EliminationBackoffStack()
+    {
+        for (int i = 0; i < SLOTS; i++)
+        {
+            eliminationArray[i] = new Exchanger();
+        }
+    }
+
+    /**
+     * Pushes the element on the top of the stack.
+     * 
+     * @param e The element.
+     */
+    public void push(E e)
+    {
+        Objects.requireNonNull(e);
+
+        Node<E> node = new Node<>(e);
+        while (true)
+        {
+            Node<E> head = top.get();
+            node.next = head;
+            if (top.compareAndSet(head, node))
+            {
+                return;
+            }
+
+            Object other = eliminate(e);
+            if (other == null)
+            {
+                // a pop has taken the element
+                eliminationCount.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the element from the top of the stack.
+     * 
+     * @return Returns the element or null if the stack is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E pop()
+    {
+        while (true)
+        {
+            Node<E> head = top.get();
+            if (head == null)
+            {
+                return null;
+            }
+            if (top.compareAndSet(head, head.next))
+            {
+                E item = (E) ITEM.getAndSet(head, null);
+                if (item != null)
+                {
+                    return item;
+                }
+                // the item is removed, pop the next node
+                continue;
+            }
+
+            Object other = eliminate(null);
+            if (other != null && other != Exchanger.TIMEOUT)
+            {
+                eliminationCount.increment();
+                return (E) other;
+            }
+        }
+    }
+
+    /**
+     * Returns the element on the top of the stack without removing it.
+     * 
+     * @return Returns the element or null if the stack is empty.
+     */
+    public E peek()
+    {
+        for (Node<E> node = top.get(); node != null; node = node.next)
+        {
+            E item = node.item;
+            if (item != null)
+            {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the stack is empty.
+     */
+    public boolean isEmpty()
+    {
+        return peek() == null;
+    }
+
+    /**
+     * Returns the count of elements, walks the whole stack.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Node<E> node = top.get(); node != null && size < Integer.MAX_VALUE; node = node.next)
+        {
+            if (node.item != null)
+            {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes the element equal to the given one nearest to the top.
+     * 
+     * @param o The element to remove.
+     * @return Returns true if the element is removed.
+     */
+    public boolean remove(Object o)
+    {
+        if (o == null)
+        {
+            return false;
+        }
+
+        for (Node<E> node = top.get(); node != null; node = node.next)
+        {
+            E item = node.item;
+            if (item != null && o.equals(item) && ITEM.compareAndSet(node, item, null))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the copy of elements from the top to the bottom, the elements pushed or popped during the call may be missed.
+     */
+    public List<E> toList()
+    {
+        List<E> elements = new ArrayList<>();
+        for (Node<E> node = top.get(); node != null; node = node.next)
+        {
+            E item = node.item;
+            if (item != null)
+            {
+                elements.add(item);
+            }
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the count of push/pop pairs that met in the elimination array.
+     */
+    public long getEliminationCount()
+    {
+        return eliminationCount.sum();
+    }
+
+    // returns the item of the partner, null if the partner is a pop, or TIMEOUT
+    private Object eliminate(Object item)
+    {
+        int currentRange = range;
+        Object other = eliminationArray[ThreadLocalRandom.current().nextInt(currentRange)].exchange(item, EXCHANGE_TIMEOUT_NANOS);
+
+        if (other == Exchanger.TIMEOUT)
+        {
+            range = Math.max(1, currentRange - 1);
+        }
+        else if ((item == null) == (other == null))
+        {
+            // met a thread of the same kind, spread the threads wider
+            range = Math.min(SLOTS, currentRange + 1);
+            return Exchanger.TIMEOUT;
+        }
+        return other;
+    }
+
+    /**
+     * The node of linked list.
+     */
+    private static final class Node<E>
+    {
+        // not private for the field updater
+        volatile E item;
+        private Node<E> next;
+
+        private Node(E item)
+        {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Lock-free exchanger of one slot: the first thread waits in the slot, the second one takes its item and leaves own one.
+     */
+    private static final class Exchanger
+    {
+        private static final Object TIMEOUT = new Object();
+
+        private static final int EMPTY = 0;
+        private static final int WAITING = 1;
+        private static final int BUSY = 2;
+
+        private final AtomicStampedReference<Object> slot = new AtomicStampedReference<>(null, EMPTY);
+
+        private Object exchange(Object item, long timeoutNanos)
+        {
+            long deadline = System.nanoTime() + timeoutNanos;
+            int[] stampHolder = new int[1];
+
+            while (System.nanoTime() - deadline < 0)
+            {
+                Object other = slot.get(stampHolder);
+                switch (stampHolder[0])
+                {
+                    case EMPTY:
+                        if (slot.compareAndSet(other, item, EMPTY, WAITING))
+                        {
+                            return awaitPartner(item, deadline, stampHolder);
+                        }
+                        break;
+                    case WAITING:
+                        if (slot.compareAndSet(other, item, WAITING, BUSY))
+                        {
+                            return other;
+                        }
+                        break;
+                    default:
+                        // two other threads are exchanging
+                        break;
+                }
+            }
+            return TIMEOUT;
+        }
+
+        private Object awaitPartner(Object item, long deadline, int[] stampHolder)
+        {
+            while (System.nanoTime() - deadline < 0)
+            {
+                Object other = slot.get(stampHolder);
+                if (stampHolder[0] == BUSY)
+                {
+                    slot.set(null, EMPTY);
+                    return other;
+                }
+            }
+
+            // withdraw the item, or take the item of the partner that came in the last moment
+            if (slot.compareAndSet(item, null, WAITING, EMPTY))
+            {
+                return TIMEOUT;
+            }
+            Object other = slot.get(stampHolder);
+            slot.set(null, EMPTY);
+            return other;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.sme.multithreading.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.sme.multithreading.util.Histogram;
+
+/**
+ * {@link BlockingQueue} decorator that records the queue depth, the time producers and consumers spend blocked and the sojourn time of elements.
+ * <p>
+ * The delegate keeps every element with its enqueue time, so the dequeue records the time the element has spent in the queue. The enqueue time is
+ * taken before the put, so the sojourn time of an element includes the put wait time of its producer. The blocking methods try the non-blocking ones
+ * first and read the clock only when they have to wait, so a stage that never waits pays only for two clock reads per element. The depth is sampled
+ * on every {@value #DEPTH_SAMPLE_RATE}-th dequeue on average, since the size of a locking queue takes the lock.
+ * </p>
+ * <p>
+ * Compare put and take wait times: producers blocked in put mean the stage is consumer-bound, consumers blocked in take mean it is producer-bound.
+ * The histograms are lock-free, see {@link Histogram}.
+ * </p>
+ * <p>
+ * Usage: {@code BlockingQueue<Message> queue = new InstrumentedBlockingQueue<>(new ArrayBlockingQueue<>(10));}
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class InstrumentedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    private static final int DEPTH_SAMPLE_RATE = 64;
+
+    private final BlockingQueue<Timed<E>> delegate;
+
+    private final Histogram depth = new Histogram();
+    private final Histogram putWaitTime = new Histogram();
+    private final Histogram takeWaitTime = new Histogram();
+    private final Histogram sojournTime = new Histogram();
+
+    /**
+     * Creates the decorator.
+     * 
+     * @param delegate The empty queue to keep elements with their enqueue time.
+     */
+    public InstrumentedBlockingQueue(BlockingQueue<Timed<E>> delegate)
+    {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        return delegate.offer(new Timed<>(e));
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException
+    {
+        Timed<E> timed = new Timed<>(e);
+        if (!delegate.offer(timed))
+        {
+            long start = System.nanoTime();
+            delegate.put(timed);
+            putWaitTime.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        Timed<E> timed = new Timed<>(e);
+        if (delegate.offer(timed))
+        {
+            return true;
+        }
+
+        long start = System.nanoTime();
+        boolean accepted = delegate.offer(timed, timeout, unit);
+        putWaitTime.record(System.nanoTime() - start);
+        return accepted;
+    }
+
+    @Override
+    public E poll()
+    {
+        return dequeued(delegate.poll());
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        Timed<E> timed = delegate.poll();
+        if (timed == null)
+        {
+            long start = System.nanoTime();
+            timed = delegate.take();
+            takeWaitTime.record(System.nanoTime() - start);
+        }
+        return dequeued(timed);
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        Timed<E> timed = delegate.poll();
+        if (timed == null)
+        {
+            long start = System.nanoTime();
+            timed = delegate.poll(timeout, unit);
+            takeWaitTime.record(System.nanoTime() - start);
+        }
+        return dequeued(timed);
+    }
+
+    @Override
+    public E peek()
+    {
+        Timed<E> timed = delegate.peek();
+        return timed == null ? null : timed.element;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        Objects.requireNonNull(c);
+        if (c == this)
+        {
+            throw new IllegalArgumentException("Cannot drain the queue to itself");
+        }
+
+        List<Timed<E>> drained = new ArrayList<>();
+        int count = delegate.drainTo(drained, maxElements);
+        for (Timed<E> timed : drained)
+        {
+            c.add(dequeued(timed));
+        }
+        return count;
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return delegate.remainingCapacity();
+    }
+
+    @Override
+    public int size()
+    {
+        return delegate.size();
+    }
+
+    @Override
+    public Iterator<E> iterator()
+    {
+        Iterator<Timed<E>> iterator = delegate.iterator();
+        return new Iterator<E>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next()
+            {
+                return iterator.next().element;
+            }
+
+            @Override
+            public void remove()
+            {
+                iterator.remove();
+            }
+        };
+    }
+
+    /**
+     * Returns the snapshot of histograms and resets them.
+     */
+    public Stats snapshotAndReset()
+    {
+        return new Stats(depth.snapshotAndReset(), putWaitTime.snapshotAndReset(), takeWaitTime.snapshotAndReset(), sojournTime.snapshotAndReset());
+    }
+
+    private E dequeued(Timed<E> timed)
+    {
+        if (timed == null)
+        {
+            return null;
+        }
+
+        sojournTime.record(System.nanoTime() - timed.enqueueTime);
+        if (ThreadLocalRandom.current().nextInt(DEPTH_SAMPLE_RATE) == 0)
+        {
+            depth.record(delegate.size());
+        }
+        return timed.element;
+    }
+
+    /**
+     * The element with its enqueue time.
+     *
+     * @param <E> The type of element.
+     */
+    public static final class Timed<E>
+    {
+        private final E element;
+        private final long enqueueTime;
+
+        private Timed(E element)
+        {
+            this.element = Objects.requireNonNull(element);
+            this.enqueueTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * The snapshot of histograms: depth, put and take wait time, sojourn time in nanoseconds.
+     */
+    public static final class Stats
+    {
+        private final Histogram.Snapshot depth;
+        private final Histogram.Snapshot putWaitTime;
+        private final Histogram.Snapshot takeWaitTime;
+        private final Histogram.Snapshot sojournTime;
+
+        private Stats(Histogram.Snapshot depth, Histogram.Snapshot putWaitTime, Histogram.Snapshot takeWaitTime, Histogram.Snapshot sojournTime)
+        {
+            this.depth = depth;
+            this.putWaitTime = putWaitTime;
+            this.takeWaitTime = takeWaitTime;
+            this.sojournTime = sojournTime;
+        }
+
+        /**
+         * Returns the sampled queue depth.
+         */
+        public Histogram.Snapshot getDepth()
+        {
+            return depth;
+        }
+
+        /**
+         * Returns the time producers waited in put, only the calls that had to wait are counted.
+         */
+        public Histogram.Snapshot getPutWaitTime()
+        {
+            return putWaitTime;
+        }
+
+        /**
+         * Returns the time consumers waited in take, only the calls that had to wait are counted.
+         */
+        public Histogram.Snapshot getTakeWaitTime()
+        {
+            return takeWaitTime;
+        }
+
+        /**
+         * Returns the time from the put call to the dequeue of elements.
+         */
+        public Histogram.Snapshot getSojournTime()
+        {
+            return sojournTime;
+        }
+
+        /**
+         * Returns true if the producers waited for free space longer than the consumers waited for elements.
+         */
+        public boolean isConsumerBound()
+        {
+            return putWaitTime.getSum() > takeWaitTime.getSum();
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s-bound, depth: %s; put wait: %s; take wait: %s; sojourn: %s",
+                    isConsumerBound() ? "consumer" : "producer",
+                    depth,
+                    putWaitTime.toMicrosString(),
+                    takeWaitTime.toMicrosString(),
+                    sojournTime.toMicrosString());
+        }
+    }
+}
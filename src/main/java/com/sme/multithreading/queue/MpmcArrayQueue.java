@@ -0,0 +1,128 @@
+package com.sme.multithreading.queue;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer/multi-consumer queue with sequence-numbered slots (the Dmitry Vyukov algorithm).
+ * <p>
+ * Compare with {@link ArrayBlockingQueue} where all producers and consumers fight for one lock. Here every slot keeps a sequence number that says
+ * whose turn it is: a producer may fill the slot when the sequence equals the producer index, a consumer may empty it when the sequence equals the
+ * consumer index + 1. Producers contend only on CAS of the producer index and consumers only on CAS of the consumer index, so a producer and a
+ * consumer never block each other.
+ * </p>
+ * <p>
+ * The capacity is rounded up to the power of two.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class MpmcArrayQueue<E> extends AbstractArrayQueue<E>
+{
+    private final AtomicLongArray sequences;
+
+    /**
+     * Creates the queue with {@link WaitStrategies#PARK} strategy.
+     * 
+     * @param capacity The capacity, rounded up to the power of two.
+     */
+    public MpmcArrayQueue(int capacity)
+    {
+        this(capacity, WaitStrategies.PARK);
+    }
+
+    /**
+     * Creates the queue.
+     * 
+     * @param capacity The capacity, rounded up to the power of two;
+     * @param waitStrategy The strategy to wait in the blocking methods.
+     */
+    public MpmcArrayQueue(int capacity, WaitStrategy waitStrategy)
+    {
+        super(capacity, waitStrategy);
+        this.sequences = new AtomicLongArray(mask + 1);
+
+        for (int i = 0; i <= mask; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        Objects.requireNonNull(e);
+
+        while (true)
+        {
+            long index = producerIndex.get();
+            int offset = (int) index & mask;
+            long diff = sequences.get(offset) - index;
+
+            if (diff == 0)
+            {
+                if (producerIndex.compareAndSet(index, index + 1))
+                {
+                    buffer.lazySet(offset, e);
+                    // hand the slot to the consumer of the same lap
+                    sequences.lazySet(offset, index + 1);
+                    return true;
+                }
+            }
+            else if (diff < 0)
+            {
+                // the slot is not consumed since the previous lap
+                return false;
+            }
+            // else another producer has taken the index, retry with the fresh one
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        while (true)
+        {
+            long index = consumerIndex.get();
+            int offset = (int) index & mask;
+            long diff = sequences.get(offset) - (index + 1);
+
+            if (diff == 0)
+            {
+                if (consumerIndex.compareAndSet(index, index + 1))
+                {
+                    // getAndSet rather than a plain read, so remove(Object) cannot take the same element
+                    Object e = buffer.getAndSet(offset, null);
+                    // hand the slot to the producer of the next lap
+                    sequences.lazySet(offset, index + mask + 1);
+                    if (e != REMOVED)
+                    {
+                        return (E) e;
+                    }
+                    markSkipped();
+                    continue;
+                }
+            }
+            else if (diff < 0)
+            {
+                // the slot is not filled yet
+                return null;
+            }
+        }
+    }
+
+    @Override
+    protected Object valueAt(long index)
+    {
+        int offset = (int) index & mask;
+        if (sequences.get(offset) != index + 1)
+        {
+            return null;
+        }
+        Object e = buffer.get(offset);
+        // the sequence is the same, so the slot is not consumed and filled by the next lap during the read
+        return sequences.get(offset) == index + 1 ? e : null;
+    }
+}
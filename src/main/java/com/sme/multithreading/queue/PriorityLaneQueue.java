@@ -0,0 +1,510 @@
+package com.sme.multithreading.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link BlockingQueue} with lanes of different priority.
+ * <p>
+ * In one FIFO queue a burst of bulk elements delays the latency-critical ones behind it. Here a selector puts every element to own lane, every lane
+ * is a FIFO with own capacity, so a full bulk lane blocks only its producers and does not take the memory of other lanes. The consumers take
+ * elements by the {@link Policy}:
+ * <ul>
+ * <li>{@link Policy#STRICT_PRIORITY} always takes from the first non-empty lane, lane 0 is the most important one. A busy lane starves the lanes
+ * after it.</li>
+ * <li>{@link Policy#DEFICIT_ROUND_ROBIN} visits the lanes in turn and gives every lane the share of the throughput by its weight (M. Shreedhar and
+ * G. Varghese): a visit adds the weight to the deficit of the lane, the lane is served while the deficit covers the cost of its head element.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Like {@link ArrayBlockingQueue}, one lock guards the lanes with one not-empty condition and one not-full condition per lane.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class PriorityLaneQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>
+{
+    /**
+     * The policy to choose the lane to take from.
+     */
+    public enum Policy
+    {
+        STRICT_PRIORITY,
+        DEFICIT_ROUND_ROBIN
+    }
+
+    private final Policy policy;
+    private final ToIntFunction<? super E> laneSelector;
+    private final ToIntFunction<? super E> cost;
+    private final List<Lane<E>> lanes = new ArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private int count;
+    // the lane visited by the round robin
+    private int current;
+
+    /**
+     * Creates the queue where every element costs 1.
+     * 
+     * @param policy The dequeue policy;
+     * @param laneSelector The function to get the lane index of element;
+     * @param capacities The capacity of every lane;
+     * @param weights The weight of every lane, used by {@link Policy#DEFICIT_ROUND_ROBIN}.
+     */
+    public PriorityLaneQueue(Policy policy, ToIntFunction<? super E> laneSelector, int[] capacities, int[] weights)
+    {
+        this(policy, laneSelector, e -> 1, capacities, weights);
+    }
+
+    /**
+     * Creates the queue.
+     * 
+     * @param policy The dequeue policy;
+     * @param laneSelector The function to get the lane index of element;
+     * @param cost The function to get the cost of element, e.g. its size, the round robin shares the cost between the lanes by weight;
+     * @param capacities The capacity of every lane;
+     * @param weights The weight of every lane, used by {@link Policy#DEFICIT_ROUND_ROBIN}.
+     */
+    public PriorityLaneQueue(Policy policy, ToIntFunction<? super E> laneSelector, ToIntFunction<? super E> cost, int[] capacities, int[] weights)
+    {
+        if (capacities.length == 0 || capacities.length != weights.length)
+        {
+            throw new IllegalArgumentException("Expects the same not empty count of capacities and weights");
+        }
+
+        this.policy = Objects.requireNonNull(policy, "policy");
+        this.laneSelector = Objects.requireNonNull(laneSelector, "laneSelector");
+        this.cost = Objects.requireNonNull(cost, "cost");
+        for (int i = 0; i < capacities.length; i++)
+        {
+            if (capacities[i] < 1 || weights[i] < 1)
+            {
+                throw new IllegalArgumentException("Expects positive capacity and weight of " + i + " lane");
+            }
+            lanes.add(new Lane<>(capacities[i], weights[i], lock.newCondition()));
+        }
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        Lane<E> lane = laneOf(e);
+        lock.lock();
+        try
+        {
+            if (lane.isFull())
+            {
+                return false;
+            }
+            enqueue(lane, e);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException
+    {
+        Lane<E> lane = laneOf(e);
+        lock.lockInterruptibly();
+        try
+        {
+            while (lane.isFull())
+            {
+                lane.notFull.await();
+            }
+            enqueue(lane, e);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        Lane<E> lane = laneOf(e);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while (lane.isFull())
+            {
+                if (nanos <= 0)
+                {
+                    return false;
+                }
+                nanos = lane.notFull.awaitNanos(nanos);
+            }
+            enqueue(lane, e);
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll()
+    {
+        lock.lock();
+        try
+        {
+            return count == 0 ? null : dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException
+    {
+        lock.lockInterruptibly();
+        try
+        {
+            while (count == 0)
+            {
+                notEmpty.await();
+            }
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try
+        {
+            while (count == 0)
+            {
+                if (nanos <= 0)
+                {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the head of the first non-empty lane, starting from the lane the round robin visits. The next {@link #poll()} may return another
+     * element if the deficit of the lane does not cover the cost of its head.
+     */
+    @Override
+    public E peek()
+    {
+        lock.lock();
+        try
+        {
+            int start = policy == Policy.STRICT_PRIORITY ? 0 : current;
+            for (int i = 0; i < lanes.size(); i++)
+            {
+                E e = lanes.get((start + i) % lanes.size()).elements.peekFirst();
+                if (e != null)
+                {
+                    return e;
+                }
+            }
+            return null;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c)
+    {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements)
+    {
+        Objects.requireNonNull(c);
+        if (c == this)
+        {
+            throw new IllegalArgumentException("Cannot drain the queue to itself");
+        }
+
+        lock.lock();
+        try
+        {
+            int drained = 0;
+            while (drained < maxElements && count > 0)
+            {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        lock.lock();
+        try
+        {
+            return count;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        lock.lock();
+        try
+        {
+            return lanes.stream().mapToInt(lane -> lane.capacity - lane.elements.size()).sum();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the count of elements in the lane.
+     * 
+     * @param lane The lane index.
+     * @return Returns the size of lane.
+     */
+    public int getLaneSize(int lane)
+    {
+        lock.lock();
+        try
+        {
+            return lanes.get(lane).elements.size();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the first occurrence of the element from the lane it was put to.
+     */
+    @Override
+    public boolean remove(Object o)
+    {
+        if (o == null)
+        {
+            return false;
+        }
+
+        lock.lock();
+        try
+        {
+            for (Lane<E> lane : lanes)
+            {
+                if (lane.elements.removeFirstOccurrence(o))
+                {
+                    count--;
+                    lane.notFull.signal();
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the iterator over the copy of elements, lane by lane. Its {@code remove()} removes the returned element by {@link #remove(Object)} if
+     * it is still in the queue.
+     */
+    @Override
+    public Iterator<E> iterator()
+    {
+        lock.lock();
+        try
+        {
+            List<E> copy = new ArrayList<>(count);
+            lanes.forEach(lane -> copy.addAll(lane.elements));
+            return new SnapshotIterator(copy.iterator());
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private Lane<E> laneOf(E e)
+    {
+        Objects.requireNonNull(e);
+        int index = laneSelector.applyAsInt(e);
+        if (index < 0 || index >= lanes.size())
+        {
+            throw new IllegalArgumentException("Expects lane in [0.." + (lanes.size() - 1) + "] range, but got " + index);
+        }
+        return lanes.get(index);
+    }
+
+    private void enqueue(Lane<E> lane, E e)
+    {
+        lane.elements.addLast(e);
+        count++;
+        notEmpty.signal();
+    }
+
+    private E dequeue()
+    {
+        Lane<E> lane = policy == Policy.STRICT_PRIORITY ? firstNonEmptyLane() : nextRoundRobinLane();
+        E e = lane.elements.pollFirst();
+        count--;
+        lane.notFull.signal();
+        return e;
+    }
+
+    private Lane<E> firstNonEmptyLane()
+    {
+        for (Lane<E> lane : lanes)
+        {
+            if (!lane.elements.isEmpty())
+            {
+                return lane;
+            }
+        }
+        throw new IllegalStateException("Expects not empty queue");
+    }
+
+    // every lane has a positive weight, so the deficit of a non-empty lane covers its head in a few rounds
+    private Lane<E> nextRoundRobinLane()
+    {
+        while (true)
+        {
+            Lane<E> lane = lanes.get(current);
+            if (lane.elements.isEmpty())
+            {
+                // an idle lane does not save the deficit for later
+                lane.deficit = 0;
+            }
+            else
+            {
+                if (!lane.visited)
+                {
+                    lane.deficit += lane.weight;
+                    lane.visited = true;
+                }
+
+                int headCost = cost.applyAsInt(lane.elements.peekFirst());
+                if (lane.deficit >= headCost)
+                {
+                    lane.deficit -= headCost;
+                    return lane;
+                }
+            }
+
+            lane.visited = false;
+            current = (current + 1) % lanes.size();
+        }
+    }
+
+    /**
+     * The iterator over the copy of elements.
+     */
+    private final class SnapshotIterator implements Iterator<E>
+    {
+        private final Iterator<E> iterator;
+        private E last;
+
+        private SnapshotIterator(Iterator<E> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public E next()
+        {
+            last = iterator.next();
+            return last;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last == null)
+            {
+                throw new IllegalStateException();
+            }
+            PriorityLaneQueue.this.remove(last);
+            last = null;
+        }
+    }
+
+    /**
+     * The lane of elements, guarded by the lock of queue.
+     */
+    private static final class Lane<E>
+    {
+        private final ArrayDeque<E> elements;
+        private final int capacity;
+        private final int weight;
+        private final Condition notFull;
+        private long deficit;
+        private boolean visited;
+
+        private Lane(int capacity, int weight, Condition notFull)
+        {
+            this.elements = new ArrayDeque<>(Math.min(capacity, 1024));
+            this.capacity = capacity;
+            this.weight = weight;
+            this.notFull = notFull;
+        }
+
+        private boolean isFull()
+        {
+            return elements.size() >= capacity;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sme.multithreading.queue;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Padding before the value to keep it in own cache line.
+ */
+abstract class LhsPadding
+{
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * The value of {@link Sequence}.
+ */
+abstract class Value extends LhsPadding
+{
+    protected volatile long value;
+}
+
+/**
+ * Padding after the value to keep it in own cache line.
+ */
+abstract class RhsPadding extends Value
+{
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * Cache-line padded counter of a queue index.
+ * <p>
+ * The producer and the consumer indexes of a queue are written by different threads. Without padding they share one cache line and every write of
+ * one thread invalidates the line in the cache of the other one (false sharing).
+ * </p>
+ */
+public final class Sequence extends RhsPadding
+{
+    private static final AtomicLongFieldUpdater<Value> UPDATER = AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+
+    public Sequence()
+    {
+        this(0);
+    }
+
+    public Sequence(long initialValue)
+    {
+        UPDATER.lazySet(this, initialValue);
+    }
+
+    /**
+     * Returns the value with volatile read.
+     */
+    public long get()
+    {
+        return value;
+    }
+
+    /**
+     * Sets the value with ordered (release) write: the writes before are visible to a thread that reads the value, but the writing thread does not
+     * wait for the store buffer to drain like a volatile write does.
+     */
+    public void set(long newValue)
+    {
+        UPDATER.lazySet(this, newValue);
+    }
+
+    /**
+     * Sets the value with volatile write.
+     */
+    public void setVolatile(long newValue)
+    {
+        value = newValue;
+    }
+
+    public boolean compareAndSet(long expectedValue, long newValue)
+    {
+        return UPDATER.compareAndSet(this, expectedValue, newValue);
+    }
+
+    public long getAndAdd(long delta)
+    {
+        return UPDATER.getAndAdd(this, delta);
+    }
+
+    @Override
+    public String toString()
+    {
+        return Long.toString(value);
+    }
+}
@@ -0,0 +1,106 @@
+package com.sme.multithreading.queue;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded lock-free single-producer/single-consumer ring buffer.
+ * <p>
+ * Compare with {@link ArrayBlockingQueue} that takes one lock and signals a condition on every put and take. Here the producer owns the tail
+ * index and the consumer owns the head index, so each index has only one writer and is published with an ordered write. The indexes live in own
+ * cache lines and every side keeps a cached copy of the other side's index to read the shared one only when the cache says the queue is full or
+ * empty.
+ * </p>
+ * <p>
+ * The capacity is rounded up to the power of two to map an index to a slot with a mask. Only one thread may call the producer methods and only one
+ * thread may call the consumer methods at the same time. The iterator may be called by any thread, but {@link #remove(Object)} is not supported:
+ * the consumer owns the slots and reads them without atomics, so another thread cannot take an element from the middle of ring.
+ * </p>
+ *
+ * @param <E> The type of elements.
+ */
+public class SpscArrayQueue<E> extends AbstractArrayQueue<E>
+{
+    // plain copies of the other side index, the producer owns consumerIndexCache and the consumer owns producerIndexCache
+    private long consumerIndexCache;
+    private long producerIndexCache;
+
+    /**
+     * Creates the queue with {@link WaitStrategies#PARK} strategy.
+     * 
+     * @param capacity The capacity, rounded up to the power of two.
+     */
+    public SpscArrayQueue(int capacity)
+    {
+        this(capacity, WaitStrategies.PARK);
+    }
+
+    /**
+     * Creates the queue.
+     * 
+     * @param capacity The capacity, rounded up to the power of two;
+     * @param waitStrategy The strategy to wait in the blocking methods.
+     */
+    public SpscArrayQueue(int capacity, WaitStrategy waitStrategy)
+    {
+        super(capacity, waitStrategy);
+    }
+
+    @Override
+    public boolean offer(E e)
+    {
+        Objects.requireNonNull(e);
+
+        long index = producerIndex.get();
+        if (index - consumerIndexCache > mask)
+        {
+            consumerIndexCache = consumerIndex.get();
+            if (index - consumerIndexCache > mask)
+            {
+                return false;
+            }
+        }
+
+        buffer.lazySet((int) index & mask, e);
+        producerIndex.set(index + 1);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long index = consumerIndex.get();
+        if (index >= producerIndexCache)
+        {
+            producerIndexCache = producerIndex.get();
+            if (index >= producerIndexCache)
+            {
+                return null;
+            }
+        }
+
+        int offset = (int) index & mask;
+        E e = (E) buffer.get(offset);
+        buffer.lazySet(offset, null);
+        consumerIndex.set(index + 1);
+        return e;
+    }
+
+    /**
+     * Not supported, the single consumer takes the slots without atomics.
+     */
+    @Override
+    public boolean remove(Object o)
+    {
+        throw new UnsupportedOperationException("Single-consumer queue does not support remove(Object)");
+    }
+
+    @Override
+    protected Object valueAt(long index)
+    {
+        Object e = buffer.get((int) index & mask);
+        // the producer fills the slot of the next lap only after the consumer has passed the index
+        return consumerIndex.get() <= index ? e : null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.sme.multithreading.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Provides the common {@link WaitStrategy} implementations.
+ */
+public enum WaitStrategies implements WaitStrategy
+{
+    /**
+     * Burns CPU in a loop. The lowest latency, but the waiting thread needs own core.
+     */
+    BUSY_SPIN
+    {
+        @Override
+        public int idle(int counter)
+        {
+            return counter + 1;
+        }
+    },
+
+    /**
+     * Gives the core to other threads on every attempt. Good latency when there are more threads than cores.
+     */
+    YIELD
+    {
+        @Override
+        public int idle(int counter)
+        {
+            Thread.yield();
+            return counter + 1;
+        }
+    },
+
+    /**
+     * Spins, then yields, then parks for a short time. The lowest CPU usage when the queue is idle.
+     */
+    PARK
+    {
+        private static final int SPINS = 100;
+        private static final int YIELDS = 200;
+
+        @Override
+        public int idle(int counter)
+        {
+            if (counter >= YIELDS)
+            {
+                LockSupport.parkNanos(PARK_NANOS);
+                return counter;
+            }
+            if (counter >= SPINS)
+            {
+                Thread.yield();
+            }
+            return counter + 1;
+        }
+    };
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+}
@@ -0,0 +1,15 @@
+package com.sme.multithreading.queue;
+
+/**
+ * Strategy to wait for a queue slot or an element without a lock.
+ */
+public interface WaitStrategy
+{
+    /**
+     * Waits a bit after a failed attempt.
+     * 
+     * @param counter The count of failed attempts in a row, zero on the first one;
+     * @return Returns the counter of the next attempt.
+     */
+    int idle(int counter);
+}
@@ -0,0 +1,60 @@
+package com.sme.multithreading.service;
+
+import java.util.concurrent.TimeUnit;
+
+import com.sme.multithreading.cache.SegmentedLruCache;
+import com.sme.multithreading.model.DelayedMessage;
+
+/**
+ * Read-through cache in front of {@link SlowService}.
+ * <p>
+ * Repeated ids are served from {@link SegmentedLruCache}, concurrent misses of the same id share one {@link SlowService#getMessage(int)} call.
+ * </p>
+ */
+public class CachedSlowService
+{
+    private final SegmentedLruCache<Integer, DelayedMessage> cache;
+
+    /**
+     * Creates the cached service without expiration.
+     * 
+     * @param slowService The service to load messages;
+     * @param maximumSize The max count of cached messages.
+     */
+    public CachedSlowService(SlowService slowService, int maximumSize)
+    {
+        this(slowService, maximumSize, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the cached service.
+     * 
+     * @param slowService The service to load messages;
+     * @param maximumSize The max count of cached messages;
+     * @param timeToLive The time to keep a message, zero means no expiration;
+     * @param unit The time unit of time to live.
+     */
+    public CachedSlowService(SlowService slowService, int maximumSize, long timeToLive, TimeUnit unit)
+    {
+        cache = new SegmentedLruCache<>(maximumSize, timeToLive, unit, slowService::getMessage);
+    }
+
+    /**
+     * Fetch a message from cache or from the slow service.
+     * 
+     * @param id The message id;
+     * @return Returns {@link DelayedMessage} by id.
+     */
+    public DelayedMessage getMessage(int id)
+    {
+        return cache.get(id);
+    }
+
+    /**
+     * Returns the statistics to size the cache against the id distribution.
+     */
+    public SegmentedLruCache.Stats stats()
+    {
+        return cache.stats();
+    }
+}
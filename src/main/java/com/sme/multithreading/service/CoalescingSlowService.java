@@ -0,0 +1,280 @@
+package com.sme.multithreading.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sme.multithreading.model.DelayedMessage;
+
+/**
+ * Coalescing front-end of {@link SlowService}.
+ * <p>
+ * Single {@link #getMessage(int)} calls that arrive within the configured window are gathered and dispatched as one
+ * {@link SlowService#getMessagesAsync(int[])} batch. A batch is dispatched when the window expires or when it reaches the max size, whatever comes
+ * first. Every caller gets own future completed with own message.
+ * </p>
+ * <p>
+ * A caller may cancel own future: the id is not sent if the batch is not dispatched yet, and the batch call is canceled when all callers of the
+ * dispatched batch have canceled their futures.
+ * </p>
+ */
+public class CoalescingSlowService implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingSlowService.class);
+
+    private final SlowService slowService;
+    private final int maxBatchSize;
+    private final long window;
+    private final TimeUnit unit;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private Batch batch;
+
+    /**
+     * Creates the coalescing service.
+     * 
+     * @param slowService The service to send batches to;
+     * @param maxBatchSize The max count of ids in one batch;
+     * @param window The time to wait for more calls since the first call of a batch;
+     * @param unit The time unit of window.
+     */
+    public CoalescingSlowService(SlowService slowService, int maxBatchSize, long window, TimeUnit unit)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+
+        this.slowService = slowService;
+        this.maxBatchSize = maxBatchSize;
+        this.window = window;
+        this.unit = unit;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("CoalescingSlowService-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Fetch a message as a part of the next batch.
+     * 
+     * @param id The message id;
+     * @return Returns {@link CompletableFuture} of the message by id.
+     */
+    public CompletableFuture<DelayedMessage> getMessage(int id)
+    {
+        CompletableFuture<DelayedMessage> future = new CompletableFuture<>();
+        Batch full = null;
+
+        synchronized (lock)
+        {
+            if (batch == null)
+            {
+                Batch opened = new Batch(maxBatchSize);
+                opened.timer = scheduler.schedule(() -> flush(opened), window, unit);
+                batch = opened;
+            }
+
+            Batch target = batch;
+            target.add(id, future);
+            future.whenComplete((message, error) ->
+            {
+                if (future.isCancelled())
+                {
+                    cancel(target);
+                }
+            });
+            if (target.size == maxBatchSize)
+            {
+                full = target;
+                batch = null;
+            }
+        }
+
+        requestCount.incrementAndGet();
+        if (full != null)
+        {
+            full.timer.cancel(false);
+            dispatch(full);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a count of single calls.
+     */
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns a count of dispatched batches.
+     */
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * Dispatches the pending batch and stops the window timer.
+     */
+    @Override
+    public void close()
+    {
+        Batch pending;
+        synchronized (lock)
+        {
+            pending = batch;
+            batch = null;
+        }
+
+        if (pending != null)
+        {
+            pending.timer.cancel(false);
+            dispatch(pending);
+        }
+        scheduler.shutdown();
+    }
+
+    private void flush(Batch expected)
+    {
+        synchronized (lock)
+        {
+            // the batch is already dispatched by size or dropped by the callers that have canceled all calls
+            if (batch != expected)
+            {
+                return;
+            }
+            batch = null;
+        }
+        dispatch(expected);
+    }
+
+    private void cancel(Batch target)
+    {
+        boolean dispatched;
+        synchronized (lock)
+        {
+            if (++target.canceledCount < target.size)
+            {
+                return;
+            }
+
+            // all callers of the batch have canceled their futures
+            dispatched = batch != target;
+            if (!dispatched)
+            {
+                batch = null;
+            }
+        }
+
+        if (dispatched)
+        {
+            CompletableFuture<?> request = target.request;
+            if (request != null)
+            {
+                request.cancel(false);
+            }
+        }
+        else
+        {
+            target.timer.cancel(false);
+        }
+    }
+
+    private void dispatch(Batch dispatched)
+    {
+        // the canceled calls are not sent, the calls canceled later just ignore the result
+        int count = 0;
+        int[] ids = new int[dispatched.size];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[dispatched.size];
+        for (int i = 0; i < dispatched.size; i++)
+        {
+            if (!dispatched.futures[i].isCancelled())
+            {
+                ids[count] = dispatched.ids[i];
+                futures[count] = dispatched.futures[i];
+                count++;
+            }
+        }
+        int live = count;
+        if (live == 0)
+        {
+            return;
+        }
+
+        batchCount.incrementAndGet();
+        LOGGER.debug("Dispatch batch of {} ids in {} thread", live, Thread.currentThread().getName());
+
+        CompletableFuture<List<DelayedMessage>> request = slowService.getMessagesAsync(live == ids.length ? ids : Arrays.copyOf(ids, live));
+        dispatched.request = request;
+        request.whenComplete((messages, error) -> complete(futures, live, messages, error));
+        synchronized (lock)
+        {
+            if (dispatched.canceledCount < dispatched.size)
+            {
+                return;
+            }
+        }
+        // the last caller has canceled before the request is published
+        request.cancel(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void complete(CompletableFuture<?>[] futures, int count, List<DelayedMessage> messages, Throwable error)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            CompletableFuture<DelayedMessage> future = (CompletableFuture<DelayedMessage>) futures[i];
+            if (error != null)
+            {
+                future.completeExceptionally(error);
+            }
+            else
+            {
+                future.complete(messages.get(i));
+            }
+        }
+    }
+
+    /**
+     * Holds ids and futures of the calls gathered in one batch.
+     */
+    private static final class Batch
+    {
+        private final int[] ids;
+        private final CompletableFuture<?>[] futures;
+        private int size;
+        private int canceledCount;
+        private ScheduledFuture<?> timer;
+        private volatile CompletableFuture<?> request;
+
+        Batch(int capacity)
+        {
+            ids = new int[capacity];
+            futures = new CompletableFuture<?>[capacity];
+        }
+
+        void add(int id, CompletableFuture<DelayedMessage> future)
+        {
+            ids[size] = id;
+            futures[size] = future;
+            size++;
+        }
+
+    }
+}
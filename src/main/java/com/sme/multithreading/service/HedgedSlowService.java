@@ -0,0 +1,310 @@
+package com.sme.multithreading.service;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sme.multithreading.model.DelayedMessage;
+
+/**
+ * Hedging front-end of {@link SlowService} to cut the tail latency.
+ * <p>
+ * When a call outlives the configured percentile of recently observed latency, a backup call of the same id is sent. The first response completes
+ * the caller's future and the backup call is canceled when the primary one wins. The primary call always runs to the end, so its latency is
+ * recorded whether it wins or not. The caller's future fails only when all sent calls have failed. The count of backup calls never exceeds the
+ * budget ratio of all calls.
+ * </p>
+ */
+public class HedgedSlowService implements AutoCloseable
+{
+    private static final int MIN_SAMPLES = 20;
+
+    private final SlowService slowService;
+    private final double maxHedgeRatio;
+    private final LatencyWindow window;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong backupWinCount = new AtomicLong();
+    private final AtomicLong latencySaved = new AtomicLong();
+
+    /**
+     * Creates the hedging service.
+     * 
+     * @param slowService The service to send calls to;
+     * @param percentile The percentile of observed latency to send a backup call after, in (0..1) range;
+     * @param windowSize The count of recent latencies to compute the percentile;
+     * @param maxHedgeRatio The max ratio of backup calls to all calls, for example 0.05.
+     */
+    public HedgedSlowService(SlowService slowService, double percentile, int windowSize, double maxHedgeRatio)
+    {
+        if (percentile <= 0 || percentile >= 1)
+        {
+            throw new IllegalArgumentException("Expects percentile in (0..1) range, but got " + percentile);
+        }
+        if (maxHedgeRatio < 0)
+        {
+            throw new IllegalArgumentException("Expects not negative hedge ratio, but got " + maxHedgeRatio);
+        }
+
+        this.slowService = slowService;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.window = new LatencyWindow(Math.max(MIN_SAMPLES, windowSize), percentile);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("HedgedSlowService-%d")
+                .setDaemon(true)
+                .build());
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Fetch a message sending a backup call if the first one is too slow.
+     * 
+     * @param id The message id;
+     * @return Returns {@link CompletableFuture} of the message by id.
+     */
+    public CompletableFuture<DelayedMessage> getMessage(int id)
+    {
+        requestCount.incrementAndGet();
+
+        Call call = new Call(id);
+        CompletableFuture<DelayedMessage> primary = slowService.getMessageAsync(id);
+        primary.whenComplete((message, error) -> completePrimary(call, message, error));
+        call.result.whenComplete((message, error) ->
+        {
+            // the failed or canceled call does not need the primary response
+            if (error != null)
+            {
+                primary.cancel(false);
+            }
+        });
+
+        long threshold = window.getThreshold();
+        if (threshold >= 0 && !call.result.isDone())
+        {
+            ScheduledFuture<?> timer = scheduler.schedule(() -> hedge(call), threshold, TimeUnit.NANOSECONDS);
+            call.result.whenComplete((message, error) -> timer.cancel(false));
+        }
+        return call.result;
+    }
+
+    /**
+     * Returns a count of calls.
+     */
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    /**
+     * Returns a count of sent backup calls.
+     */
+    public long getHedgeCount()
+    {
+        return hedgeCount.get();
+    }
+
+    /**
+     * Returns the ratio of backup calls to all calls.
+     */
+    public double getHedgeRate()
+    {
+        long requests = requestCount.get();
+        return requests == 0 ? 0.0d : (double) hedgeCount.get() / requests;
+    }
+
+    /**
+     * Returns a count of calls completed by the backup call.
+     */
+    public long getBackupWinCount()
+    {
+        return backupWinCount.get();
+    }
+
+    /**
+     * Returns the estimated latency saved by backup calls in milliseconds.
+     * <p>
+     * The primary call keeps running when the backup one wins, so the saved latency is the difference of both latencies.
+     * </p>
+     */
+    public long getLatencySaved()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(latencySaved.get());
+    }
+
+    /**
+     * Returns the current hedge threshold in milliseconds or -1 if there are not enough observed calls yet.
+     */
+    public long getThreshold()
+    {
+        long threshold = window.getThreshold();
+        return threshold < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+    }
+
+    private void hedge(Call call)
+    {
+        if (call.result.isDone() || !acquireBudget() || !call.launch())
+        {
+            return;
+        }
+
+        CompletableFuture<DelayedMessage> backup = slowService.getMessageAsync(call.id);
+        backup.whenComplete((message, error) -> completeBackup(call, message, error));
+        call.result.whenComplete((message, error) -> backup.cancel(false));
+    }
+
+    private boolean acquireBudget()
+    {
+        while (true)
+        {
+            long hedges = hedgeCount.get();
+            if (hedges + 1 > maxHedgeRatio * requestCount.get())
+            {
+                return false;
+            }
+            if (hedgeCount.compareAndSet(hedges, hedges + 1))
+            {
+                return true;
+            }
+        }
+    }
+
+    private void completePrimary(Call call, DelayedMessage message, Throwable error)
+    {
+        if (error != null)
+        {
+            call.fail(error);
+            return;
+        }
+
+        // every primary latency is recorded, otherwise the window sees only the winners and the threshold drifts down
+        long latency = System.nanoTime() - call.start;
+        window.record(latency);
+        if (!call.result.complete(message) && !call.result.isCompletedExceptionally())
+        {
+            // the backup call has won
+            latencySaved.addAndGet(Math.max(0, latency - call.backupLatency));
+        }
+    }
+
+    private void completeBackup(Call call, DelayedMessage message, Throwable error)
+    {
+        if (error != null)
+        {
+            call.fail(error);
+            return;
+        }
+
+        call.backupLatency = System.nanoTime() - call.start;
+        if (call.result.complete(message))
+        {
+            backupWinCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * State of one call: the caller's future and the count of launched attempts that have not failed yet.
+     */
+    private static final class Call
+    {
+        private final int id;
+        private final long start = System.nanoTime();
+        private final CompletableFuture<DelayedMessage> result = new CompletableFuture<>();
+        private final AtomicInteger attempts = new AtomicInteger(1);
+
+        // written before the backup response completes the result
+        private volatile long backupLatency;
+
+        Call(int id)
+        {
+            this.id = id;
+        }
+
+        // registers the backup attempt unless all launched attempts have already failed
+        boolean launch()
+        {
+            while (true)
+            {
+                int current = attempts.get();
+                if (current == 0)
+                {
+                    return false;
+                }
+                if (attempts.compareAndSet(current, current + 1))
+                {
+                    return true;
+                }
+            }
+        }
+
+        // fails the result only when the last running attempt fails
+        void fail(Throwable error)
+        {
+            if (attempts.decrementAndGet() == 0)
+            {
+                result.completeExceptionally(error);
+            }
+        }
+    }
+
+    /**
+     * Ring of recent latencies with the percentile recomputed once per tenth of the window.
+     */
+    private static final class LatencyWindow
+    {
+        private final long[] latencies;
+        private final double percentile;
+        private final int refreshInterval;
+
+        private int count;
+        private int position;
+        private int sinceRefresh;
+        private volatile long threshold = -1;
+
+        LatencyWindow(int size, double percentile)
+        {
+            this.latencies = new long[size];
+            this.percentile = percentile;
+            this.refreshInterval = Math.max(MIN_SAMPLES, size / 10);
+        }
+
+        long getThreshold()
+        {
+            return threshold;
+        }
+
+        synchronized void record(long latency)
+        {
+            latencies[position] = latency;
+            position = (position + 1) % latencies.length;
+            count = Math.min(count + 1, latencies.length);
+
+            if (++sinceRefresh >= refreshInterval)
+            {
+                sinceRefresh = 0;
+                refresh();
+            }
+        }
+
+        // the caller holds the lock
+        private void refresh()
+        {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+
+            threshold = sorted[(int) (percentile * (count - 1))];
+        }
+    }
+}
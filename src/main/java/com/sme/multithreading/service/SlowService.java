@@ -2,13 +2,22 @@ package com.sme.multithreading.service;
 
 import static com.sme.multithreading.util.ThreadUtil.sleepInMilliSeconds;
 
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sme.multithreading.model.DelayedMessage;
 import com.sme.multithreading.model.Message;
+import com.sme.multithreading.service.latency.LatencyModel;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
 
 /**
  * Slow service implementation.
@@ -17,12 +26,29 @@ public class SlowService
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(SlowService.class);
     private static final int ONE_THOUSAND = 1_000;
+    private static final String MESSAGE = "Slow service message";
 
-    private final Random random;
+    // one timer thread shared by all instances completes every pending async call
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
 
+    private final LatencyModel latencyModel;
+
+    /**
+     * Creates the service with uniform delay in [0..1000) milliseconds range.
+     */
     public SlowService()
     {
-        random = new Random();
+        this(new UniformLatencyModel(ThreadLocalRandom.current().nextLong(), 0, ONE_THOUSAND));
+    }
+
+    /**
+     * Creates the service with the given delay distribution.
+     * 
+     * @param latencyModel The model to get a delay of every call.
+     */
+    public SlowService(LatencyModel latencyModel)
+    {
+        this.latencyModel = latencyModel;
     }
 
     /**
@@ -32,8 +58,89 @@ public class SlowService
      */
     public DelayedMessage getMessage(int id)
     {
-        int delay = random.nextInt(ONE_THOUSAND);
+        int delay = latencyModel.nextDelay();
+        sleepInMilliSeconds(delay, s -> LOGGER.error(s, Thread.currentThread().getName()), "{} thread is interrupted");
+        return new DelayedMessage(id, delay, MESSAGE);
+    }
+
+    /**
+     * Fetch a message with delay without blocking the calling thread.
+     * <p>
+     * The returned future is completed by the shared scheduler thread when the delay expires, so dependent stages that are not async run in that
+     * thread and must be short. Cancelling the future removes the pending timer.
+     * </p>
+     * 
+     * @param id The message id;
+     * @return Returns {@link CompletableFuture} of {@link Message} by id.
+     */
+    public CompletableFuture<DelayedMessage> getMessageAsync(int id)
+    {
+        int delay = latencyModel.nextDelay();
+        CompletableFuture<DelayedMessage> future = new CompletableFuture<>();
+        ScheduledFuture<?> timer = SCHEDULER.schedule(() -> future.complete(new DelayedMessage(id, delay, MESSAGE)), delay, TimeUnit.MILLISECONDS);
+        future.whenComplete((message, error) ->
+        {
+            if (error != null)
+            {
+                timer.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fetch messages by ids in one call that pays the delay once for the whole batch.
+     * 
+     * @param ids The message ids;
+     * @return Returns the list of {@link Message} in the order of given ids.
+     */
+    public List<DelayedMessage> getMessages(int[] ids)
+    {
+        int delay = latencyModel.nextDelay();
         sleepInMilliSeconds(delay, s -> LOGGER.error(s, Thread.currentThread().getName()), "{} thread is interrupted");
-        return new DelayedMessage(id, delay, "Slow service message");
+        return createMessages(ids, delay);
+    }
+
+    /**
+     * Fetch messages by ids in one call without blocking the calling thread.
+     * 
+     * @param ids The message ids;
+     * @return Returns {@link CompletableFuture} of the list of {@link Message} in the order of given ids.
+     * @see #getMessageAsync(int)
+     */
+    public CompletableFuture<List<DelayedMessage>> getMessagesAsync(int[] ids)
+    {
+        int delay = latencyModel.nextDelay();
+        int[] copy = ids.clone();
+        CompletableFuture<List<DelayedMessage>> future = new CompletableFuture<>();
+        ScheduledFuture<?> timer = SCHEDULER.schedule(() -> future.complete(createMessages(copy, delay)), delay, TimeUnit.MILLISECONDS);
+        future.whenComplete((messages, error) ->
+        {
+            if (error != null)
+            {
+                timer.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private List<DelayedMessage> createMessages(int[] ids, int delay)
+    {
+        List<DelayedMessage> messages = new ArrayList<>(ids.length);
+        for (int id : ids)
+        {
+            messages.add(new DelayedMessage(id, delay, MESSAGE));
+        }
+        return messages;
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+                .setNameFormat("SlowService-scheduler-%d")
+                .setDaemon(true)
+                .build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
     }
 }
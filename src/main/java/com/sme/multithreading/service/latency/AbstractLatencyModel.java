@@ -0,0 +1,73 @@
+package com.sme.multithreading.service.latency;
+
+import java.util.SplittableRandom;
+
+/**
+ * Base {@link LatencyModel} with a seeded generator per thread.
+ * <p>
+ * Every thread gets own {@link SplittableRandom} split from the seeded root on the first call, so the threads never contend on a shared seed. A
+ * single thread always replays the same sequence for the same seed; with many threads the sequence of every thread depends on the order of their
+ * first calls.
+ * </p>
+ */
+public abstract class AbstractLatencyModel implements LatencyModel
+{
+    private final SplittableRandom root;
+    private final ThreadLocal<SplittableRandom> random;
+
+    protected AbstractLatencyModel(long seed)
+    {
+        root = new SplittableRandom(seed);
+        random = ThreadLocal.withInitial(this::split);
+    }
+
+    @Override
+    public final int nextDelay()
+    {
+        return nextDelay(random.get());
+    }
+
+    /**
+     * Returns the next delay in milliseconds.
+     * 
+     * @param random The generator of the current thread.
+     */
+    protected abstract int nextDelay(SplittableRandom random);
+
+    /**
+     * Returns the next value of the standard normal distribution using the polar method.
+     * 
+     * @param random The generator of the current thread.
+     */
+    protected static double nextGaussian(SplittableRandom random)
+    {
+        double v1;
+        double v2;
+        double s;
+        do
+        {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        }
+        while (s >= 1 || s == 0);
+
+        return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    }
+
+    /**
+     * Converts the given delay to milliseconds in [0..max] range.
+     */
+    protected static int toDelay(double delay, int max)
+    {
+        return (int) Math.max(0, Math.min(max, Math.round(delay)));
+    }
+
+    private SplittableRandom split()
+    {
+        synchronized (root)
+        {
+            return root.split();
+        }
+    }
+}
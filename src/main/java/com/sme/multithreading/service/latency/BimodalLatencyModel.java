@@ -0,0 +1,39 @@
+package com.sme.multithreading.service.latency;
+
+import java.util.SplittableRandom;
+
+/**
+ * Bimodal delay: mixes a fast and a slow model, for example a cache hit and a cache miss of the remote side.
+ */
+public class BimodalLatencyModel extends AbstractLatencyModel
+{
+    private final LatencyModel fast;
+    private final LatencyModel slow;
+    private final double slowProbability;
+
+    /**
+     * Creates the model.
+     * 
+     * @param seed The seed to choose the mode;
+     * @param fast The model of the fast mode;
+     * @param slow The model of the slow mode;
+     * @param slowProbability The probability of the slow mode in [0..1] range.
+     */
+    public BimodalLatencyModel(long seed, LatencyModel fast, LatencyModel slow, double slowProbability)
+    {
+        super(seed);
+        if (slowProbability < 0 || slowProbability > 1)
+        {
+            throw new IllegalArgumentException("Expects probability in [0..1] range, but got " + slowProbability);
+        }
+        this.fast = fast;
+        this.slow = slow;
+        this.slowProbability = slowProbability;
+    }
+
+    @Override
+    protected int nextDelay(SplittableRandom random)
+    {
+        return random.nextDouble() < slowProbability ? slow.nextDelay() : fast.nextDelay();
+    }
+}
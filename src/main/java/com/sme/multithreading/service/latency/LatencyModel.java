@@ -0,0 +1,15 @@
+package com.sme.multithreading.service.latency;
+
+/**
+ * Provides a simulated latency of a service call.
+ * <p>
+ * Implementations are called from many threads at the same time and must not share mutable state between the callers.
+ * </p>
+ */
+public interface LatencyModel
+{
+    /**
+     * Returns the next delay in milliseconds.
+     */
+    int nextDelay();
+}
@@ -0,0 +1,39 @@
+package com.sme.multithreading.service.latency;
+
+import java.util.SplittableRandom;
+
+/**
+ * Log-normal delay: most calls are close to the median and a long right tail is controlled by sigma.
+ */
+public class LogNormalLatencyModel extends AbstractLatencyModel
+{
+    private final double mu;
+    private final double sigma;
+    private final int max;
+
+    /**
+     * Creates the model.
+     * 
+     * @param seed The seed;
+     * @param median The median delay in milliseconds;
+     * @param sigma The standard deviation of the delay logarithm;
+     * @param max The max delay in milliseconds.
+     */
+    public LogNormalLatencyModel(long seed, double median, double sigma, int max)
+    {
+        super(seed);
+        if (median <= 0 || sigma < 0)
+        {
+            throw new IllegalArgumentException("Expects positive median and not negative sigma, but got median=" + median + ", sigma=" + sigma);
+        }
+        this.mu = Math.log(median);
+        this.sigma = sigma;
+        this.max = max;
+    }
+
+    @Override
+    protected int nextDelay(SplittableRandom random)
+    {
+        return toDelay(StrictMath.exp(mu + sigma * nextGaussian(random)), max);
+    }
+}
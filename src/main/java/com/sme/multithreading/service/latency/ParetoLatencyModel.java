@@ -0,0 +1,40 @@
+package com.sme.multithreading.service.latency;
+
+import java.util.SplittableRandom;
+
+/**
+ * Pareto (heavy tail) delay: the delay is never below the scale and the smaller shape is, the heavier the tail is.
+ */
+public class ParetoLatencyModel extends AbstractLatencyModel
+{
+    private final double scale;
+    private final double inverseShape;
+    private final int max;
+
+    /**
+     * Creates the model.
+     * 
+     * @param seed The seed;
+     * @param scale The min delay in milliseconds;
+     * @param shape The tail index;
+     * @param max The max delay in milliseconds.
+     */
+    public ParetoLatencyModel(long seed, double scale, double shape, int max)
+    {
+        super(seed);
+        if (scale <= 0 || shape <= 0)
+        {
+            throw new IllegalArgumentException("Expects positive scale and shape, but got scale=" + scale + ", shape=" + shape);
+        }
+        this.scale = scale;
+        this.inverseShape = 1 / shape;
+        this.max = max;
+    }
+
+    @Override
+    protected int nextDelay(SplittableRandom random)
+    {
+        // 1 - nextDouble() is in (0..1] range
+        return toDelay(scale / StrictMath.pow(1 - random.nextDouble(), inverseShape), max);
+    }
+}
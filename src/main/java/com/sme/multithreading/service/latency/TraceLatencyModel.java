@@ -0,0 +1,80 @@
+package com.sme.multithreading.service.latency;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays delays recorded in a trace.
+ * <p>
+ * The trace file contains one delay in milliseconds per line, empty lines and lines started with '#' are ignored. Every thread replays the delays
+ * in the recorded order with own cursor and restarts the trace when it is over, so the threads never contend on a shared counter. The first thread
+ * starts at the beginning of the trace and the next ones start at offsets spread over the trace, so the threads do not replay it in lockstep.
+ * </p>
+ */
+public class TraceLatencyModel implements LatencyModel
+{
+    // the multiplier of Fibonacci hashing, spreads the consecutive thread numbers over the trace
+    private static final long SPREAD = 0x9E3779B97F4A7C15L;
+
+    private final int[] delays;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ThreadLocal<Cursor> cursor = ThreadLocal.withInitial(this::createCursor);
+
+    public TraceLatencyModel(int[] delays)
+    {
+        if (delays.length == 0)
+        {
+            throw new IllegalArgumentException("Expects not empty trace");
+        }
+        this.delays = delays.clone();
+    }
+
+    public TraceLatencyModel(Path trace) throws IOException
+    {
+        this(read(trace));
+    }
+
+    @Override
+    public int nextDelay()
+    {
+        Cursor current = cursor.get();
+        int delay = delays[current.position];
+        if (++current.position == delays.length)
+        {
+            current.position = 0;
+        }
+        return delay;
+    }
+
+    private Cursor createCursor()
+    {
+        long thread = threadCount.getAndIncrement();
+        return new Cursor((int) Long.remainderUnsigned(thread * SPREAD, delays.length));
+    }
+
+    private static int[] read(Path trace) throws IOException
+    {
+        return Files.readAllLines(trace, StandardCharsets.UTF_8)
+                .stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .mapToInt(Integer::parseInt)
+                .toArray();
+    }
+
+    /**
+     * Position of one thread in the trace.
+     */
+    private static final class Cursor
+    {
+        private int position;
+
+        Cursor(int position)
+        {
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.sme.multithreading.service.latency;
+
+import java.util.SplittableRandom;
+
+/**
+ * Uniform delay in [min..max) range.
+ */
+public class UniformLatencyModel extends AbstractLatencyModel
+{
+    private final int min;
+    private final int max;
+
+    public UniformLatencyModel(long seed, int min, int max)
+    {
+        super(seed);
+        if (min < 0 || max <= min)
+        {
+            throw new IllegalArgumentException("Expects 0 <= min < max, but got min=" + min + ", max=" + max);
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    @Override
+    protected int nextDelay(SplittableRandom random)
+    {
+        return random.nextInt(min, max);
+    }
+}
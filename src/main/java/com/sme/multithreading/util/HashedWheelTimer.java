@@ -0,0 +1,426 @@
+package com.sme.multithreading.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Hashed timing wheel to keep a lot of pending timeouts with one driver thread.
+ * <p>
+ * The wheel is an array of buckets, every bucket is a doubly linked list of timeouts. The driver thread moves to the next bucket once per tick and
+ * runs the expired timeouts of the bucket. A timeout far in the future stays in its bucket for a few rounds of the wheel.
+ * </p>
+ * <p>
+ * {@link #schedule(Runnable, long, TimeUnit)} and {@link Timeout#cancel()} are O(1): they only put the timeout in a lock-free queue that the driver
+ * thread drains on the next tick, so the callers never touch the buckets. Compare with {@link java.util.concurrent.ScheduledThreadPoolExecutor}
+ * that keeps a binary heap guarded by one lock with O(log n) insert and remove.
+ * </p>
+ * <p>
+ * A timeout fires not earlier than its deadline and not later than one tick after it. Tasks run in the driver thread, so they must be short and
+ * hand off long work to an executor.
+ * </p>
+ */
+public class HashedWheelTimer implements AutoCloseable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private static final int INIT = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Thread driver;
+
+    private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(INIT);
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+
+    private final CountDownLatch startLatch = new CountDownLatch(1);
+
+    private volatile long startTime;
+
+    /**
+     * Creates the timer with 1 millisecond tick and 512 buckets.
+     */
+    public HashedWheelTimer()
+    {
+        this(1, TimeUnit.MILLISECONDS, 512);
+    }
+
+    /**
+     * Creates the timer with daemon driver thread.
+     * 
+     * @param tickDuration The duration of one tick, the resolution of the timer;
+     * @param unit The time unit of tick duration;
+     * @param ticksPerWheel The count of buckets, rounded up to the power of two.
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel)
+    {
+        this(tickDuration, unit, ticksPerWheel, new ThreadFactoryBuilder().setNameFormat("HashedWheelTimer-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Creates the timer.
+     * 
+     * @param tickDuration The duration of one tick, the resolution of the timer;
+     * @param unit The time unit of tick duration;
+     * @param ticksPerWheel The count of buckets, rounded up to the power of two;
+     * @param threadFactory The factory of the driver thread.
+     */
+    public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel, ThreadFactory threadFactory)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("Expects positive tick duration, but got " + tickDuration);
+        }
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30)
+        {
+            throw new IllegalArgumentException("Expects ticks per wheel in (0..2^30] range, but got " + ticksPerWheel);
+        }
+
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheel = createWheel(ticksPerWheel);
+        this.mask = wheel.length - 1;
+        this.driver = threadFactory.newThread(this::drive);
+    }
+
+    /**
+     * Schedules the task to run once after the delay. The driver thread is started with the first scheduled task.
+     * 
+     * @param task The task to run in the driver thread;
+     * @param delay The delay;
+     * @param unit The time unit of delay;
+     * @return Returns {@link Timeout} to cancel the task.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit)
+    {
+        start();
+
+        // the time since start is not negative, so only the sum may overflow, clamp it like ScheduledThreadPoolExecutor does
+        long delayNanos = unit.toNanos(Math.max(0, delay));
+        long deadline = System.nanoTime() - startTime + delayNanos;
+        if (deadline < 0)
+        {
+            deadline = Long.MAX_VALUE;
+        }
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingTimeouts.incrementAndGet();
+        scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Returns a count of scheduled but not expired or canceled timeouts.
+     */
+    public long getPendingTimeouts()
+    {
+        return pendingTimeouts.get();
+    }
+
+    /**
+     * Stops the driver thread, the pending timeouts never run. A task may close the timer, then the driver thread stops after the task.
+     */
+    @Override
+    public void close()
+    {
+        if (state.getAndSet(STOPPED) == STARTED)
+        {
+            driver.interrupt();
+            if (Thread.currentThread() == driver)
+            {
+                // the driver cannot join itself, it checks the state after the task
+                return;
+            }
+
+            boolean interrupted = false;
+            while (driver.isAlive())
+            {
+                try
+                {
+                    driver.join(100);
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void start()
+    {
+        switch (state.get())
+        {
+            case INIT:
+                if (state.compareAndSet(INIT, STARTED))
+                {
+                    startTime = System.nanoTime();
+                    startLatch.countDown();
+                    driver.start();
+                }
+                break;
+            case STARTED:
+                break;
+            default:
+                throw new IllegalStateException("Cannot schedule a timeout in stopped timer");
+        }
+
+        // another thread may win the start and not publish the start time yet
+        Uninterruptibles.awaitUninterruptibly(startLatch);
+    }
+
+    private void drive()
+    {
+        long tick = 0;
+        while (state.get() == STARTED)
+        {
+            if (!waitForNextTick(tick))
+            {
+                break;
+            }
+
+            removeCancelled();
+            transferScheduled(tick);
+            wheel[(int) (tick & mask)].expire();
+            tick++;
+        }
+        LOGGER.debug("Stop {} timer thread with {} pending timeouts", Thread.currentThread().getName(), pendingTimeouts.get());
+    }
+
+    private boolean waitForNextTick(long tick)
+    {
+        long deadline = tickDuration * (tick + 1);
+        while (true)
+        {
+            long currentTime = System.nanoTime() - startTime;
+            if (currentTime >= deadline)
+            {
+                return true;
+            }
+
+            LockSupport.parkNanos(this, deadline - currentTime);
+            if (state.get() != STARTED)
+            {
+                return false;
+            }
+        }
+    }
+
+    private void removeCancelled()
+    {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null)
+        {
+            if (timeout.bucket != null)
+            {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferScheduled(long tick)
+    {
+        Timeout timeout;
+        while ((timeout = scheduledTimeouts.poll()) != null)
+        {
+            if (timeout.state.get() == Timeout.CANCELLED)
+            {
+                continue;
+            }
+
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+            // the deadline in the past is expired in the current tick
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private static Bucket[] createWheel(int ticksPerWheel)
+    {
+        int size = 1;
+        while (size < ticksPerWheel)
+        {
+            size <<= 1;
+        }
+
+        Bucket[] wheel = new Bucket[size];
+        for (int i = 0; i < size; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+        return wheel;
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout
+    {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // accessed only by the driver thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        Timeout(HashedWheelTimer timer, Runnable task, long deadline)
+        {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task if it has not run yet.
+         * 
+         * @return Returns true if the task is canceled by this call.
+         */
+        public boolean cancel()
+        {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+            {
+                return false;
+            }
+
+            timer.pendingTimeouts.decrementAndGet();
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled()
+        {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired()
+        {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire()
+        {
+            // a task of the same tick has closed the timer
+            if (timer.state.get() != STARTED || !state.compareAndSet(PENDING, EXPIRED))
+            {
+                return;
+            }
+
+            timer.pendingTimeouts.decrementAndGet();
+            try
+            {
+                task.run();
+            }
+            catch (Throwable e)
+            {
+                // an error must not stop the driver thread with all pending timeouts
+                LOGGER.error("Timeout task failed in {} thread", Thread.currentThread().getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts, accessed only by the driver thread.
+     */
+    private static final class Bucket
+    {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout)
+        {
+            timeout.bucket = this;
+            if (head == null)
+            {
+                head = timeout;
+                tail = timeout;
+            }
+            else
+            {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire()
+        {
+            Timeout timeout = head;
+            while (timeout != null)
+            {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0)
+                {
+                    // the timeout is put in the bucket of its deadline tick, so it is due in the last round
+                    remove(timeout);
+                    timeout.expire();
+                }
+                else if (timeout.isCancelled())
+                {
+                    remove(timeout);
+                }
+                else
+                {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout)
+        {
+            if (timeout.bucket != this)
+            {
+                return;
+            }
+
+            if (timeout.prev != null)
+            {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next != null)
+            {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head)
+            {
+                head = timeout.next;
+            }
+            if (timeout == tail)
+            {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sme.multithreading.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative long values with log-linear buckets.
+ * <p>
+ * Values below {@link #SUB_BUCKETS} have own buckets, every larger power of two range is split into {@link #SUB_BUCKETS} linear buckets, so a
+ * percentile is off by less than 1/{@link #SUB_BUCKETS} of the value. {@link #record(long)} is one atomic increment of the bucket without locks
+ * and allocations.
+ * </p>
+ * <p>
+ * {@link #snapshotAndReset()} moves the counts of every bucket to the snapshot atomically, so every value is counted in exactly one snapshot,
+ * but a value recorded in the middle of the call may be missing in the max or the sum of the same snapshot.
+ * </p>
+ */
+public class Histogram
+{
+    /**
+     * The count of linear buckets in a power of two range.
+     */
+    public static final int SUB_BUCKETS = 16;
+
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the value, a negative value is recorded as 0.
+     * 
+     * @param value The value.
+     */
+    public void record(long value)
+    {
+        long positive = Math.max(0, value);
+        counts.incrementAndGet(bucketIndex(positive));
+        sum.add(positive);
+        if (positive > max.get())
+        {
+            max.accumulateAndGet(positive, Math::max);
+        }
+    }
+
+    /**
+     * Returns the snapshot of recorded values.
+     */
+    public Snapshot snapshot()
+    {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts.get(i);
+        }
+        return new Snapshot(snapshot, sum.sum(), max.get());
+    }
+
+    /**
+     * Returns the snapshot of recorded values and resets the histogram.
+     */
+    public Snapshot snapshotAndReset()
+    {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = counts.get(i) == 0 ? 0 : counts.getAndSet(i, 0);
+        }
+        return new Snapshot(snapshot, sum.sumThenReset(), max.getAndSet(0));
+    }
+
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> exponent - SUB_BITS) & SUB_BUCKETS - 1;
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // returns the middle of the bucket range
+    private static long bucketValue(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << exponent - SUB_BITS;
+        return lower + (1L << exponent - SUB_BITS >> 1);
+    }
+
+    /**
+     * Immutable snapshot of {@link Histogram}.
+     */
+    public static final class Snapshot
+    {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long sum, long max)
+        {
+            this.counts = counts;
+            this.sum = sum;
+            this.max = max;
+
+            long total = 0;
+            for (long bucketCount : counts)
+            {
+                total += bucketCount;
+            }
+            this.count = total;
+        }
+
+        /**
+         * Returns the count of values.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Returns the sum of values.
+         */
+        public long getSum()
+        {
+            return sum;
+        }
+
+        /**
+         * Returns the max value.
+         */
+        public long getMax()
+        {
+            return max;
+        }
+
+        /**
+         * Returns the mean value.
+         */
+        public double getMean()
+        {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the value at the percentile.
+         * 
+         * @param percentile The percentile in [0..100] range.
+         * @return Returns the approximate value, not larger than the max one.
+         */
+        public long getValueAtPercentile(double percentile)
+        {
+            if (count == 0)
+            {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank)
+                {
+                    return Math.min(max, bucketValue(i));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns the text of count, mean, percentiles and max of the values in nanoseconds as microseconds.
+         */
+        public String toMicrosString()
+        {
+            return String.format("count=%d, mean=%.1f us, p50=%d us, p99=%d us, p99.9=%d us, max=%d us",
+                    count,
+                    getMean() / 1_000,
+                    TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99)),
+                    TimeUnit.NANOSECONDS.toMicros(getValueAtPercentile(99.9)),
+                    TimeUnit.NANOSECONDS.toMicros(max));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count=%d, mean=%.1f, p50=%d, p99=%d, p99.9=%d, max=%d",
+                    count,
+                    getMean(),
+                    getValueAtPercentile(50),
+                    getValueAtPercentile(99),
+                    getValueAtPercentile(99.9),
+                    max);
+        }
+    }
+}
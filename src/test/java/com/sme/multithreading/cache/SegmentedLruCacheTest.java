@@ -0,0 +1,130 @@
+package com.sme.multithreading.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link SegmentedLruCache}.
+ */
+public class SegmentedLruCacheTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedLruCacheTest.class);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void testHitAndMiss() throws Exception
+    {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, this::load);
+
+        assertEquals("value1", cache.get(1));
+        assertEquals("value1", cache.get(1));
+        assertEquals("value2", cache.get(2));
+
+        SegmentedLruCache.Stats stats = cache.stats();
+        LOGGER.debug("Cache stats: {}", stats);
+
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getLoadCount());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testScanDoesNotEvictFrequentKeys() throws Exception
+    {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, this::load);
+
+        // the second hit promotes hot keys to protected segment
+        IntStream.range(0, 3).forEach(cache::get);
+        IntStream.range(0, 3).forEach(cache::get);
+
+        // one-hit keys of the scan are evicted from probation segment
+        IntStream.range(100, 200).forEach(cache::get);
+
+        loads.set(0);
+        IntStream.range(0, 3).forEach(cache::get);
+
+        assertEquals(0, loads.get(), "Expects hot keys to survive the scan");
+        assertEquals(10, cache.size());
+        assertEquals(93, cache.stats().getEvictionCount());
+    }
+
+    @Test
+    void testTimeToLive() throws Exception
+    {
+        AtomicLong ticker = new AtomicLong();
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, 100, TimeUnit.NANOSECONDS, this::load, ticker::get);
+
+        cache.get(1);
+        ticker.addAndGet(99);
+        cache.get(1);
+        assertEquals(1, loads.get());
+
+        ticker.addAndGet(1);
+        cache.get(1);
+        assertEquals(2, loads.get(), "Expects reload of expired entry");
+        assertEquals(1, cache.stats().getExpirationCount());
+    }
+
+    @Test
+    void testSingleFlightLoad() throws Exception
+    {
+        CountDownLatch loading = new CountDownLatch(1);
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, key ->
+        {
+            try
+            {
+                loading.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            return load(key);
+        });
+
+        List<CompletableFuture<String>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> cache.get(1)))
+                .collect(Collectors.toList());
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        loading.countDown();
+
+        assertTrue(futures.stream().map(CompletableFuture::join).allMatch("value1"::equals));
+        assertEquals(1, loads.get(), "Expects concurrent misses to share one load");
+    }
+
+    @Test
+    void testLoadFailure() throws Exception
+    {
+        SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, key ->
+        {
+            throw new IllegalStateException("Cannot load " + key);
+        });
+
+        assertThrows(IllegalStateException.class, () -> cache.get(1));
+        assertEquals(1, cache.stats().getLoadFailureCount());
+        assertEquals(0, cache.size());
+    }
+
+    private String load(Integer key)
+    {
+        loads.incrementAndGet();
+        return "value" + key;
+    }
+}
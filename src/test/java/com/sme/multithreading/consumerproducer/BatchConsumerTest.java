@@ -0,0 +1,310 @@
+package com.sme.multithreading.consumerproducer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.Message;
+
+/**
+ * Unit tests of {@link BatchConsumer}.
+ * <p>
+ * Compare with the consumer in {@link ConsumerProducerFifoTest} that takes messages one by one.
+ * </p>
+ */
+public class BatchConsumerTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchConsumerTest.class);
+
+    private static final Path PROC_TASKS = Paths.get("/proc/self/task");
+
+    private static final int CAPACITY = 16 * 1024;
+    private static final int MESSAGES = 1_000_000;
+    // 1M messages per second
+    private static final int MESSAGES_PER_MILLI = 1_000;
+
+    @Test
+    void testHandleAllMessagesInOrder() throws Exception
+    {
+        BlockingQueue<Message> queue = new ArrayBlockingQueue<>(100);
+        List<Message> handled = new ArrayList<>();
+
+        try (BatchConsumer consumer = new BatchConsumer(queue, handled::addAll, 1, 32, 10, TimeUnit.MILLISECONDS))
+        {
+            for (int step = 0; step < 1_000; step++)
+            {
+                queue.put(new Message("Message " + step));
+            }
+        }
+
+        assertEquals(IntStream.range(0, 1_000).boxed().map(step -> new Message("Message " + step)).collect(Collectors.toList()), handled);
+    }
+
+    @Test
+    void testHandlerKeepsBatches() throws Exception
+    {
+        BlockingQueue<Message> queue = new ArrayBlockingQueue<>(100);
+        List<List<Message>> batches = new ArrayList<>();
+        List<List<Message>> copies = new ArrayList<>();
+
+        try (BatchConsumer consumer = new BatchConsumer(queue, batch ->
+        {
+            batches.add(batch);
+            copies.add(new ArrayList<>(batch));
+        }, 1, 32, 10, TimeUnit.MILLISECONDS))
+        {
+            for (int step = 0; step < 1_000; step++)
+            {
+                queue.put(new Message("Message " + step));
+            }
+        }
+
+        // the kept lists are not cleared and refilled by the next batches
+        assertEquals(copies, batches);
+        assertEquals(1_000, batches.stream().mapToInt(List::size).sum());
+    }
+
+    @Test
+    void testShrinkBatchOnSlowHandler() throws Exception
+    {
+        BlockingQueue<Message> queue = new ArrayBlockingQueue<>(10_000);
+        Message message = new Message("Message");
+        AtomicBoolean slow = new AtomicBoolean();
+        Consumer<List<Message>> handler = batch ->
+        {
+            if (slow.get())
+            {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(2));
+            }
+        };
+
+        try (BatchConsumer consumer = new BatchConsumer(queue, handler, 4, 256, 1, TimeUnit.MILLISECONDS))
+        {
+            // the fast handler and the queue that keeps up grow the batch
+            StopWatch stopWatch = StopWatch.createStarted();
+            while (consumer.getBatchSize() < 64 && stopWatch.getTime() < 10_000)
+            {
+                queue.put(message);
+            }
+            int grown = consumer.getBatchSize();
+            assertTrue(grown >= 64, "Expects grown batch, but got " + grown);
+
+            // the slow handler shrinks it back
+            slow.set(true);
+            while (consumer.getBatchSize() > 4 && stopWatch.getTime() < 10_000)
+            {
+                queue.offer(message, 1, TimeUnit.MILLISECONDS);
+            }
+            LOGGER.debug("Batch size grows to {} and falls to {}", grown, consumer.getBatchSize());
+            assertEquals(4, consumer.getBatchSize());
+            slow.set(false);
+        }
+    }
+
+    @Test
+    void testCompareWithTakePerMessage() throws Exception
+    {
+        // warm up
+        runTakePerMessage(MESSAGES / 10);
+        runBatchConsumer(MESSAGES / 10);
+
+        runTakePerMessage(MESSAGES);
+        runBatchConsumer(MESSAGES);
+    }
+
+    private void runTakePerMessage(int messages) throws Exception
+    {
+        CountingQueue queue = new CountingQueue(CAPACITY);
+        LongAdder handled = new LongAdder();
+        long switches = contextSwitches();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        Thread consumer = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < messages; i++)
+                {
+                    handle(queue.take(), handled);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        produce(queue, messages);
+        consumer.join();
+        stopWatch.stop();
+
+        assertEquals(messages, handled.sum());
+        log("take() per message", messages, queue, contextSwitches() - switches, stopWatch);
+    }
+
+    private void runBatchConsumer(int messages) throws Exception
+    {
+        CountingQueue queue = new CountingQueue(CAPACITY);
+        LongAdder handled = new LongAdder();
+        long switches = contextSwitches();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        CountDownLatch latch = new CountDownLatch(messages);
+        try (BatchConsumer consumer = new BatchConsumer(queue, batch -> batch.forEach(message ->
+        {
+            handle(message, handled);
+            latch.countDown();
+        }), 1, 1_024, 1, TimeUnit.MILLISECONDS))
+        {
+            produce(queue, messages);
+            latch.await();
+            stopWatch.stop();
+
+            assertTrue(consumer.getAverageBatchSize() >= 1);
+            LOGGER.debug("BatchConsumer: {} batches, average batch size {}, current batch size {}",
+                    consumer.getBatchCount(),
+                    String.format("%.1f", consumer.getAverageBatchSize()),
+                    consumer.getBatchSize());
+        }
+
+        assertEquals(messages, handled.sum());
+        log("BatchConsumer", messages, queue, contextSwitches() - switches, stopWatch);
+    }
+
+    private void handle(Message message, LongAdder handled)
+    {
+        if (!message.getMessage().isEmpty())
+        {
+            handled.increment();
+        }
+    }
+
+    // sends messages with 1M/s rate
+    private void produce(BlockingQueue<Message> queue, int messages) throws InterruptedException
+    {
+        Message message = new Message("Message");
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++)
+        {
+            if (i % MESSAGES_PER_MILLI == 0)
+            {
+                long due = start + TimeUnit.MILLISECONDS.toNanos(i / MESSAGES_PER_MILLI);
+                while (System.nanoTime() < due)
+                {
+                    LockSupport.parkNanos(due - System.nanoTime());
+                }
+            }
+            queue.put(message);
+        }
+    }
+
+    private void log(String name, int messages, CountingQueue queue, long switches, StopWatch stopWatch)
+    {
+        LOGGER.debug("{}: {} messages in {} ms, {} consumer lock acquisitions per message, {} context switches per message",
+                name,
+                messages,
+                stopWatch.getTime(),
+                String.format("%.4f", (double) queue.getConsumerLockCount() / messages),
+                String.format("%.4f", (double) switches / messages));
+    }
+
+    // sums voluntary and involuntary context switches of all threads of the process
+    private long contextSwitches()
+    {
+        if (!Files.isDirectory(PROC_TASKS))
+        {
+            return 0;
+        }
+
+        try (Stream<Path> tasks = Files.list(PROC_TASKS))
+        {
+            return tasks.mapToLong(this::contextSwitches).sum();
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Cannot read {}", PROC_TASKS, e);
+            return 0;
+        }
+    }
+
+    private long contextSwitches(Path task)
+    {
+        try
+        {
+            return Files.readAllLines(task.resolve("status"))
+                    .stream()
+                    .filter(line -> line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:"))
+                    .mapToLong(line -> Long.parseLong(line.substring(line.indexOf(':') + 1).trim()))
+                    .sum();
+        }
+        catch (IOException e)
+        {
+            // the thread has exited
+            return 0;
+        }
+    }
+
+    /**
+     * {@link ArrayBlockingQueue} that counts the consumer calls. Every call takes the main lock of the queue once.
+     */
+    private static class CountingQueue extends ArrayBlockingQueue<Message>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final LongAdder consumerLockCount = new LongAdder();
+
+        CountingQueue(int capacity)
+        {
+            super(capacity);
+        }
+
+        @Override
+        public Message take() throws InterruptedException
+        {
+            consumerLockCount.increment();
+            return super.take();
+        }
+
+        @Override
+        public Message poll(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            consumerLockCount.increment();
+            return super.poll(timeout, unit);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Message> c, int maxElements)
+        {
+            consumerLockCount.increment();
+            return super.drainTo(c, maxElements);
+        }
+
+        long getConsumerLockCount()
+        {
+            return consumerLockCount.sum();
+        }
+    }
+}
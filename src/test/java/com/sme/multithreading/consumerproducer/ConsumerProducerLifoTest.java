@@ -0,0 +1,118 @@
+package com.sme.multithreading.consumerproducer;
+
+import static com.sme.multithreading.util.ThreadUtil.sleepInMilliSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.queue.BlockingStack;
+import com.sme.multithreading.queue.EliminationBackoffStack;
+
+/**
+ * The test demonstrates how to work with Consumer and Producer using {@link BlockingStack}.
+ * <p>
+ * This queue orders elements LIFO (last-in-first-out), the consumer takes the newest message first. The producer and the consumer run at the
+ * same time, the producer is faster, so the messages pile up and the consumer takes the rest of them in the reverse order. {@link BlockingStack} is lock-free, see
+ * {@link EliminationBackoffStack}.
+ * </p>
+ * <p>
+ * Compare with FIFO order in {@link ConsumerProducerFifoTest}.
+ * </p>
+ */
+public class ConsumerProducerLifoTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConsumerProducerLifoTest.class);
+
+    @Test
+    void testConsumerProducerInBlockingStack() throws InterruptedException
+    {
+        BlockingQueue<Message> blockingStack = new BlockingStack<>();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean produced = new AtomicBoolean();
+
+        Thread producer = new Thread(() ->
+        {
+            awaitUninterruptibly(start);
+            IntStream.range(0, 100).forEach(step ->
+            {
+                // the producer is faster than the consumer, so the messages pile up in the stack
+                sleepInMilliSeconds(2, s -> LOGGER.error(s, Thread.currentThread().getName()), "{} producer thread is interrupted");
+                blockingStack.add(new Message("Message " + step));
+            });
+            produced.set(true);
+            LOGGER.debug("{} messages left in the stack when the producer finished", blockingStack.size());
+        });
+
+        List<Message> consumedMessages = new ArrayList<>();
+        // the messages taken after the producer finished
+        List<Message> lastMessages = new ArrayList<>();
+        Thread consumer = new Thread(() ->
+        {
+            awaitUninterruptibly(start);
+            for (int i = 0; i < 100; i++)
+            {
+                sleepInMilliSeconds(5, s -> LOGGER.error(s, Thread.currentThread().getName()), "{} consumer thread is interrupted");
+                try
+                {
+                    boolean afterProducer = produced.get();
+                    Message message = blockingStack.take();
+                    LOGGER.debug("Take {} message", message);
+                    consumedMessages.add(message);
+                    if (afterProducer)
+                    {
+                        lastMessages.add(message);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    LOGGER.error("Take is interrupted while fetching element in {} consumer", Thread.currentThread().getName());
+                }
+            }
+        });
+
+        producer.start();
+        consumer.start();
+        start.countDown();
+        producer.join();
+        consumer.join();
+
+        // every message is taken once
+        assertEquals(IntStream.range(0, 100).mapToObj(step -> "Message " + step).collect(Collectors.toSet()),
+                consumedMessages.stream().map(Message::getMessage).collect(Collectors.toSet()));
+        assertEquals(100, consumedMessages.size());
+
+        // the rest of the stack is taken from the newest message to the oldest one
+        List<Integer> lastSteps = lastMessages.stream()
+                .map(message -> Integer.valueOf(message.getMessage().substring("Message ".length())))
+                .collect(Collectors.toList());
+        List<Integer> sorted = new ArrayList<>(lastSteps);
+        sorted.sort(Comparator.reverseOrder());
+        assertEquals(sorted, lastSteps);
+        assertFalse(lastSteps.isEmpty(), "Expects the messages piled up in the stack");
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
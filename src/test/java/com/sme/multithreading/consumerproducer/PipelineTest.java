@@ -0,0 +1,181 @@
+package com.sme.multithreading.consumerproducer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.SlowService;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
+
+/**
+ * Unit tests of {@link Pipeline}.
+ * <p>
+ * The pipeline parses a text id, enriches it with {@link SlowService} and aggregates the messages.
+ * </p>
+ */
+public class PipelineTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PipelineTest.class);
+
+    private static final int ITEMS = 1_000;
+
+    private final SlowService slowService = new SlowService(new UniformLatencyModel(ThreadLocalRandom.current().nextLong(), 1, 5));
+
+    @Test
+    void testParseEnrichAggregate() throws Exception
+    {
+        Map<Integer, DelayedMessage> aggregate = new ConcurrentHashMap<>();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        try (Pipeline<String> pipeline = Pipeline.<String> builder()
+                .stage("parse", 1, 64, Integer::valueOf)
+                .stage("enrich", 16, 64, slowService::getMessage)
+                .build("aggregate", 1, 64, message -> aggregate.put(message.getId(), message)))
+        {
+            for (int id = 0; id < ITEMS; id++)
+            {
+                pipeline.submit(String.valueOf(id));
+            }
+            pipeline.close();
+
+            stopWatch.stop();
+            pipeline.getStages().forEach(stage -> LOGGER.debug("{}", stage));
+            LOGGER.debug("{} items in {} ms, the bottleneck is {} stage", ITEMS, stopWatch.getTime(), pipeline.getBottleneck().getName());
+
+            assertEquals(ITEMS, aggregate.size());
+            pipeline.getStages().forEach(stage -> assertEquals(ITEMS, stage.getProcessedCount()));
+            assertEquals("enrich", pipeline.getBottleneck().getName());
+        }
+    }
+
+    @Test
+    void testDropNullAndFailedItems() throws Exception
+    {
+        LongAdder aggregated = new LongAdder();
+
+        try (Pipeline<String> pipeline = Pipeline.<String> builder()
+                .stage("parse", 2, 16, Integer::valueOf)
+                .stage("filter", 2, 16, id -> id % 2 == 0 ? id : null)
+                .build("aggregate", 1, 16, id -> aggregated.increment()))
+        {
+            for (int id = 0; id < 100; id++)
+            {
+                pipeline.submit(String.valueOf(id));
+            }
+            pipeline.submit("not a number");
+            pipeline.close();
+
+            assertEquals(50, aggregated.sum());
+            assertEquals(1, pipeline.getStages().get(0).getFailedCount());
+            assertThrows(IllegalStateException.class, () -> pipeline.submit("1"));
+        }
+    }
+
+    @Test
+    void testBackpressure() throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        int capacity = 4;
+
+        try (Pipeline<Integer> pipeline = Pipeline.<Integer> builder()
+                .stage("parse", 1, capacity, id -> id)
+                .build("aggregate", 1, capacity, id -> awaitUninterruptibly(release)))
+        {
+            // one item in every worker and a full queue in every stage
+            int accepted = 0;
+            while (pipeline.offer(accepted, 100, TimeUnit.MILLISECONDS))
+            {
+                accepted++;
+            }
+
+            pipeline.getStages().forEach(stage -> LOGGER.debug("Saturated {}", stage));
+            assertEquals(2 * capacity + 2, accepted);
+            pipeline.getStages().forEach(stage -> assertEquals(capacity, stage.getQueueDepth()));
+            assertFalse(pipeline.offer(accepted, 10, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            pipeline.close();
+            assertTrue(pipeline.getStages().get(0).getBlockedTime() > 0);
+            assertEquals(accepted, pipeline.getStages().get(1).getProcessedCount());
+        }
+    }
+
+    @Test
+    void testCloseRacesWithSubmit() throws Exception
+    {
+        final int producers = 4;
+        LongAdder submitted = new LongAdder();
+        LongAdder aggregated = new LongAdder();
+        CountDownLatch started = new CountDownLatch(producers);
+        Thread[] threads = new Thread[producers];
+
+        try (Pipeline<Integer> pipeline = Pipeline.<Integer> builder()
+                .stage("parse", 2, 4, id -> id)
+                .build("aggregate", 1, 4, id -> aggregated.increment()))
+        {
+            for (int i = 0; i < producers; i++)
+            {
+                threads[i] = new Thread(() ->
+                {
+                    started.countDown();
+                    try
+                    {
+                        for (int id = 0;; id++)
+                        {
+                            pipeline.submit(id);
+                            submitted.increment();
+                        }
+                    }
+                    catch (IllegalStateException e)
+                    {
+                        // the pipeline is closed
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                threads[i].start();
+            }
+            started.await();
+            TimeUnit.MILLISECONDS.sleep(50);
+
+            pipeline.close();
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            // every submit is either rejected or processed, no item is left in a queue after close
+            LOGGER.debug("{} items submitted before close", submitted.sum());
+            assertEquals(submitted.sum(), aggregated.sum());
+            pipeline.getStages().forEach(stage -> assertEquals(0, stage.getQueueDepth()));
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
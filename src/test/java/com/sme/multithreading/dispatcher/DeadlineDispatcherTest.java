@@ -0,0 +1,198 @@
+package com.sme.multithreading.dispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.model.ScheduledMessage;
+
+/**
+ * Unit tests of {@link DeadlineDispatcher} and {@link ScheduledMessage}.
+ */
+public class DeadlineDispatcherTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeadlineDispatcherTest.class);
+
+    private static final int PRODUCERS = 4;
+    private static final int MESSAGES = 50_000;
+    // all messages are enqueued before the first deadline, so the jitter is not mixed with the enqueue time
+    private static final int DEADLINE_OFFSET = 1_000;
+
+    @Test
+    void testScheduledMessageOrder() throws Exception
+    {
+        long now = System.nanoTime();
+        ScheduledMessage early = new ScheduledMessage(new DelayedMessage(1, 10, "early"), now + 10);
+        ScheduledMessage late = new ScheduledMessage(new DelayedMessage(2, 20, "late"), now + 20);
+
+        assertTrue(early.compareTo(late) < 0);
+        assertTrue(late.compareTo(early) > 0);
+        assertTrue(new ScheduledMessage(new DelayedMessage(3, 1_000, "")).getDelay(TimeUnit.MILLISECONDS) > 900);
+    }
+
+    @Test
+    void testDispatchNotEarlierThanDeadline() throws Exception
+    {
+        List<ScheduledMessage> dispatched = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(3);
+
+        try (DeadlineDispatcher dispatcher = new DeadlineDispatcher(batch ->
+        {
+            long now = System.nanoTime();
+            batch.forEach(message -> assertTrue(message.getDeadline() - now <= 0, "Expects no message before its deadline"));
+            dispatched.addAll(batch);
+            batch.forEach(message -> latch.countDown());
+        }))
+        {
+            dispatcher.offer(new ScheduledMessage(new DelayedMessage(3, 300, "third")));
+            dispatcher.offer(new ScheduledMessage(new DelayedMessage(1, 100, "first")));
+            dispatcher.offer(new ScheduledMessage(new DelayedMessage(2, 200, "second")));
+
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3), dispatched.stream().map(message -> message.getMessage().getId()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testDrainTo() throws Exception
+    {
+        try (DeadlineDispatcher dispatcher = new DeadlineDispatcher(batch -> { }))
+        {
+            long now = System.nanoTime();
+            // the deadlines are far in the future, so nothing is due yet
+            dispatcher.offer(new ScheduledMessage(new DelayedMessage(1, 0, ""), now + TimeUnit.HOURS.toNanos(1)));
+            dispatcher.offer(new ScheduledMessage(new DelayedMessage(2, 0, ""), now + TimeUnit.HOURS.toNanos(2)));
+
+            List<ScheduledMessage> due = new ArrayList<>();
+            assertEquals(0, dispatcher.drainTo(due));
+            assertEquals(2, dispatcher.size());
+        }
+    }
+
+    /**
+     * <pre>
+     * Benchmark plan:
+     * 1) 4 producers enqueue 50 000 messages each with deadline in [1000..1200) ms range;
+     * 2) measure enqueue time in {@link DeadlineDispatcher} and {@link DelayQueue} with a taking thread;
+     * 3) log p50, p99 and max jitter of release time after the deadline.
+     * </pre>
+     * The first round warms up JIT and is not logged.
+     */
+    @Test
+    void testCompareWithDelayQueue() throws Exception
+    {
+        for (int round = 0; round < 2; round++)
+        {
+            String dispatcherResult = measureDispatcher();
+            String delayQueueResult = measureDelayQueue();
+
+            if (round > 0)
+            {
+                LOGGER.debug("DeadlineDispatcher: {}", dispatcherResult);
+                LOGGER.debug("DelayQueue: {}", delayQueueResult);
+            }
+        }
+    }
+
+    private String measureDispatcher() throws InterruptedException
+    {
+        long[] jitter = new long[PRODUCERS * MESSAGES];
+        CountDownLatch latch = new CountDownLatch(jitter.length);
+
+        try (DeadlineDispatcher dispatcher = new DeadlineDispatcher(batch ->
+        {
+            long now = System.nanoTime();
+            batch.forEach(message ->
+            {
+                jitter[message.getMessage().getId()] = now - message.getDeadline();
+                latch.countDown();
+            });
+        }))
+        {
+            long enqueueTime = produce(dispatcher::offer);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(jitter.length, dispatcher.getDispatchCount());
+
+            return String.format("enqueue %d ms, %d batches, jitter %s", enqueueTime, dispatcher.getBatchCount(), jitter(jitter));
+        }
+    }
+
+    private String measureDelayQueue() throws InterruptedException
+    {
+        long[] jitter = new long[PRODUCERS * MESSAGES];
+        DelayQueue<ScheduledMessage> delayQueue = new DelayQueue<>();
+
+        Thread taker = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < jitter.length; i++)
+                {
+                    ScheduledMessage message = delayQueue.take();
+                    jitter[message.getMessage().getId()] = System.nanoTime() - message.getDeadline();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                LOGGER.error("Take is interrupted in {} thread", Thread.currentThread().getName());
+            }
+        });
+        taker.start();
+
+        long enqueueTime = produce(delayQueue::put);
+        taker.join(TimeUnit.SECONDS.toMillis(10));
+        assertTrue(delayQueue.isEmpty());
+
+        return String.format("enqueue %d ms, jitter %s", enqueueTime, jitter(jitter));
+    }
+
+    private long produce(Consumer<ScheduledMessage> offer) throws InterruptedException
+    {
+        ExecutorService executorService = Executors.newFixedThreadPool(PRODUCERS);
+        long start = System.nanoTime();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        IntStream.range(0, PRODUCERS).forEach(producer -> executorService.execute(() ->
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < MESSAGES; i++)
+            {
+                int id = producer * MESSAGES + i;
+                long deadline = start + TimeUnit.MILLISECONDS.toNanos(DEADLINE_OFFSET + random.nextInt(200));
+                offer.accept(new ScheduledMessage(new DelayedMessage(id, 0, "Message " + id), deadline));
+            }
+        }));
+
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        stopWatch.stop();
+        return stopWatch.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    private String jitter(long[] jitter)
+    {
+        long[] sorted = jitter.clone();
+        Arrays.sort(sorted);
+        return String.format("p50=%d us, p99=%d us, max=%d us", TimeUnit.NANOSECONDS.toMicros(sorted[sorted.length / 2]),
+                TimeUnit.NANOSECONDS.toMicros(sorted[(int) (sorted.length * 0.99)]), TimeUnit.NANOSECONDS.toMicros(sorted[sorted.length - 1]));
+    }
+}
@@ -0,0 +1,206 @@
+package com.sme.multithreading.dispatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.model.Message;
+
+/**
+ * Unit tests of {@link PartitionedDispatcher}.
+ * <p>
+ * The id of {@link DelayedMessage} is the key and the delay is the sequence number of the message in the key.
+ * </p>
+ */
+public class PartitionedDispatcherTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedDispatcherTest.class);
+
+    private static final int LANES = 4;
+    private static final int KEYS = 64;
+    private static final int MESSAGES = 200_000;
+
+    @Test
+    void testPerKeyOrder() throws Exception
+    {
+        OrderChecker checker = new OrderChecker();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        try (PartitionedDispatcher<Integer> dispatcher = new PartitionedDispatcher<>(LANES, 256, PartitionedDispatcherTest::keyOf, checker))
+        {
+            int[] sequences = new int[KEYS];
+            for (int i = 0; i < MESSAGES; i++)
+            {
+                int key = i % KEYS;
+                dispatcher.dispatch(new DelayedMessage(key, sequences[key]++, ""));
+            }
+            LOGGER.debug("Backlogs of lanes after dispatch: {}", Arrays.toString(dispatcher.getBacklogs()));
+            dispatcher.close();
+            stopWatch.stop();
+
+            LOGGER.debug("PartitionedDispatcher: {} messages in {} ms, {} out of order, handled by lanes: {}",
+                    MESSAGES,
+                    stopWatch.getTime(),
+                    checker.outOfOrder.sum(),
+                    Arrays.toString(dispatcher.getHandledCounts()));
+            assertEquals(MESSAGES, Arrays.stream(dispatcher.getHandledCounts()).sum());
+        }
+
+        assertEquals(0, checker.outOfOrder.sum());
+    }
+
+    @Test
+    void testThreadPoolLosesOrder() throws Exception
+    {
+        OrderChecker checker = new OrderChecker();
+        ExecutorService executor = Executors.newFixedThreadPool(LANES);
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        int[] sequences = new int[KEYS];
+        for (int i = 0; i < MESSAGES; i++)
+        {
+            int key = i % KEYS;
+            Message message = new DelayedMessage(key, sequences[key]++, "");
+            executor.execute(() -> checker.accept(message));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        stopWatch.stop();
+
+        LOGGER.debug("Thread pool: {} messages in {} ms, {} out of order", MESSAGES, stopWatch.getTime(), checker.outOfOrder.sum());
+    }
+
+    @Test
+    void testRebalanceHotKey() throws Exception
+    {
+        OrderChecker checker = new OrderChecker();
+
+        try (PartitionedDispatcher<Integer> dispatcher = new PartitionedDispatcher<>(LANES, 256, PartitionedDispatcherTest::keyOf, checker))
+        {
+            // key 0 takes the half of messages, the other keys share the rest
+            int[] sequences = new int[KEYS];
+            Thread producer = new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < MESSAGES; i++)
+                    {
+                        int key = i % 2 == 0 ? 0 : 1 + i / 2 % (KEYS - 1);
+                        dispatcher.dispatch(new DelayedMessage(key, sequences[key]++, ""));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.start();
+
+            // rebalance while dispatching to check the order of moved keys
+            int moved = 0;
+            int[] maxBacklogs = new int[LANES];
+            while (producer.isAlive())
+            {
+                Thread.sleep(5);
+                moved += dispatcher.rebalance();
+                int[] backlogs = dispatcher.getBacklogs();
+                Arrays.setAll(maxBacklogs, lane -> Math.max(maxBacklogs[lane], backlogs[lane]));
+            }
+            producer.join();
+
+            int hotLane = dispatcher.getLane(0);
+            long colocated = IntStream.range(1, KEYS).filter(key -> dispatcher.getLane(key) == hotLane).count();
+            LOGGER.debug("Moved {} slots, {} keys share the lane with the hot key, max backlogs of lanes: {}, handled by lanes: {}",
+                    moved,
+                    colocated,
+                    Arrays.toString(maxBacklogs),
+                    Arrays.toString(dispatcher.getHandledCounts()));
+
+            assertTrue(moved > 0);
+            assertTrue(colocated < KEYS / LANES - 1);
+            assertNotEquals(-1, hotLane);
+        }
+
+        assertEquals(0, checker.outOfOrder.sum());
+        assertEquals(MESSAGES, checker.handled.sum());
+    }
+
+    @Test
+    void testRebalanceAfterInterruptedDispatch() throws Exception
+    {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Consumer<Message> handler = message ->
+        {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release);
+        };
+
+        // keys 0 and 2 go to the lane 0
+        try (PartitionedDispatcher<Integer> dispatcher = new PartitionedDispatcher<>(2, 2, PartitionedDispatcherTest::keyOf, handler))
+        {
+            dispatcher.dispatch(new DelayedMessage(0, 0, ""));
+            started.await();
+            dispatcher.dispatch(new DelayedMessage(0, 1, ""));
+            dispatcher.dispatch(new DelayedMessage(2, 0, ""));
+
+            // the lane is full, so the dispatch waits and sees the interruption
+            Thread.currentThread().interrupt();
+            assertThrows(InterruptedException.class, () -> dispatcher.dispatch(new DelayedMessage(2, 1, "")));
+            release.countDown();
+
+            // the key 2 is moved to the idle lane and the move must not wait for the lost message
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertEquals(1, dispatcher.rebalance()));
+            assertEquals(1, dispatcher.getLane(2));
+        }
+    }
+
+    private static Integer keyOf(Message message)
+    {
+        return ((DelayedMessage) message).getId();
+    }
+
+    /**
+     * Counts the messages handled before a message with lower sequence of the same key.
+     */
+    private static class OrderChecker implements Consumer<Message>
+    {
+        private final Map<Integer, Integer> lastSequences = new ConcurrentHashMap<>();
+        private final LongAdder outOfOrder = new LongAdder();
+        private final LongAdder handled = new LongAdder();
+
+        @Override
+        public void accept(Message message)
+        {
+            DelayedMessage delayedMessage = (DelayedMessage) message;
+            int sequence = delayedMessage.getDelay();
+            Integer last = lastSequences.put(delayedMessage.getId(), sequence);
+            if (last != null && last > sequence)
+            {
+                outOfOrder.increment();
+            }
+            handled.increment();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.sme.multithreading.exchange;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.waitnotify.WaitNotifyThreadTest;
+
+/**
+ * Unit tests of {@link TripleBuffer} and {@link DoubleBuffer}.
+ * <p>
+ * The writer publishes snapshots where all values equal the version, so a torn read has different values. Compare with wait/notifyAll handoff in
+ * {@link WaitNotifyThreadTest}.
+ * </p>
+ */
+public class BufferExchangeTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferExchangeTest.class);
+
+    private static final int UPDATES = 1_000_000;
+    private static final int READERS = 4;
+
+    @Test
+    void testTripleBuffer() throws Exception
+    {
+        TripleBuffer<Snapshot> buffer = new TripleBuffer<>(Snapshot::new);
+        assertFalse(buffer.hasUpdate());
+        assertEquals(0, buffer.getReadBuffer().getVersion());
+
+        buffer.getWriteBuffer().set(1);
+        Snapshot next = buffer.publish();
+        assertTrue(buffer.hasUpdate());
+        assertEquals(1, buffer.getReadBuffer().getVersion());
+        assertFalse(buffer.hasUpdate());
+        assertSame(buffer.getReadBuffer(), buffer.getReadBuffer());
+
+        // the writer overwrites a state the reader has not seen
+        next.set(2);
+        buffer.publish().set(3);
+        buffer.publish();
+        assertEquals(3, buffer.getReadBuffer().getVersion());
+    }
+
+    @Test
+    void testTripleBufferConcurrently() throws Exception
+    {
+        TripleBuffer<Snapshot> buffer = new TripleBuffer<>(Snapshot::new);
+        LongAdder reads = new LongAdder();
+        long[] lastVersion = new long[1];
+
+        Thread reader = new Thread(() ->
+        {
+            long version = 0;
+            while (version < UPDATES)
+            {
+                Snapshot snapshot = buffer.getReadBuffer();
+                assertTrue(snapshot.isConsistent(), "Expects no torn snapshot");
+                assertTrue(snapshot.getVersion() >= version, "Expects no older snapshot");
+                version = snapshot.getVersion();
+                reads.increment();
+            }
+            lastVersion[0] = version;
+        });
+        reader.start();
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        Snapshot snapshot = buffer.getWriteBuffer();
+        for (int version = 1; version <= UPDATES; version++)
+        {
+            snapshot.set(version);
+            snapshot = buffer.publish();
+        }
+        reader.join();
+        stopWatch.stop();
+
+        assertEquals(UPDATES, lastVersion[0]);
+        LOGGER.debug("TripleBuffer: {} updates in {} ms, {} reads", UPDATES, stopWatch.getTime(), reads.sum());
+    }
+
+    @Test
+    void testDoubleBufferWithManyReaders() throws Exception
+    {
+        DoubleBuffer<Snapshot> buffer = new DoubleBuffer<>(Snapshot::new);
+        LongAdder reads = new LongAdder();
+        LongAdder torn = new LongAdder();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++)
+        {
+            readers.add(new Thread(() ->
+            {
+                long version = 0;
+                while (version < UPDATES)
+                {
+                    long[] copy = buffer.read(Snapshot::copy);
+                    if (Arrays.stream(copy).anyMatch(value -> value != copy[0]))
+                    {
+                        torn.increment();
+                    }
+                    version = copy[0];
+                    reads.increment();
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int version = 1; version <= UPDATES; version++)
+        {
+            buffer.beginWrite().set(version);
+            buffer.publish();
+        }
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+        stopWatch.stop();
+
+        LOGGER.debug("DoubleBuffer: {} updates in {} ms, {} reads by {} readers, {} repeated reads",
+                UPDATES,
+                stopWatch.getTime(),
+                reads.sum(),
+                READERS,
+                buffer.getRetryCount());
+        assertEquals(0, torn.sum());
+    }
+
+    @Test
+    void testWaitNotifyAll() throws Exception
+    {
+        Snapshot snapshot = new Snapshot();
+        LongAdder wakeups = new LongAdder();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++)
+        {
+            readers.add(new Thread(() ->
+            {
+                long version = 0;
+                while (version < UPDATES / 10)
+                {
+                    synchronized (snapshot)
+                    {
+                        while (snapshot.getVersion() == version)
+                        {
+                            try
+                            {
+                                snapshot.wait();
+                            }
+                            catch (InterruptedException e)
+                            {
+                                Thread.currentThread().interrupt();
+                                return;
+                            }
+                            wakeups.increment();
+                        }
+                        version = snapshot.getVersion();
+                    }
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int version = 1; version <= UPDATES / 10; version++)
+        {
+            synchronized (snapshot)
+            {
+                snapshot.set(version);
+                snapshot.notifyAll();
+            }
+        }
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+        stopWatch.stop();
+
+        LOGGER.debug("wait/notifyAll: {} updates in {} ms, {} wakeups of {} readers", UPDATES / 10, stopWatch.getTime(), wakeups.sum(), READERS);
+    }
+
+    /**
+     * Preallocated mutable state, all values equal the version.
+     */
+    private static final class Snapshot
+    {
+        private final long[] values = new long[8];
+
+        private void set(long version)
+        {
+            Arrays.fill(values, version);
+        }
+
+        private long getVersion()
+        {
+            return values[0];
+        }
+
+        private boolean isConsistent()
+        {
+            return Arrays.stream(values).allMatch(value -> value == values[0]);
+        }
+
+        private long[] copy()
+        {
+            return values.clone();
+        }
+    }
+}
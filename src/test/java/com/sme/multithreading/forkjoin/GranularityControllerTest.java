@@ -0,0 +1,177 @@
+package com.sme.multithreading.forkjoin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link GranularityController}.
+ * <p>
+ * The controller starts with the threshold of {@link RecursiveForkJoinTest} and tunes it to the leaves of 10..100 microseconds.
+ * </p>
+ */
+public class GranularityControllerTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(GranularityControllerTest.class);
+
+    private static final int THRESHOLD = 3;
+
+    @Test
+    void testAdjustment() throws Exception
+    {
+        GranularityController controller = new GranularityController(10, 100, TimeUnit.MICROSECONDS, 1_000);
+
+        // the fast leaf grows the cutoff, but not more than 4 times per step
+        controller.recordLeaf(1_000, TimeUnit.MICROSECONDS.toNanos(1));
+        assertEquals(4_000, controller.getCutoff());
+
+        // the leaf in the band keeps the cutoff
+        controller.recordLeaf(4_000, TimeUnit.MICROSECONDS.toNanos(50));
+        assertEquals(4_000, controller.getCutoff());
+
+        // the slow leaf shrinks the cutoff to the middle of band
+        controller.recordLeaf(4_000, TimeUnit.MICROSECONDS.toNanos(200));
+        assertEquals(1_100, controller.getCutoff());
+
+        assertEquals(3, controller.getLeafCount());
+        assertEquals(2, controller.getAdjustmentCount());
+
+        controller.reset();
+        assertEquals(0, controller.getLeafCount());
+        assertEquals(1_100, controller.getCutoff());
+    }
+
+    @Test
+    void testSum() throws Exception
+    {
+        int[] array = IntStream.range(0, 1_000_000).toArray();
+        GranularityController controller = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals(499_999_500_000L, ArrayReductions.sum(pool, array, controller));
+        }
+        LOGGER.debug("Sum: {}", controller);
+        assertTrue(controller.getCutoff() > THRESHOLD);
+    }
+
+    @Test
+    void testReduce() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int[] ints = IntStream.range(0, 1_000_000).toArray();
+        long[] longs = LongStream.range(0, 1_000_000).toArray();
+        String[] strings = IntStream.range(0, 10_000).mapToObj(i -> String.valueOf(i % 10)).toArray(String[]::new);
+
+        GranularityController intController = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        assertEquals(999_999, ArrayReductions.reduce(pool, ints, Integer.MIN_VALUE, Math::max, intController));
+        GranularityController longController = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        assertEquals(499_999_500_000L, ArrayReductions.reduce(pool, longs, 0L, Long::sum, longController));
+        GranularityController stringController = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        assertEquals(String.join("", strings), ArrayReductions.reduce(pool, strings, "", String::concat, stringController));
+
+        LOGGER.debug("Reduce int[]: {}, long[]: {}, String[]: {}", intController, longController, stringController);
+        assertTrue(intController.getLeafCount() > 0 && longController.getLeafCount() > 0 && stringController.getLeafCount() > 0);
+    }
+
+    @Test
+    void testTuning() throws Exception
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int length = 200_000;
+        double expected = pool.invoke(new SqrtSumTask(0, length, THRESHOLD));
+
+        // the fixed threshold
+        StopWatch stopWatch = StopWatch.createStarted();
+        pool.invoke(new SqrtSumTask(0, length, THRESHOLD));
+        LOGGER.debug("Fixed threshold of {} takes {} us", THRESHOLD, stopWatch.getNanoTime() / 1_000);
+
+        GranularityController controller = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        for (int i = 0; i < 10; i++)
+        {
+            controller.reset();
+            stopWatch = StopWatch.createStarted();
+            double sum = pool.invoke(new SqrtSumTask(0, length, controller));
+            LOGGER.debug("Round {} takes {} us: {}", i, stopWatch.getNanoTime() / 1_000, controller);
+            assertEquals(expected, sum, 1e-3);
+        }
+
+        // the leaf time depends on the load of the machine, so the median of the last round only has to be near the band
+        long median = controller.getLeafTime().getValueAtPercentile(50);
+        LOGGER.debug("Median leaf time {} us in the band of 10..100 us", median / 1_000);
+        assertTrue(controller.getCutoff() > THRESHOLD);
+        assertTrue(median >= TimeUnit.MICROSECONDS.toNanos(10) / 4 && median <= TimeUnit.MICROSECONDS.toNanos(100) * 4, "Median leaf time " + median);
+    }
+
+    @Test
+    void testConvergence() throws Exception
+    {
+        // the synthetic work of 20 ns per element takes 10..100 us for leaves of 500..5000 elements
+        long nanosPerElement = 20;
+        GranularityController controller = new GranularityController(10, 100, TimeUnit.MICROSECONDS, THRESHOLD);
+        for (int i = 0; i < 10; i++)
+        {
+            int length = controller.getCutoff();
+            controller.recordLeaf(length, length * nanosPerElement);
+        }
+
+        long leafTime = controller.getCutoff() * nanosPerElement;
+        LOGGER.debug("Converged: {}", controller);
+        assertTrue(leafTime >= TimeUnit.MICROSECONDS.toNanos(10) && leafTime <= TimeUnit.MICROSECONDS.toNanos(100), "Leaf time " + leafTime);
+        // 3 -> 12 -> 48 -> 192 -> 768 by the limited step, then the leaves stay in the band
+        assertEquals(4, controller.getAdjustmentCount());
+    }
+
+    /**
+     * Sums square roots of indexes, some real work per element.
+     */
+    private static final class SqrtSumTask extends RangeTask<Double>
+    {
+        SqrtSumTask(int from, int to, int minSplitSize)
+        {
+            super(from, to, minSplitSize);
+        }
+
+        SqrtSumTask(int from, int to, GranularityController controller)
+        {
+            super(from, to, controller);
+        }
+
+        SqrtSumTask(SqrtSumTask parent, int from, int to)
+        {
+            super(parent, from, to);
+        }
+
+        @Override
+        protected RangeTask<Double> createSubtask(int from, int to)
+        {
+            return new SqrtSumTask(this, from, to);
+        }
+
+        @Override
+        protected Double computeDirectly(int from, int to)
+        {
+            double sum = 0;
+            for (int i = from; i < to; i++)
+            {
+                sum += Math.sqrt(i);
+            }
+            return sum;
+        }
+
+        @Override
+        protected Double combine(Double left, Double right)
+        {
+            return left + right;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.sme.multithreading.forkjoin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.SlowService;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
+import com.sme.multithreading.threadpool.WorkStealingThreadPoolTest;
+
+/**
+ * Unit tests of {@link IndexedFanOut}.
+ * <p>
+ * The allocation test compares the fan-out with the lists of {@link WorkStealingThreadPoolTest}, the allocated bytes are counted by
+ * {@link com.sun.management.ThreadMXBean} over all threads of the test.
+ * </p>
+ */
+public class IndexedFanOutTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexedFanOutTest.class);
+
+    private static final String MESSAGE = "Message";
+
+    @Test
+    void testMap() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int[] ids = IntStream.range(0, 10_000).map(i -> i * 2).toArray();
+
+        List<DelayedMessage> messages = IndexedFanOut.map(pool, ids, id -> new DelayedMessage(id, 0, MESSAGE));
+        assertEquals(ids.length, messages.size());
+        for (int i = 0; i < ids.length; i++)
+        {
+            assertEquals(ids[i], messages.get(i).getId());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> messages.set(0, null));
+        assertEquals(0, IndexedFanOut.map(pool, new int[0], id -> id).size());
+    }
+
+    @Test
+    void testSlowService() throws Exception
+    {
+        SlowService slowService = new SlowService(new UniformLatencyModel(1, 10, 11));
+        ManagedBlocking blocking = new ManagedBlocking(100);
+        int[] ids = IntStream.range(0, 100).toArray();
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        List<DelayedMessage> messages = IndexedFanOut.map(new ForkJoinPool(2), ids, id -> blocking.call(() -> slowService.getMessage(id)));
+        LOGGER.debug("{} calls of slow service take {} ms: {}", ids.length, stopWatch.getTime(TimeUnit.MILLISECONDS), blocking);
+
+        assertEquals(ids.length, messages.size());
+        assertEquals(99, messages.get(99).getId());
+    }
+
+    @Test
+    void testAllocation() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        // warm up
+        int[] ids = IntStream.range(0, 100_000).toArray();
+        for (int i = 0; i < 5; i++)
+        {
+            pool.invoke(new MessageRecursiveTask(ids));
+            IndexedFanOut.map(pool, ids, IndexedFanOutTest::createMessage);
+        }
+
+        for (int count : new int[] {100_000, 1_000_000})
+        {
+            int[] countIds = IntStream.range(0, count).toArray();
+            // the messages take the same bytes in both cases
+            long messagesBytes = allocatedBytes(() -> IntStream.of(countIds).mapToObj(IndexedFanOutTest::createMessage).toArray());
+            long listsBytes = allocatedBytes(() -> pool.invoke(new MessageRecursiveTask(countIds))) - messagesBytes;
+            long fanOutBytes = allocatedBytes(() -> IndexedFanOut.map(pool, countIds, IndexedFanOutTest::createMessage)) - messagesBytes;
+
+            LOGGER.debug("Assembly of {} results allocates: lists {} bytes per id, fan-out {} bytes per id", count, listsBytes / count, fanOutBytes / count);
+            assertTrue(fanOutBytes * 4 < listsBytes);
+        }
+    }
+
+    private static DelayedMessage createMessage(int id)
+    {
+        return new DelayedMessage(id, 0, MESSAGE);
+    }
+
+    // the bytes allocated by all threads, the workers of pool live between the calls
+    private static long allocatedBytes(Supplier<?> supplier)
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = Arrays.stream(bean.getThreadAllocatedBytes(bean.getAllThreadIds())).filter(b -> b > 0).sum();
+        Object result = supplier.get();
+        long after = Arrays.stream(bean.getThreadAllocatedBytes(bean.getAllThreadIds())).filter(b -> b > 0).sum();
+        assertTrue(result != null);
+        return after - before;
+    }
+
+    /**
+     * The list per task like in {@link WorkStealingThreadPoolTest}.
+     */
+    private static class MessageRecursiveTask extends RecursiveTask<List<DelayedMessage>>
+    {
+        private final int[] ids;
+
+        MessageRecursiveTask(int[] ids)
+        {
+            this.ids = ids;
+        }
+
+        @Override
+        protected List<DelayedMessage> compute()
+        {
+            List<DelayedMessage> list = new ArrayList<>();
+
+            if (ids.length > 1)
+            {
+                Collection<MessageRecursiveTask> collection = ForkJoinTask.invokeAll(createSubtasks());
+                list.addAll(collection.stream()
+                        .map(ForkJoinTask::join)
+                        .flatMap(List::stream)
+                        .collect(Collectors.toList()));
+            }
+            else
+            {
+                list.add(createMessage(ids[0]));
+            }
+
+            return list;
+        }
+
+        private List<MessageRecursiveTask> createSubtasks()
+        {
+            List<MessageRecursiveTask> subTasks = new ArrayList<>();
+
+            int length = ids.length;
+            subTasks.add(new MessageRecursiveTask(Arrays.copyOfRange(ids, 0, (length + 1) / 2)));
+            subTasks.add(new MessageRecursiveTask(Arrays.copyOfRange(ids, (length + 1) / 2, length)));
+
+            return subTasks;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sme.multithreading.forkjoin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.SlowService;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
+import com.sme.multithreading.threadpool.WorkStealingThreadPoolTest;
+
+/**
+ * Unit tests of {@link ManagedBlocking}.
+ * <p>
+ * Like {@link WorkStealingThreadPoolTest}, the tasks call the blocking {@link SlowService#getMessage(int)} in the pool of 2 workers that stands
+ * for the common pool.
+ * </p>
+ */
+public class ManagedBlockingTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ManagedBlockingTest.class);
+
+    private static final int PARALLELISM = 2;
+    private static final int CALLS = 40;
+
+    private final SlowService slowService = new SlowService(new UniformLatencyModel(1, 50, 51));
+
+    @Test
+    void testOutsidePool() throws Exception
+    {
+        ManagedBlocking blocking = new ManagedBlocking(1);
+        assertEquals(1, blocking.call(() -> slowService.getMessage(1)).getId());
+        assertEquals(0, blocking.getManagedCount());
+        assertEquals(0, blocking.getBlockedTime().getCount());
+    }
+
+    @Test
+    void testFailedCall() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        ManagedBlocking blocking = new ManagedBlocking(1);
+        ForkJoinTask<Object> task = pool.submit(() -> blocking.call(() ->
+        {
+            throw new IllegalStateException("Expected failure");
+        }));
+        assertThrows(IllegalStateException.class, task::join);
+        pool.shutdown();
+
+        assertEquals(1, blocking.getManagedCount());
+        assertEquals(1, blocking.getBlockedTime().getCount());
+    }
+
+    @Test
+    void testCompensation() throws Exception
+    {
+        // the blocked workers starve the other tasks of pool
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        long plainTime = run(pool, null);
+        pool.shutdown();
+
+        pool = new ForkJoinPool(PARALLELISM);
+        ManagedBlocking blocking = new ManagedBlocking(CALLS);
+        long managedTime = run(pool, blocking);
+        pool.shutdown();
+
+        LOGGER.debug("Plain blocking calls take {} ms, managed calls take {} ms: {}", plainTime, managedTime, blocking);
+        assertEquals(CALLS, blocking.getManagedCount());
+        assertEquals(CALLS, blocking.getBlockedTime().getCount());
+        assertTrue(blocking.getPeakPoolSizeOverParallelism() > 0);
+        assertTrue(managedTime < plainTime);
+    }
+
+    @Test
+    void testMaxCompensation() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        ManagedBlocking blocking = new ManagedBlocking(4);
+        long time = run(pool, blocking);
+        pool.shutdown();
+
+        LOGGER.debug("Managed calls with 4 spare threads take {} ms: {}", time, blocking);
+        assertEquals(CALLS, blocking.getManagedCount() + blocking.getUncompensatedCount());
+        assertTrue(blocking.getUncompensatedCount() > 0);
+        assertTrue(blocking.getPeakPoolSizeOverParallelism() <= 4);
+    }
+
+    // runs the blocking calls and a short task of the other client of pool, returns the time of calls
+    private long run(ForkJoinPool pool, ManagedBlocking blocking)
+    {
+        StopWatch stopWatch = StopWatch.createStarted();
+        List<ForkJoinTask<DelayedMessage>> tasks = new ArrayList<>();
+        for (int i = 0; i < CALLS; i++)
+        {
+            int id = i;
+            tasks.add(pool.submit(() -> blocking == null ? slowService.getMessage(id) : blocking.call(() -> slowService.getMessage(id))));
+        }
+
+        StopWatch otherClient = StopWatch.createStarted();
+        CompletableFuture.supplyAsync(() -> "done", pool).join();
+        LOGGER.debug("The other client of pool waits {} ms", otherClient.getTime(TimeUnit.MILLISECONDS));
+
+        for (int i = 0; i < CALLS; i++)
+        {
+            assertEquals(i, tasks.get(i).join().getId());
+        }
+        return stopWatch.getTime(TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,149 @@
+package com.sme.multithreading.forkjoin;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link RangeTask} and {@link ArrayReductions}.
+ * <p>
+ * The benchmark compares the index ranges with {@link Arrays#copyOfRange} of {@link RecursiveForkJoinTest}.
+ * </p>
+ */
+public class RangeTaskTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(RangeTaskTest.class);
+
+    @Test
+    void testReductions() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        int[] ints = IntStream.range(0, 100_000).toArray();
+        long[] longs = IntStream.range(0, 100_000).asLongStream().toArray();
+
+        assertEquals(4_999_950_000L, ArrayReductions.sum(pool, ints));
+        assertEquals(99_999, ArrayReductions.reduce(pool, ints, Integer.MIN_VALUE, Math::max));
+        assertEquals(4_999_950_000L, ArrayReductions.reduce(pool, longs, 0, Long::sum));
+        assertEquals(0L, ArrayReductions.sum(pool, new int[0]));
+        assertEquals(-1, ArrayReductions.reduce(pool, new int[0], -1, Math::max));
+    }
+
+    @Test
+    void testOrderWithNotCommutativeCombiner() throws Exception
+    {
+        String[] array = IntStream.range(0, 20_000).mapToObj(i -> i + ",").toArray(String[]::new);
+        String expected = String.join("", array);
+
+        assertEquals(expected, ArrayReductions.reduce(new ForkJoinPool(4), array, "", String::concat));
+    }
+
+    @Test
+    void testBenchmark() throws Exception
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        // warm up
+        int[] array = IntStream.range(0, 1_000_000).map(i -> i % 100).toArray();
+        for (int i = 0; i < 10; i++)
+        {
+            benchmark(pool, array, true, false);
+        }
+
+        benchmark(pool, array, true, true);
+        array = IntStream.range(0, 10_000_000).map(i -> i % 100).toArray();
+        benchmark(pool, array, true, true);
+    }
+
+    // the array takes 400 MB, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void testBenchmark100M() throws Exception
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+
+        // warm up
+        int[] array = IntStream.range(0, 1_000_000).map(i -> i % 100).toArray();
+        for (int i = 0; i < 10; i++)
+        {
+            benchmark(pool, array, true, false);
+        }
+
+        // the copies hold up to 3 arrays of 400 MB at once and do not fit in the default heap
+        array = IntStream.range(0, 100_000_000).map(i -> i % 100).toArray();
+        benchmark(pool, array, false, true);
+    }
+
+    private void benchmark(ForkJoinPool pool, int[] array, boolean copying, boolean log)
+    {
+        long expected = 0;
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int value : array)
+        {
+            expected += value;
+        }
+        long sequentialTime = stopWatch.getNanoTime();
+
+        stopWatch = StopWatch.createStarted();
+        assertEquals(expected, ArrayReductions.sum(pool, array));
+        long rangeTime = stopWatch.getNanoTime();
+
+        String copyingTime = "skipped";
+        if (copying)
+        {
+            stopWatch = StopWatch.createStarted();
+            assertEquals(expected, pool.invoke(new CopyingSumTask(array)).longValue());
+            copyingTime = stopWatch.getNanoTime() / 1_000 + " us";
+        }
+
+        if (log)
+        {
+            LOGGER.debug("Sum of {} elements: sequential loop takes {} us, index ranges {} us, copies of ranges {}",
+                    array.length,
+                    sequentialTime / 1_000,
+                    rangeTime / 1_000,
+                    copyingTime);
+        }
+    }
+
+    /**
+     * Splits the array by copies like {@link RecursiveForkJoinTest} does.
+     */
+    private static class CopyingSumTask extends RecursiveTask<Long>
+    {
+        private final int[] array;
+
+        CopyingSumTask(int[] array)
+        {
+            this.array = array;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            if (array.length > ArrayReductions.DEFAULT_MIN_SPLIT_SIZE)
+            {
+                CopyingSumTask left = new CopyingSumTask(Arrays.copyOfRange(array, 0, array.length / 2));
+                CopyingSumTask right = new CopyingSumTask(Arrays.copyOfRange(array, array.length / 2, array.length));
+                ForkJoinTask.invokeAll(left, right);
+                return left.join() + right.join();
+            }
+
+            long sum = 0;
+            for (int value : array)
+            {
+                sum += value;
+            }
+            return sum;
+        }
+    }
+}
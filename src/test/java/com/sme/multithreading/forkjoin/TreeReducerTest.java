@@ -0,0 +1,220 @@
+package com.sme.multithreading.forkjoin;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link TreeReducer}.
+ * <p>
+ * The benchmark compares the reducer with the task per node of {@link RecursiveNodeForkJoinTest}.
+ * </p>
+ */
+public class TreeReducerTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(TreeReducerTest.class);
+
+    private static final int THRESHOLD = 1_000;
+
+    @Test
+    void testSum() throws Exception
+    {
+        Node node1 = new Node(1, asList(new Node(10), new Node(11)));
+        Node node2 = new Node(2, asList(new Node(20), new Node(21), new Node(22)));
+        Node node3 = new Node(3, asList(new Node(30)));
+        Node root = new Node(0, asList(node1, node2, node3));
+
+        assertEquals(120L, sumReducer(1).reduce(new ForkJoinPool(2), root).longValue());
+        assertEquals(120L, sumReducer(THRESHOLD).reduce(root).longValue());
+        assertEquals(7L, sumReducer(1).reduce(new Node(7)).longValue());
+    }
+
+    @Test
+    void testPreOrderWithNotCommutativeCombiner() throws Exception
+    {
+        Node root = balanced(3, 6);
+        StringBuilder expected = new StringBuilder();
+        preOrder(root, expected);
+
+        // the threshold of 1 node forks as often as possible
+        TreeReducer<Node, String> reducer = new TreeReducer<>(Node::getNodes, n -> n.getValue() + ",", String::concat, 1);
+        assertEquals(expected.toString(), reducer.reduce(new ForkJoinPool(4), root));
+    }
+
+    @Test
+    void testBenchmark() throws Exception
+    {
+        ForkJoinPool pool = new ForkJoinPool();
+
+        // warm up
+        benchmark(pool, "Warm up", () -> balanced(4, 7));
+
+        benchmark(pool, "Balanced tree", () -> balanced(4, 9));
+        // a spine of 500 nodes with 600 leaves per node
+        benchmark(pool, "Skewed tree", () -> skewed(500, 600));
+        benchmark(pool, "Deep tree", () -> skewed(1_000, 0));
+        // the task per node runs the forked child in the same thread on join, so it overflows the stack on a deep path
+        benchmark(pool, "Very deep tree", () -> skewed(10_000, 0));
+
+        Node deep = skewed(1_000_000, 1);
+        StopWatch stopWatch = StopWatch.createStarted();
+        assertEquals(sum(deep), sumReducer(THRESHOLD).reduce(pool, deep).longValue());
+        LOGGER.debug("Deepest tree of {} nodes: reducer takes {} ms", 2_000_000, stopWatch.getTime());
+    }
+
+    private void benchmark(ForkJoinPool pool, String name, Supplier<Node> tree)
+    {
+        Node root = tree.get();
+        long expected = sum(root);
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        long reducerSum = sumReducer(THRESHOLD).reduce(pool, root);
+        long reducerTime = stopWatch.getNanoTime();
+        assertEquals(expected, reducerSum);
+
+        stopWatch = StopWatch.createStarted();
+        String taskPerNode;
+        try
+        {
+            long taskPerNodeSum = pool.invoke(new NodeSumCounter(root));
+            taskPerNode = stopWatch.getNanoTime() / 1_000 + " us";
+            assertEquals(expected, taskPerNodeSum);
+        }
+        catch (StackOverflowError | RuntimeException e)
+        {
+            taskPerNode = "fails with " + e.getClass().getSimpleName();
+        }
+
+        LOGGER.debug("{} of {} nodes: reducer takes {} us, task per node {}", name, count(root), reducerTime / 1_000, taskPerNode);
+    }
+
+    private static TreeReducer<Node, Long> sumReducer(int threshold)
+    {
+        return new TreeReducer<>(Node::getNodes, Node::getValue, Long::sum, threshold);
+    }
+
+    private static Node balanced(int width, int depth)
+    {
+        if (depth == 0)
+        {
+            return new Node(depth);
+        }
+
+        List<Node> nodes = new ArrayList<>(width);
+        for (int i = 0; i < width; i++)
+        {
+            nodes.add(balanced(width, depth - 1));
+        }
+        return new Node(depth, nodes);
+    }
+
+    // built from the bottom to avoid the recursion
+    private static Node skewed(int spine, int leaves)
+    {
+        Node node = new Node(spine);
+        for (int i = spine - 1; i > 0; i--)
+        {
+            List<Node> nodes = new ArrayList<>(leaves + 1);
+            nodes.add(node);
+            for (int j = 0; j < leaves; j++)
+            {
+                nodes.add(new Node(j));
+            }
+            node = new Node(i, nodes);
+        }
+        return node;
+    }
+
+    private static long sum(Node root)
+    {
+        long sum = 0;
+        LinkedList<Node> stack = new LinkedList<>();
+        stack.push(root);
+        while (!stack.isEmpty())
+        {
+            Node node = stack.pop();
+            sum += node.getValue();
+            node.getNodes().forEach(stack::push);
+        }
+        return sum;
+    }
+
+    private static long count(Node root)
+    {
+        return new TreeReducer<Node, Long>(Node::getNodes, n -> 1L, Long::sum, THRESHOLD).reduce(root);
+    }
+
+    private static void preOrder(Node node, StringBuilder builder)
+    {
+        builder.append(node.getValue()).append(',');
+        node.getNodes().forEach(n -> preOrder(n, builder));
+    }
+
+    /**
+     * Represents a tree of nodes.
+     */
+    private static final class Node
+    {
+        private final long value;
+        private final List<Node> nodes;
+
+        Node(long value)
+        {
+            this(value, emptyList());
+        }
+
+        Node(long value, List<Node> nodes)
+        {
+            this.value = value;
+            this.nodes = nodes;
+        }
+
+        List<Node> getNodes()
+        {
+            return nodes;
+        }
+
+        long getValue()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * The task per node like in {@link RecursiveNodeForkJoinTest}.
+     */
+    private static class NodeSumCounter extends RecursiveTask<Long>
+    {
+        private final Node node;
+
+        NodeSumCounter(Node node)
+        {
+            this.node = node;
+        }
+
+        @Override
+        protected Long compute()
+        {
+            List<NodeSumCounter> subTasks = new LinkedList<>();
+            for (Node child : node.getNodes())
+            {
+                NodeSumCounter task = new NodeSumCounter(child);
+                task.fork();
+                subTasks.add(task);
+            }
+            return node.getValue() + subTasks.stream().mapToLong(NodeSumCounter::join).sum();
+        }
+    }
+}
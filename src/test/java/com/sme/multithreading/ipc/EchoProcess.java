@@ -0,0 +1,84 @@
+package com.sme.multithreading.ipc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.model.MessageCodec;
+import com.sme.multithreading.queue.WaitStrategies;
+
+/**
+ * The second process of {@link SharedMemoryQueueTest} that sends every received message back.
+ * <p>
+ * Usage: {@code shm <request queue> <response queue>} or {@code tcp <port>}. The process stops on {@link #STOP} message.
+ * </p>
+ */
+public final class EchoProcess
+{
+    static final String STOP = "STOP";
+
+    private EchoProcess()
+    {
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        if ("shm".equals(args[0]))
+        {
+            echoSharedMemory(Paths.get(args[1]), Paths.get(args[2]));
+        }
+        else
+        {
+            echoTcp(Integer.parseInt(args[1]));
+        }
+    }
+
+    private static void echoSharedMemory(Path requestPath, Path responsePath) throws Exception
+    {
+        try (SharedMemoryQueue requests = SharedMemoryQueue.attachConsumer(requestPath, 10, TimeUnit.SECONDS, WaitStrategies.YIELD);
+                SharedMemoryQueue responses = SharedMemoryQueue.createProducer(responsePath, SharedMemoryQueueTest.CAPACITY, WaitStrategies.YIELD))
+        {
+            while (true)
+            {
+                Message message = requests.take();
+                responses.put(message);
+                if (STOP.equals(message.getMessage()))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void echoTcp(int port) throws IOException
+    {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+        {
+            socket.setTcpNoDelay(true);
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            byte[] bytes = new byte[SharedMemoryQueueTest.CAPACITY];
+
+            while (true)
+            {
+                int length = input.readInt();
+                input.readFully(bytes, 0, length);
+                output.writeInt(length);
+                output.write(bytes, 0, length);
+                output.flush();
+
+                if (STOP.equals(MessageCodec.decode(ByteBuffer.wrap(bytes, 0, length)).getMessage()))
+                {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.sme.multithreading.ipc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.model.Message;
+import com.sme.multithreading.model.MessageCodec;
+import com.sme.multithreading.queue.WaitStrategies;
+
+/**
+ * Unit tests of {@link SharedMemoryQueue}.
+ * <p>
+ * The latency test starts {@link EchoProcess} in the second JVM and measures the round trip of a message through two shared memory queues and
+ * through a loopback TCP connection.
+ * </p>
+ */
+public class SharedMemoryQueueTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryQueueTest.class);
+
+    static final int CAPACITY = 64 * 1024;
+
+    private static final Path SHM = Paths.get("/dev/shm");
+    private static final int ROUND_TRIPS = 20_000;
+
+    private Path requestPath;
+    private Path responsePath;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        Path directory = Files.isDirectory(SHM) ? SHM : Paths.get(System.getProperty("java.io.tmpdir"));
+        requestPath = directory.resolve("multithreading-request-" + System.nanoTime());
+        responsePath = directory.resolve("multithreading-response-" + System.nanoTime());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        Files.deleteIfExists(requestPath);
+        Files.deleteIfExists(responsePath);
+    }
+
+    @Test
+    void testOfferPollWithWrap() throws Exception
+    {
+        try (SharedMemoryQueue producer = SharedMemoryQueue.createProducer(requestPath, 256, WaitStrategies.YIELD);
+                SharedMemoryQueue consumer = SharedMemoryQueue.attachConsumer(requestPath, 1, TimeUnit.SECONDS))
+        {
+            assertNull(consumer.poll());
+            assertTrue(consumer.isPeerAlive());
+            assertTrue(producer.isPeerAlive());
+
+            // the records of different size wrap the ring many times
+            for (int id = 0; id < 1_000; id++)
+            {
+                Message message = new DelayedMessage(id, id, StringUtils.repeat('x', id % 50));
+                assertTrue(producer.offer(message));
+                if (id % 3 == 0)
+                {
+                    assertTrue(producer.offer(new Message("Message " + id)));
+                    assertEquals(message, consumer.poll());
+                    assertEquals(new Message("Message " + id), consumer.poll());
+                }
+                else
+                {
+                    assertEquals(message, consumer.poll());
+                }
+            }
+            assertNull(consumer.poll());
+
+            int offered = 0;
+            while (producer.offer(new Message("Message")))
+            {
+                offered++;
+            }
+            assertTrue(offered > 0);
+            for (int i = 0; i < offered; i++)
+            {
+                assertEquals(new Message("Message"), consumer.poll());
+            }
+
+            assertThrows(IllegalArgumentException.class, () -> producer.offer(new Message(StringUtils.repeat('x', 300))));
+            assertThrows(IllegalStateException.class, () -> consumer.offer(new Message("Message")));
+
+            producer.close();
+            assertTrue(consumer.isPeerClosed());
+            assertFalse(consumer.isPeerAlive());
+        }
+    }
+
+    @Test
+    void testTwoProcessLatency() throws Exception
+    {
+        long[] shm = sharedMemoryRoundTrips();
+        long[] tcp = tcpRoundTrips();
+
+        log("Shared memory", shm);
+        log("Loopback TCP", tcp);
+    }
+
+    private long[] sharedMemoryRoundTrips() throws Exception
+    {
+        try (SharedMemoryQueue requests = SharedMemoryQueue.createProducer(requestPath, CAPACITY, WaitStrategies.YIELD))
+        {
+            Process process = startEcho("shm", requestPath.toString(), responsePath.toString());
+            try (SharedMemoryQueue responses = SharedMemoryQueue.attachConsumer(responsePath, 30, TimeUnit.SECONDS, WaitStrategies.YIELD))
+            {
+                Message message = new DelayedMessage(1, 0, "Message");
+                long[] latencies = new long[ROUND_TRIPS];
+                // the first half warms up both JVMs
+                for (int i = -ROUND_TRIPS; i < ROUND_TRIPS; i++)
+                {
+                    long start = System.nanoTime();
+                    requests.put(message);
+                    assertEquals(message, responses.take());
+                    if (i >= 0)
+                    {
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }
+
+                assertTrue(responses.isPeerAlive());
+                // the echo process dies without closing the queue
+                process.destroyForcibly().waitFor();
+                assertFalse(responses.isPeerAlive());
+                assertFalse(responses.isPeerClosed());
+                return latencies;
+            }
+        }
+    }
+
+    private long[] tcpRoundTrips() throws Exception
+    {
+        long[] latencies = new long[ROUND_TRIPS];
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress()))
+        {
+            Process process = startEcho("tcp", String.valueOf(serverSocket.getLocalPort()));
+            try (Socket socket = serverSocket.accept())
+            {
+                socket.setTcpNoDelay(true);
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+
+                ByteBuffer buffer = ByteBuffer.allocate(CAPACITY);
+                for (int i = -ROUND_TRIPS; i <= ROUND_TRIPS; i++)
+                {
+                    Message message = new DelayedMessage(1, 0, i == ROUND_TRIPS ? EchoProcess.STOP : "Message");
+                    long start = System.nanoTime();
+
+                    buffer.clear();
+                    int length = MessageCodec.encode(message, buffer);
+                    output.writeInt(length);
+                    output.write(buffer.array(), 0, length);
+                    output.flush();
+
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    assertEquals(message, MessageCodec.decode(ByteBuffer.wrap(bytes)));
+                    if (i >= 0 && i < ROUND_TRIPS)
+                    {
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }
+            }
+            process.waitFor();
+        }
+        return latencies;
+    }
+
+    private Process startEcho(String... args) throws Exception
+    {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String[] command = new String[args.length + 4];
+        command[0] = java;
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = EchoProcess.class.getName();
+        System.arraycopy(args, 0, command, 4, args.length);
+
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(System.getProperty("java.io.tmpdir"), "echo.log")).start();
+    }
+
+    private void log(String name, long[] latencies)
+    {
+        Arrays.sort(latencies);
+        LOGGER.debug("{}: {} round trips, p50 {} us, p99 {} us, p99.9 {} us",
+                name,
+                latencies.length,
+                TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length / 2]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length * 99 / 100]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[latencies.length * 999 / 1000]));
+    }
+}
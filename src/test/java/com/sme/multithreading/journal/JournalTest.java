@@ -0,0 +1,249 @@
+package com.sme.multithreading.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.model.Message;
+
+/**
+ * Unit tests of {@link Journal}.
+ */
+public class JournalTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalTest.class);
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int MESSAGES = 2_000_000;
+    private static final int SYNC_THREADS = 4;
+    private static final int SYNC_MESSAGES = 500;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws Exception
+    {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception
+    {
+        try (Stream<Path> paths = Files.walk(directory))
+        {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testAppendAndReadAcrossSegments() throws Exception
+    {
+        try (Journal journal = new Journal(directory, 256, 1, TimeUnit.MILLISECONDS))
+        {
+            Journal.Reader reader = journal.reader(0);
+            assertNull(reader.poll());
+
+            List<Long> positions = new ArrayList<>();
+            for (int id = 0; id < 100; id++)
+            {
+                positions.add(journal.append(new DelayedMessage(id, id, "Message " + id)));
+            }
+            journal.append(new Message("Last"));
+
+            assertTrue(journal.getSegmentCount() > 1);
+            for (int id = 0; id < 100; id++)
+            {
+                assertEquals(new DelayedMessage(id, id, "Message " + id), reader.poll());
+            }
+            assertEquals(new Message("Last"), reader.poll());
+            assertNull(reader.poll());
+            assertEquals(new DelayedMessage(42, 42, "Message 42"), journal.reader(positions.get(42)).poll());
+        }
+    }
+
+    @Test
+    void testReplayAfterRestart() throws Exception
+    {
+        try (Journal journal = new Journal(directory, 1024, 1, TimeUnit.MILLISECONDS))
+        {
+            for (int id = 0; id < 100; id++)
+            {
+                journal.append(new DelayedMessage(id, 0, "Message " + id));
+            }
+
+            Journal.Reader reader = journal.reader("consumer");
+            for (int id = 0; id < 40; id++)
+            {
+                reader.poll();
+            }
+            reader.commit();
+        }
+
+        // the consumer continues from the committed position and the producer continues after the last record
+        try (Journal journal = new Journal(directory, 1024, 1, TimeUnit.MILLISECONDS))
+        {
+            journal.append(new DelayedMessage(100, 0, "Message 100"));
+
+            Journal.Reader reader = journal.reader("consumer");
+            for (int id = 40; id <= 100; id++)
+            {
+                assertEquals(new DelayedMessage(id, 0, "Message " + id), reader.poll());
+            }
+            assertNull(reader.poll());
+            assertEquals(new DelayedMessage(0, 0, "Message 0"), journal.reader("another").poll());
+        }
+    }
+
+    @Test
+    void testCutTornTail() throws Exception
+    {
+        long last;
+        try (Journal journal = new Journal(directory, 1024, 1, TimeUnit.MILLISECONDS))
+        {
+            journal.append(new Message("First"));
+            journal.append(new Message("Second"));
+            last = journal.append(new Message("Torn"));
+        }
+
+        // corrupt the payload of the last record as if the OS crashed in the middle of the page write
+        try (FileChannel channel = FileChannel.open(directory.resolve("0000000000.journal"), StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(new byte[] {'X'}), last + 2 * Integer.BYTES + 6);
+        }
+
+        try (Journal journal = new Journal(directory, 1024, 1, TimeUnit.MILLISECONDS))
+        {
+            assertEquals(last, journal.getWrittenPosition());
+
+            Journal.Reader reader = journal.reader(0);
+            assertEquals(new Message("First"), reader.poll());
+            assertEquals(new Message("Second"), reader.poll());
+            assertNull(reader.poll());
+        }
+    }
+
+    @Test
+    void testGroupCommit() throws Exception
+    {
+        try (Journal journal = new Journal(directory, SEGMENT_SIZE, 10, TimeUnit.MILLISECONDS))
+        {
+            LongAdder synced = new LongAdder();
+            List<Thread> threads = new ArrayList<>();
+            StopWatch stopWatch = StopWatch.createStarted();
+            for (int t = 0; t < SYNC_THREADS; t++)
+            {
+                int thread = t;
+                threads.add(new Thread(() ->
+                {
+                    try
+                    {
+                        for (int i = 0; i < SYNC_MESSAGES; i++)
+                        {
+                            long position = journal.appendAndSync(new DelayedMessage(thread, i, "Message"));
+                            assertTrue(journal.getFlushedPosition() > position);
+                            synced.increment();
+                        }
+                    }
+                    catch (IOException | InterruptedException e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+            stopWatch.stop();
+
+            LOGGER.debug("{} synced appends from {} threads in {} ms with {} fsyncs",
+                    synced.sum(),
+                    SYNC_THREADS,
+                    stopWatch.getTime(),
+                    journal.getFlushCount());
+            assertEquals(SYNC_THREADS * SYNC_MESSAGES, synced.sum());
+            assertTrue(journal.getFlushCount() <= synced.sum());
+        }
+    }
+
+    @Test
+    void testAppendAndTailReadThroughput() throws Exception
+    {
+        // warm up
+        appendAndTailRead(MESSAGES / 10);
+        tearDown();
+        setUp();
+
+        appendAndTailRead(MESSAGES);
+    }
+
+    private void appendAndTailRead(int messages) throws Exception
+    {
+        DelayedMessage message = new DelayedMessage(1, 100, "Message of producer");
+
+        try (Journal journal = new Journal(directory, SEGMENT_SIZE, 10, TimeUnit.MILLISECONDS))
+        {
+            StopWatch readWatch = new StopWatch();
+            LongAdder read = new LongAdder();
+            Thread reader = new Thread(() ->
+            {
+                Journal.Reader tail = journal.reader(0);
+                readWatch.start();
+                while (read.sum() < messages)
+                {
+                    if (tail.poll() != null)
+                    {
+                        read.increment();
+                    }
+                    else
+                    {
+                        Thread.yield();
+                    }
+                }
+                readWatch.stop();
+            });
+            reader.start();
+
+            StopWatch appendWatch = StopWatch.createStarted();
+            for (int i = 0; i < messages; i++)
+            {
+                journal.append(message);
+            }
+            appendWatch.stop();
+            reader.join();
+
+            assertEquals(messages, read.sum());
+            LOGGER.debug("Appended {} messages ({} MB, {} segments) in {} ms, {} appends/s; tail read in {} ms, {} reads/s, {} fsyncs",
+                    messages,
+                    journal.getWrittenPosition() / (1024 * 1024),
+                    journal.getSegmentCount(),
+                    appendWatch.getTime(),
+                    messages * 1_000L / Math.max(1, appendWatch.getTime()),
+                    readWatch.getTime(),
+                    messages * 1_000L / Math.max(1, readWatch.getTime()),
+                    journal.getFlushCount());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.sme.multithreading.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link MessageArena}.
+ */
+public class MessageArenaTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageArenaTest.class);
+
+    private static final int BACKLOG = 1_000_000;
+
+    @Test
+    void testAppendAndRead() throws Exception
+    {
+        try (MessageArena arena = new MessageArena(64))
+        {
+            long first = arena.append(new DelayedMessage(1, 10, "Message 1"));
+            long second = arena.append(2, 20, "Повідомлення ✓");
+            long third = arena.append(3, 30, "");
+
+            MessageArena.Flyweight flyweight = arena.newFlyweight();
+            assertEquals(new DelayedMessage(1, 10, "Message 1"), flyweight.wrap(first).toDelayedMessage());
+            assertEquals("Повідомлення ✓", flyweight.wrap(second).getMessage());
+            assertEquals(20, flyweight.getDelay());
+            assertEquals("", flyweight.wrap(third).getMessage());
+
+            assertEquals(3, arena.getRecordCount());
+            assertEquals(2, arena.getSlabCount(), "Expects the second slab when the first one has no room");
+        }
+    }
+
+    @Test
+    void testTooLargeMessage() throws Exception
+    {
+        try (MessageArena arena = new MessageArena(32))
+        {
+            assertThrows(IllegalArgumentException.class, () -> arena.append(1, 1, "The message is larger than the slab"));
+        }
+    }
+
+    @Test
+    void testResetReusesSlabs() throws Exception
+    {
+        try (MessageArena arena = new MessageArena(1_024))
+        {
+            for (int i = 0; i < 1_000; i++)
+            {
+                arena.append(i, i, "Message " + i);
+            }
+            int slabCount = arena.getSlabCount();
+
+            arena.reset();
+            for (int i = 0; i < 1_000; i++)
+            {
+                arena.append(i, i, "Message " + i);
+            }
+
+            assertEquals(slabCount, arena.getSlabCount(), "Expects no new slabs after reset");
+            assertEquals(1_000, arena.getRecordCount());
+        }
+    }
+
+    /**
+     * <pre>
+     * Benchmark plan:
+     * 1) a producer thread buffers 1 000 000 messages in the arena and passes the handles through a queue;
+     * 2) the consumer reads every record with one flyweight;
+     * 3) log heap usage, GC count and GC time compared with the same backlog of {@link DelayedMessage} objects.
+     * </pre>
+     */
+    @Test
+    void testBacklogOffHeap() throws Exception
+    {
+        long[] gcBefore = gcStats();
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        try (MessageArena arena = new MessageArena(1 << 20))
+        {
+            long[] handles = new long[BACKLOG];
+            BlockingQueue<long[]> queue = new ArrayBlockingQueue<>(1);
+
+            Thread producer = new Thread(() ->
+            {
+                for (int i = 0; i < BACKLOG; i++)
+                {
+                    handles[i] = arena.append(i, i % 1_000, "Slow service message");
+                }
+                queue.add(handles);
+            });
+            producer.start();
+
+            MessageArena.Flyweight flyweight = arena.newFlyweight();
+            long sum = 0;
+            for (long handle : queue.take())
+            {
+                sum += flyweight.wrap(handle).getId();
+            }
+
+            assertEquals((long) BACKLOG * (BACKLOG - 1) / 2, sum);
+            LOGGER.debug("Arena: {} records in {} slabs ({} MB off-heap), used heap {} MB", arena.getRecordCount(), arena.getSlabCount(),
+                    arena.getCapacity() >> 20, usedHeap() >> 20);
+        }
+        stopWatch.stop();
+        long arenaTime = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        long[] gcArena = gcStats();
+
+        stopWatch.reset();
+        stopWatch.start();
+        List<DelayedMessage> backlog = new ArrayList<>(BACKLOG);
+        for (int i = 0; i < BACKLOG; i++)
+        {
+            backlog.add(new DelayedMessage(i, i % 1_000, new String("Slow service message")));
+        }
+        LOGGER.debug("Heap objects: {} messages, used heap {} MB", backlog.size(), usedHeap() >> 20);
+        stopWatch.stop();
+        long[] gcHeap = gcStats();
+
+        LOGGER.debug("Arena backlog: {} GCs, {} ms in GC, {} ms", gcArena[0] - gcBefore[0], gcArena[1] - gcBefore[1], arenaTime);
+        LOGGER.debug("Heap backlog: {} GCs, {} ms in GC, {} ms", gcHeap[0] - gcArena[0], gcHeap[1] - gcArena[1], stopWatch.getTime(TimeUnit.MILLISECONDS));
+    }
+
+    private long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private long[] gcStats()
+    {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            count += gc.getCollectionCount();
+            time += gc.getCollectionTime();
+        }
+        return new long[] {count, time};
+    }
+}
@@ -0,0 +1,199 @@
+package com.sme.multithreading.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link MessageCodec} and non-reflective equals, hashCode and toString of {@link Message}, {@link DelayedMessage} and
+ * {@link ScheduledMessage}.
+ */
+public class MessageCodecTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCodecTest.class);
+
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    void testEncodeDecode() throws Exception
+    {
+        // the long payloads grow the scratch array and go past its limit
+        String longAscii = StringUtils.repeat("Message ", 10_000);
+        String longUtf8 = StringUtils.repeat("Повідомлення ", 10_000);
+        Message[] messages = {new Message("Message 1"), new DelayedMessage(1, 300, "Повідомлення 😀"), new Message(null),
+                new DelayedMessage(2, 0, ""), new Message(longUtf8.substring(0, 1_000)), new Message(longAscii), new Message(longUtf8)};
+
+        // the ASCII payload of a heap buffer is decoded from its array, the rest char by char
+        for (ByteBuffer buffer : new ByteBuffer[] {ByteBuffer.allocateDirect(512 * 1024), ByteBuffer.allocate(512 * 1024)})
+        {
+            for (Message message : messages)
+            {
+                assertEquals(MessageCodec.encodedLength(message), MessageCodec.encode(message, buffer));
+            }
+
+            buffer.flip();
+            for (Message message : messages)
+            {
+                assertEquals(message, MessageCodec.decode(buffer));
+            }
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    void testUtf8LikeString() throws Exception
+    {
+        String value = "aé€😀\uD800";
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        MessageCodec.encode(new Message(value), buffer);
+
+        byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected.length, buffer.getInt(1));
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals(expected[i], buffer.get(1 + Integer.BYTES + i));
+        }
+    }
+
+    @Test
+    void testOverflowKeepsPosition() throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put((byte) 1);
+
+        assertThrows(BufferOverflowException.class, () -> MessageCodec.encode(new DelayedMessage(1, 1, "Too long message"), buffer));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void testMalformedPayload() throws Exception
+    {
+        // a continuation byte without a lead one, an overlong '/', a lead byte without continuation, an encoded surrogate, an unused lead byte
+        byte[][] payloads = {{(byte) 0x80}, {(byte) 0xC0, (byte) 0xAF}, {(byte) 0xC3, 'a'}, {(byte) 0xED, (byte) 0xA0, (byte) 0x80},
+                {(byte) 0xF8, (byte) 0x80, (byte) 0x80, (byte) 0x80}};
+        for (byte[] payload : payloads)
+        {
+            ByteBuffer buffer = encodePayload(payload, payload.length);
+            assertThrows(IllegalArgumentException.class, () -> MessageCodec.decode(buffer));
+            assertEquals(0, buffer.position());
+        }
+
+        // the payload length cuts the sequence of '€' that continues in the next bytes of the buffer
+        ByteBuffer buffer = encodePayload("a€".getBytes(StandardCharsets.UTF_8), 2);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    private ByteBuffer encodePayload(byte[] payload, int length)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + payload.length);
+        buffer.put((byte) 0).putInt(length).put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    void testEqualsHashCodeToString() throws Exception
+    {
+        DelayedMessage message = new DelayedMessage(1, 2, "a \"quoted\" message");
+
+        assertEquals(new DelayedMessage(1, 2, "a \"quoted\" message"), message);
+        assertEquals(new DelayedMessage(1, 2, "a \"quoted\" message").hashCode(), message.hashCode());
+        assertNotEquals(new DelayedMessage(1, 3, "a \"quoted\" message"), message);
+        assertNotEquals(new Message("a \"quoted\" message"), message);
+        assertNotEquals(message, new Message("a \"quoted\" message"));
+        assertEquals(new Message(null), new Message(null));
+
+        assertEquals("{\"id\":1,\"delay\":2,\"message\":\"a \\\"quoted\\\" message\"}", message.toString());
+        assertEquals("{\"message\":null}", new Message(null).toString());
+        assertSame(message.toString(), message.toString(), "Expects toString rendered once");
+
+        Message escaped = new Message("tab\t, new line\n, bell\u0007, slash /, back slash \\, é€😀");
+        assertEquals("{\"message\":\"tab\\t, new line\\n, bell\\u0007, slash \\/, back slash \\\\, \\u00E9\\u20AC\\uD83D\\uDE00\"}",
+                escaped.toString());
+        assertEquals(ToStringBuilder.reflectionToString(escaped, ToStringStyle.JSON_STYLE), escaped.toString());
+    }
+
+    @Test
+    void testScheduledMessage() throws Exception
+    {
+        ScheduledMessage message = new ScheduledMessage(new DelayedMessage(1, 2, "Message"), 100);
+
+        assertEquals(new ScheduledMessage(new DelayedMessage(1, 2, "Message"), 100), message);
+        assertEquals(new ScheduledMessage(new DelayedMessage(1, 2, "Message"), 100).hashCode(), message.hashCode());
+        assertNotEquals(new ScheduledMessage(new DelayedMessage(1, 2, "Message"), 101), message);
+        assertNotEquals(new ScheduledMessage(new DelayedMessage(2, 2, "Message"), 100), message);
+        assertEquals(new ScheduledMessage(null, 100), new ScheduledMessage(null, 100));
+
+        assertEquals("{\"deadline\":100,\"message\":{\"id\":1,\"delay\":2,\"message\":\"Message\"}}", message.toString());
+        assertEquals(ToStringBuilder.reflectionToString(message, ToStringStyle.JSON_STYLE), message.toString());
+        assertTrue(EqualsBuilder.reflectionEquals(message, new ScheduledMessage(new DelayedMessage(1, 2, "Message"), 100)));
+    }
+
+    /**
+     * Compares hand-written equals, hashCode and toString with the reflection based builders used before.
+     */
+    @Test
+    void testCompareWithReflection() throws Exception
+    {
+        DelayedMessage first = new DelayedMessage(1, 2, "Slow service message");
+        DelayedMessage second = new DelayedMessage(1, 2, "Slow service message");
+
+        LOGGER.debug("equals: reflection {} ms, hand-written {} ms", measure(() -> EqualsBuilder.reflectionEquals(first, second) ? 1 : 0),
+                measure(() -> first.equals(second) ? 1 : 0));
+        LOGGER.debug("hashCode: reflection {} ms, hand-written {} ms", measure(() -> HashCodeBuilder.reflectionHashCode(first)),
+                measure(first::hashCode));
+        LOGGER.debug("toString: reflection {} ms, hand-written {} ms",
+                measure(() -> ToStringBuilder.reflectionToString(first, ToStringStyle.JSON_STYLE).length()), measure(() -> first.toString().length()));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        LOGGER.debug("encode and decode: {} ms", measure(() ->
+        {
+            buffer.clear();
+            MessageCodec.encode(first, buffer);
+            buffer.flip();
+            return MessageCodec.decode(buffer).hashCode();
+        }));
+
+        assertTrue(first.equals(second));
+    }
+
+    private long measure(IntSupplier operation)
+    {
+        // warm up JIT before measuring
+        int sink = 0;
+        for (int i = 0; i < ITERATIONS / 10; i++)
+        {
+            sink += operation.getAsInt();
+        }
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            sink += operation.getAsInt();
+        }
+        stopWatch.stop();
+
+        LOGGER.trace("Sink {}", sink);
+        return stopWatch.getTime(TimeUnit.MILLISECONDS);
+    }
+}
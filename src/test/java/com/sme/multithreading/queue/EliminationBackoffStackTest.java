@@ -0,0 +1,189 @@
+package com.sme.multithreading.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link EliminationBackoffStack} and {@link BlockingStack}.
+ */
+public class EliminationBackoffStackTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(EliminationBackoffStackTest.class);
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200_000;
+
+    @Test
+    void testLifo() throws Exception
+    {
+        EliminationBackoffStack<Integer> stack = new EliminationBackoffStack<>();
+        assertNull(stack.pop());
+        assertTrue(stack.isEmpty());
+
+        for (int i = 0; i < 10; i++)
+        {
+            stack.push(i);
+        }
+        assertEquals(10, stack.size());
+        assertEquals(9, stack.peek());
+        for (int i = 9; i >= 0; i--)
+        {
+            assertEquals(i, stack.pop());
+        }
+        assertNull(stack.pop());
+    }
+
+    @Test
+    void testBlockingStack() throws Exception
+    {
+        BlockingStack<Integer> stack = new BlockingStack<>(WaitStrategies.YIELD);
+        stack.put(1);
+        stack.put(2);
+        assertEquals(2, stack.size());
+        assertEquals(2, stack.take());
+        assertEquals(1, stack.take());
+        assertTrue(stack.isEmpty());
+
+        Thread producer = new Thread(() -> stack.offer(3));
+        producer.start();
+        assertEquals(3, stack.take());
+        producer.join();
+
+        for (int i = 1; i <= 4; i++)
+        {
+            stack.put(i);
+        }
+        assertEquals("[4, 3, 2, 1]", stack.toString());
+        assertTrue(stack.remove(Integer.valueOf(4)));
+        assertTrue(stack.remove(Integer.valueOf(2)));
+        assertFalse(stack.contains(2));
+        assertEquals(2, stack.size());
+        assertEquals(3, stack.peek());
+        assertEquals(3, stack.take());
+        assertEquals(1, stack.take());
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    void testNoElementLostUnderContention() throws Exception
+    {
+        EliminationBackoffStack<Integer> stack = new EliminationBackoffStack<>();
+        List<BitSet> popped = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++)
+        {
+            int from = t * OPERATIONS;
+            BitSet bitSet = new BitSet();
+            popped.add(bitSet);
+            threads.add(new Thread(() ->
+            {
+                for (int i = from; i < from + OPERATIONS; i++)
+                {
+                    stack.push(i);
+                    Integer e = stack.pop();
+                    if (e != null)
+                    {
+                        bitSet.set(e);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        BitSet all = new BitSet();
+        popped.forEach(all::or);
+        Integer e;
+        while ((e = stack.pop()) != null)
+        {
+            all.set(e);
+        }
+
+        LOGGER.debug("{} eliminated push/pop pairs of {}", stack.getEliminationCount(), THREADS * OPERATIONS);
+        assertEquals(THREADS * OPERATIONS, all.cardinality());
+    }
+
+    @Test
+    void testCompareUnderContention() throws Exception
+    {
+        EliminationBackoffStack<Integer> elimination = new EliminationBackoffStack<>();
+
+        // warm up
+        run("EliminationBackoffStack", elimination::push, () -> elimination.pop());
+        LinkedBlockingDeque<Integer> warmUpDeque = new LinkedBlockingDeque<>();
+        run("LinkedBlockingDeque", warmUpDeque::push, () -> warmUpDeque.pollFirst());
+
+        run("EliminationBackoffStack", elimination::push, () -> elimination.pop());
+        Deque<Integer> blockingDeque = new LinkedBlockingDeque<>();
+        run("LinkedBlockingDeque", blockingDeque::push, () -> blockingDeque.pollFirst());
+        Deque<Integer> concurrentDeque = new ConcurrentLinkedDeque<>();
+        run("ConcurrentLinkedDeque", concurrentDeque::push, () -> concurrentDeque.pollFirst());
+
+        LOGGER.debug("EliminationBackoffStack eliminated {} push/pop pairs", elimination.getEliminationCount());
+    }
+
+    private void run(String name, Consumer<Integer> push, Supplier<Integer> pop) throws Exception
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    start.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                Integer element = Integer.valueOf(1);
+                for (int i = 0; i < OPERATIONS; i++)
+                {
+                    push.accept(element);
+                    pop.get();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        stopWatch.stop();
+
+        LOGGER.debug("{}: {} threads did {} push/pop pairs in {} ms, {} ops/ms",
+                name,
+                THREADS,
+                THREADS * OPERATIONS,
+                stopWatch.getTime(),
+                2L * THREADS * OPERATIONS / Math.max(1, stopWatch.getTime()));
+    }
+}
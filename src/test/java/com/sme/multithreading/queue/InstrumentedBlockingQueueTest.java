@@ -0,0 +1,157 @@
+package com.sme.multithreading.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.consumerproducer.ConsumerProducerFifoTest;
+import com.sme.multithreading.model.Message;
+
+/**
+ * Unit tests of {@link InstrumentedBlockingQueue}.
+ * <p>
+ * The tests use the topology of {@link ConsumerProducerFifoTest}: one producer, one consumer and {@link ArrayBlockingQueue} with 10 elements.
+ * </p>
+ */
+public class InstrumentedBlockingQueueTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstrumentedBlockingQueueTest.class);
+
+    private static final int CAPACITY = 10;
+    private static final int MESSAGES = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void testDecorator() throws Exception
+    {
+        InstrumentedBlockingQueue<Message> queue = new InstrumentedBlockingQueue<>(new ArrayBlockingQueue<>(2));
+        queue.put(new Message("1"));
+        assertTrue(queue.offer(new Message("2")));
+        assertFalse(queue.offer(new Message("3"), 1, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(new Message("1"), queue.peek());
+        assertEquals(new Message("1"), queue.iterator().next());
+
+        assertEquals(new Message("1"), queue.take());
+        List<Message> drained = new ArrayList<>();
+        assertEquals(1, queue.drainTo(drained));
+        assertEquals(new Message("2"), drained.get(0));
+        assertEquals(null, queue.poll(1, TimeUnit.MILLISECONDS));
+
+        InstrumentedBlockingQueue.Stats stats = queue.snapshotAndReset();
+        assertEquals(2, stats.getSojournTime().getCount());
+        assertEquals(1, stats.getPutWaitTime().getCount());
+        assertEquals(1, stats.getTakeWaitTime().getCount());
+        assertEquals(0, queue.snapshotAndReset().getSojournTime().getCount());
+    }
+
+    @Test
+    void testConsumerBoundAndProducerBound() throws Exception
+    {
+        // the consumer is slow
+        InstrumentedBlockingQueue<Message> queue = new InstrumentedBlockingQueue<>(new ArrayBlockingQueue<>(CAPACITY));
+        run(queue, 1_000, 0, 20);
+        InstrumentedBlockingQueue.Stats stats = queue.snapshotAndReset();
+        LOGGER.debug("Slow consumer: {}", stats);
+        assertTrue(stats.isConsumerBound());
+
+        // the producer is slow
+        run(queue, 1_000, 20, 0);
+        stats = queue.snapshotAndReset();
+        LOGGER.debug("Slow producer: {}", stats);
+        assertFalse(stats.isConsumerBound());
+    }
+
+    // the timing of two threads is noisy on a loaded machine, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void testOverhead() throws Exception
+    {
+        // warm up
+        run(new ArrayBlockingQueue<>(CAPACITY), MESSAGES / 10, 0, 0);
+        run(new InstrumentedBlockingQueue<>(new ArrayBlockingQueue<>(CAPACITY)), MESSAGES / 10, 0, 0);
+
+        // the runs alternate, so a slow period of the machine affects both queues, and the median drops the outliers
+        long[] plainTimes = new long[ROUNDS];
+        long[] instrumentedTimes = new long[ROUNDS];
+        InstrumentedBlockingQueue<Message> queue = new InstrumentedBlockingQueue<>(new ArrayBlockingQueue<>(CAPACITY));
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            plainTimes[i] = run(new ArrayBlockingQueue<>(CAPACITY), MESSAGES, 0, 0);
+            instrumentedTimes[i] = run(queue, MESSAGES, 0, 0);
+        }
+        long plain = median(plainTimes);
+        long instrumented = median(instrumentedTimes);
+
+        LOGGER.debug("{} messages: ArrayBlockingQueue in {} ms, InstrumentedBlockingQueue in {} ms (median of {}), overhead {}%",
+                MESSAGES,
+                plain,
+                instrumented,
+                ROUNDS,
+                String.format("%.1f", 100.0 * (instrumented - plain) / Math.max(1, plain)));
+        LOGGER.debug("{}", queue.snapshotAndReset());
+
+        assertTrue(instrumented <= plain * 5 / 4, "Expects the overhead less than 25%, but got " + instrumented + " ms and " + plain + " ms");
+    }
+
+    private static long median(long[] times)
+    {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private long run(BlockingQueue<Message> queue, int messages, long producerDelayMicros, long consumerDelayMicros) throws Exception
+    {
+        Message message = new Message("Message");
+        Thread producer = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < messages; i++)
+                {
+                    pause(producerDelayMicros);
+                    queue.put(message);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        producer.start();
+        for (int i = 0; i < messages; i++)
+        {
+            pause(consumerDelayMicros);
+            queue.take();
+        }
+        producer.join();
+        stopWatch.stop();
+        return stopWatch.getTime();
+    }
+
+    private void pause(long micros)
+    {
+        if (micros > 0)
+        {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+    }
+}
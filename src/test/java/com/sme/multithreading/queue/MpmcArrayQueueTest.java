@@ -0,0 +1,241 @@
+package com.sme.multithreading.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.model.Message;
+
+/**
+ * Unit tests of {@link MpmcArrayQueue}.
+ */
+public class MpmcArrayQueueTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(MpmcArrayQueueTest.class);
+
+    private static final int CAPACITY = 1024;
+    private static final int MESSAGES = 400_000;
+    private static final int[] PAIRS = {1, 2, 4, 8};
+
+    @Test
+    void testOfferPoll() throws Exception
+    {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(2);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertFalse(queue.offer(3, 1, TimeUnit.MILLISECONDS));
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.peek());
+
+        assertEquals(1, queue.poll());
+        assertTrue(queue.offer(3));
+        assertEquals(2, queue.take());
+        assertEquals(3, queue.poll(1, TimeUnit.MILLISECONDS));
+        assertNull(queue.poll());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testCollectionMethods() throws Exception
+    {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(4);
+        for (int i = 1; i <= 4; i++)
+        {
+            queue.offer(i);
+        }
+
+        assertEquals("[1, 2, 3, 4]", queue.toString());
+        assertTrue(queue.remove(Integer.valueOf(1)));
+        assertFalse(queue.contains(1));
+        assertEquals(2, queue.peek());
+
+        Iterator<Integer> iterator = queue.iterator();
+        assertEquals(2, iterator.next());
+        iterator.remove();
+        assertEquals(2, queue.size());
+        assertTrue(queue.retainAll(Arrays.asList(4)));
+        assertEquals(Arrays.asList(4), new ArrayList<>(queue));
+        assertEquals(4, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testRemoveRacesWithConsumers() throws Exception
+    {
+        int messages = 100_000;
+        MpmcArrayQueue<DelayedMessage> queue = new MpmcArrayQueue<>(64, WaitStrategies.YIELD);
+        BitSet removed = new BitSet(messages);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        // the remover takes every even message it sees in the ring
+        Thread remover = new Thread(() ->
+        {
+            while (running.get())
+            {
+                for (DelayedMessage message : queue)
+                {
+                    if (message.getId() % 2 == 0 && queue.remove(message))
+                    {
+                        removed.set(message.getId());
+                    }
+                }
+            }
+        });
+        remover.start();
+
+        BitSet consumed = new BitSet(messages);
+        Thread consumer = new Thread(() ->
+        {
+            while (true)
+            {
+                // read the flag before the poll, so the empty queue after the last put stops the consumer
+                boolean produced = !running.get();
+                DelayedMessage message = queue.poll();
+                if (message != null)
+                {
+                    consumed.set(message.getId());
+                }
+                else if (produced)
+                {
+                    break;
+                }
+            }
+        });
+        consumer.start();
+
+        for (int id = 0; id < messages; id++)
+        {
+            queue.put(new DelayedMessage(id, 0, ""));
+        }
+        running.set(false);
+        remover.join();
+        consumer.join();
+
+        LOGGER.debug("Removed {} of {} messages", removed.cardinality(), messages);
+        assertFalse(consumed.intersects(removed), "Expects no message both removed and consumed");
+        consumed.or(removed);
+        assertEquals(messages, consumed.cardinality());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testNoMessageLostOrDuplicated() throws Exception
+    {
+        BlockingQueue<Message> queue = new MpmcArrayQueue<>(64, WaitStrategies.YIELD);
+        int pairs = 4;
+        BitSet received = run(queue, pairs, MESSAGES / 4);
+
+        assertEquals(MESSAGES / 4, received.cardinality());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testThroughputScaling() throws Exception
+    {
+        // warm up
+        measure("MpmcArrayQueue", () -> new MpmcArrayQueue<>(CAPACITY, WaitStrategies.YIELD), 2);
+        measure("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY), 2);
+
+        for (int pairs : PAIRS)
+        {
+            measure("MpmcArrayQueue", () -> new MpmcArrayQueue<>(CAPACITY, WaitStrategies.YIELD), pairs);
+            measure("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY), pairs);
+        }
+    }
+
+    private void measure(String name, Supplier<BlockingQueue<Message>> supplier, int pairs) throws Exception
+    {
+        StopWatch stopWatch = StopWatch.createStarted();
+        BitSet received = run(supplier.get(), pairs, MESSAGES);
+        stopWatch.stop();
+
+        assertEquals(MESSAGES, received.cardinality());
+        LOGGER.debug("{} with {} producer/consumer pairs: {} messages in {} ms, {} ops/ms",
+                name,
+                pairs,
+                MESSAGES,
+                stopWatch.getTime(),
+                MESSAGES / Math.max(1, stopWatch.getTime()));
+    }
+
+    private BitSet run(BlockingQueue<Message> queue, int pairs, int messages) throws Exception
+    {
+        int perProducer = messages / pairs;
+        CountDownLatch done = new CountDownLatch(pairs * 2);
+        List<BitSet> consumed = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < pairs; p++)
+        {
+            int from = p * perProducer;
+            int to = p == pairs - 1 ? messages : from + perProducer;
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    for (int id = from; id < to; id++)
+                    {
+                        queue.put(new DelayedMessage(id, 0, ""));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }));
+
+            // every consumer takes as many messages as its paired producer sends, in any order
+            int count = to - from;
+            BitSet bitSet = new BitSet(messages);
+            consumed.add(bitSet);
+            threads.add(new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        bitSet.set(((DelayedMessage) queue.take()).getId());
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        done.await();
+
+        BitSet result = new BitSet(messages);
+        for (BitSet bitSet : consumed)
+        {
+            assertFalse(result.intersects(bitSet), "Expects no message consumed twice");
+            result.or(bitSet);
+        }
+        return result;
+    }
+}
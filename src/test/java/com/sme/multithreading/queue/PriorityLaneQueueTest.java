@@ -0,0 +1,274 @@
+package com.sme.multithreading.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.queue.PriorityLaneQueue.Policy;
+import com.sme.multithreading.util.Histogram;
+
+/**
+ * Unit tests of {@link PriorityLaneQueue}.
+ * <p>
+ * {@link DelayedMessage#getId()} is the lane of message: 0 is the latency-critical lane, 1 is the bulk lane.
+ * </p>
+ */
+public class PriorityLaneQueueTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(PriorityLaneQueueTest.class);
+
+    private static final int CRITICAL = 0;
+    private static final int BULK = 1;
+    private static final int[] CAPACITIES = {100, 1_000};
+
+    @Test
+    void testStrictPriority() throws Exception
+    {
+        PriorityLaneQueue<DelayedMessage> queue = new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, DelayedMessage::getId, CAPACITIES, new int[] {1, 1});
+        queue.put(message(BULK, "b1"));
+        queue.put(message(BULK, "b2"));
+        queue.put(message(CRITICAL, "c1"));
+
+        assertEquals(3, queue.size());
+        assertEquals("c1", queue.peek().getMessage());
+        assertEquals("c1", queue.take().getMessage());
+        assertEquals("b1", queue.take().getMessage());
+        assertEquals("b2", queue.poll(1, TimeUnit.MILLISECONDS).getMessage());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> queue.offer(message(2, "unknown")));
+    }
+
+    @Test
+    void testLaneCapacity() throws Exception
+    {
+        PriorityLaneQueue<DelayedMessage> queue = new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, DelayedMessage::getId, new int[] {2, 2}, new int[] {1, 1});
+        assertTrue(queue.offer(message(BULK, "b1")));
+        assertTrue(queue.offer(message(BULK, "b2")));
+
+        // the full bulk lane does not block the critical lane
+        assertFalse(queue.offer(message(BULK, "b3"), 1, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(message(CRITICAL, "c1")));
+        assertEquals(1, queue.remainingCapacity());
+        assertEquals(2, queue.getLaneSize(BULK));
+
+        List<DelayedMessage> drained = new ArrayList<>();
+        assertEquals(3, queue.drainTo(drained));
+        assertEquals("c1", drained.get(0).getMessage());
+        assertEquals(4, queue.remainingCapacity());
+    }
+
+    @Test
+    void testRemove() throws Exception
+    {
+        PriorityLaneQueue<DelayedMessage> queue = new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, DelayedMessage::getId, new int[] {2, 2}, new int[] {1, 1});
+        queue.put(message(BULK, "b1"));
+        queue.put(message(BULK, "b2"));
+        queue.put(message(CRITICAL, "c1"));
+
+        // the producer waits for the full bulk lane
+        Thread producer = new Thread(() ->
+        {
+            try
+            {
+                queue.put(message(BULK, "b3"));
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        assertTrue(queue.remove(message(BULK, "b1")));
+        assertFalse(queue.remove(message(BULK, "b1")));
+        assertFalse(queue.remove(message(CRITICAL, "unknown")));
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(producer.isAlive());
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getLaneSize(BULK));
+
+        // the iterator walks the copy and removes from the queue
+        Iterator<DelayedMessage> iterator = queue.iterator();
+        assertEquals("c1", iterator.next().getMessage());
+        iterator.remove();
+        assertThrows(IllegalStateException.class, iterator::remove);
+        assertEquals("b2", iterator.next().getMessage());
+        assertEquals(2, queue.size());
+        assertEquals(0, queue.getLaneSize(CRITICAL));
+
+        assertTrue(queue.removeAll(Arrays.asList(message(BULK, "b2"))));
+        assertFalse(queue.retainAll(Arrays.asList(message(BULK, "b3"))));
+        assertTrue(queue.offer(message(BULK, "b4")));
+        assertTrue(queue.retainAll(Arrays.asList(message(BULK, "b4"))));
+        assertEquals("b4", queue.take().getMessage());
+        assertTrue(queue.isEmpty());
+        assertEquals(4, queue.remainingCapacity());
+    }
+
+    @Test
+    void testDeficitRoundRobinShares() throws Exception
+    {
+        PriorityLaneQueue<DelayedMessage> queue = new PriorityLaneQueue<>(Policy.DEFICIT_ROUND_ROBIN, DelayedMessage::getId, CAPACITIES, new int[] {3, 1});
+        for (int i = 0; i < 100; i++)
+        {
+            queue.put(message(CRITICAL, "c" + i));
+            queue.put(message(BULK, "b" + i));
+        }
+
+        // both lanes are backlogged, so the throughput is shared 3:1
+        int[] taken = new int[2];
+        for (int i = 0; i < 80; i++)
+        {
+            taken[queue.take().getId()]++;
+        }
+        assertEquals(60, taken[CRITICAL]);
+        assertEquals(20, taken[BULK]);
+
+        // 13 rounds and the last critical message
+        for (int i = 0; i < 53; i++)
+        {
+            queue.take();
+        }
+        assertEquals(0, queue.getLaneSize(CRITICAL));
+        assertEquals(67, queue.getLaneSize(BULK));
+
+        // the idle critical lane does not hold the bulk lane
+        assertEquals(BULK, queue.take().getId());
+        assertEquals(BULK, queue.take().getId());
+    }
+
+    @Test
+    void testDeficitRoundRobinByCost() throws Exception
+    {
+        // the cost of message is the length of text, so the lanes share the bytes rather than the messages
+        PriorityLaneQueue<DelayedMessage> queue = new PriorityLaneQueue<>(Policy.DEFICIT_ROUND_ROBIN,
+                DelayedMessage::getId,
+                m -> m.getMessage().length(),
+                CAPACITIES,
+                new int[] {10, 10});
+        for (int i = 0; i < 50; i++)
+        {
+            queue.put(message(CRITICAL, "c"));
+            queue.put(message(BULK, "bbbbbbbbbb"));
+        }
+
+        int[] taken = new int[2];
+        for (int i = 0; i < 55; i++)
+        {
+            taken[queue.take().getId()]++;
+        }
+        assertEquals(50, taken[CRITICAL]);
+        assertEquals(5, taken[BULK]);
+    }
+
+    @Test
+    void testMixedLoadLatency() throws Exception
+    {
+        int[] weights = {4, 1};
+
+        // warm up
+        run(new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, DelayedMessage::getId, CAPACITIES, weights), 200);
+
+        // all messages in one FIFO lane
+        Histogram[] fifo = run(new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, m -> 0, new int[] {1_100}, new int[] {1}), 500);
+        Histogram[] strict = run(new PriorityLaneQueue<>(Policy.STRICT_PRIORITY, DelayedMessage::getId, CAPACITIES, weights), 500);
+        Histogram[] drr = run(new PriorityLaneQueue<>(Policy.DEFICIT_ROUND_ROBIN, DelayedMessage::getId, CAPACITIES, weights), 500);
+
+        report("FIFO", fifo);
+        report("Strict priority", strict);
+        report("Deficit round robin 4:1", drr);
+
+        // the critical messages do not wait behind the bulk backlog
+        assertTrue(strict[CRITICAL].snapshot().getMean() < strict[BULK].snapshot().getMean());
+        assertTrue(drr[CRITICAL].snapshot().getMean() < drr[BULK].snapshot().getMean());
+        assertTrue(strict[CRITICAL].snapshot().getMean() < fifo[CRITICAL].snapshot().getMean());
+    }
+
+    // the bulk producer floods own lane, the critical producer sends a message every 100 microseconds, the consumer spends ~5 microseconds per
+    // message
+    private Histogram[] run(BlockingQueue<DelayedMessage> queue, int criticalMessages) throws InterruptedException
+    {
+        Histogram[] latencies = {new Histogram(), new Histogram()};
+        int bulkMessages = criticalMessages * 20;
+
+        Thread bulk = new Thread(() -> produce(queue, BULK, bulkMessages, 0), "bulk-producer");
+        Thread critical = new Thread(() -> produce(queue, CRITICAL, criticalMessages, TimeUnit.MICROSECONDS.toNanos(100)), "critical-producer");
+        Thread consumer = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < bulkMessages + criticalMessages; i++)
+                {
+                    DelayedMessage message = queue.take();
+                    latencies[message.getId()].record(System.nanoTime() - Long.parseLong(message.getMessage()));
+                    busyWork(TimeUnit.MICROSECONDS.toNanos(5));
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "consumer");
+
+        consumer.start();
+        bulk.start();
+        critical.start();
+        bulk.join();
+        critical.join();
+        consumer.join();
+        return latencies;
+    }
+
+    private void produce(BlockingQueue<DelayedMessage> queue, int lane, int count, long pauseNanos)
+    {
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                queue.put(message(lane, String.valueOf(System.nanoTime())));
+                if (pauseNanos > 0)
+                {
+                    LockSupport.parkNanos(pauseNanos);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void busyWork(long nanos)
+    {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end)
+        {
+            // spin
+        }
+    }
+
+    private void report(String name, Histogram[] latencies)
+    {
+        LOGGER.debug("{}: critical lane {}, bulk lane {}", name, latencies[CRITICAL].snapshot().toMicrosString(), latencies[BULK].snapshot().toMicrosString());
+    }
+
+    private static DelayedMessage message(int lane, String text)
+    {
+        return new DelayedMessage(lane, 0, text);
+    }
+}
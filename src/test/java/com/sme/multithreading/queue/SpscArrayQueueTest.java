@@ -0,0 +1,215 @@
+package com.sme.multithreading.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Unit tests of {@link SpscArrayQueue}.
+ */
+public class SpscArrayQueueTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpscArrayQueueTest.class);
+
+    private static final int CAPACITY = 1024;
+    private static final int MESSAGES = 1_000_000;
+    // every N-th message carries the send time to measure the latency
+    private static final int LATENCY_SAMPLE = 100;
+
+    @Test
+    void testOfferPoll() throws Exception
+    {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertFalse(queue.offer(4, 1, TimeUnit.MILLISECONDS));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.remainingCapacity());
+        assertEquals(0, queue.peek());
+
+        for (int i = 0; i < 4; i++)
+        {
+            assertEquals(i, queue.poll());
+        }
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+    }
+
+    @Test
+    void testCollectionMethods() throws Exception
+    {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(4);
+        // the second lap of ring
+        queue.offer(0);
+        queue.offer(1);
+        queue.poll();
+        queue.poll();
+        for (int i = 1; i <= 4; i++)
+        {
+            queue.offer(i);
+        }
+
+        assertEquals("[1, 2, 3, 4]", queue.toString());
+        assertTrue(queue.contains(3));
+        assertFalse(queue.contains(5));
+        assertEquals(Arrays.asList(1, 2, 3, 4), new ArrayList<>(queue));
+
+        // the single consumer owns the slots
+        assertThrows(UnsupportedOperationException.class, () -> queue.remove(Integer.valueOf(1)));
+        assertThrows(UnsupportedOperationException.class, () -> queue.removeAll(Arrays.asList(3)));
+        Iterator<Integer> iterator = queue.iterator();
+        assertEquals(1, iterator.next());
+        assertThrows(UnsupportedOperationException.class, iterator::remove);
+        assertEquals(4, queue.size());
+
+        for (int i = 1; i <= 4; i++)
+        {
+            assertEquals(i, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        for (int i = 0; i < 4; i++)
+        {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    void testDrainTo() throws Exception
+    {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(16);
+        for (int i = 0; i < 10; i++)
+        {
+            queue.put(i);
+        }
+
+        List<Integer> list = new ArrayList<>();
+        assertEquals(4, queue.drainTo(list, 4));
+        assertEquals(6, queue.drainTo(list));
+        assertEquals(10, list.size());
+        assertEquals(9, list.get(9));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testTakeInterrupted() throws Exception
+    {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(16);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> queue.take());
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    void testOrderAcrossThreads() throws Exception
+    {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(64, WaitStrategies.YIELD);
+        Thread producer = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < MESSAGES / 10; i++)
+                {
+                    queue.put(i);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < MESSAGES / 10; i++)
+        {
+            assertEquals(i, queue.take());
+        }
+        producer.join();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testCompareWithBlockingQueues() throws Exception
+    {
+        // warm up
+        run("SpscArrayQueue", () -> new SpscArrayQueue<>(CAPACITY, WaitStrategies.YIELD));
+        run("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY));
+        run("LinkedBlockingQueue", () -> new LinkedBlockingQueue<>(CAPACITY));
+
+        run("SpscArrayQueue", () -> new SpscArrayQueue<>(CAPACITY, WaitStrategies.YIELD));
+        run("ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(CAPACITY));
+        run("LinkedBlockingQueue", () -> new LinkedBlockingQueue<>(CAPACITY));
+    }
+
+    private void run(String name, Supplier<BlockingQueue<Long>> supplier) throws Exception
+    {
+        BlockingQueue<Long> queue = supplier.get();
+        Long payload = Long.valueOf(-1);
+
+        Thread producer = new Thread(() ->
+        {
+            try
+            {
+                for (int i = 0; i < MESSAGES; i++)
+                {
+                    queue.put(i % LATENCY_SAMPLE == 0 ? Long.valueOf(System.nanoTime()) : payload);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        StopWatch stopWatch = StopWatch.createStarted();
+        producer.start();
+
+        long[] latencies = new long[MESSAGES / LATENCY_SAMPLE];
+        int samples = 0;
+        for (int i = 0; i < MESSAGES; i++)
+        {
+            Long value = queue.take();
+            if (value != payload)
+            {
+                latencies[samples++] = System.nanoTime() - value;
+            }
+        }
+        producer.join();
+        stopWatch.stop();
+
+        assertEquals(latencies.length, samples);
+        Arrays.sort(latencies);
+        LOGGER.debug("{}: {} messages in {} ms, {} ops/ms, latency p50 {} us, p99 {} us",
+                name,
+                MESSAGES,
+                stopWatch.getTime(),
+                MESSAGES / Math.max(1, stopWatch.getTime()),
+                TimeUnit.NANOSECONDS.toMicros(latencies[samples / 2]),
+                TimeUnit.NANOSECONDS.toMicros(latencies[samples * 99 / 100]));
+    }
+}
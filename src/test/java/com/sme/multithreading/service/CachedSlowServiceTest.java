@@ -0,0 +1,60 @@
+package com.sme.multithreading.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.cache.SegmentedLruCache;
+import com.sme.multithreading.model.DelayedMessage;
+
+/**
+ * Unit tests of {@link CachedSlowService}.
+ */
+public class CachedSlowServiceTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachedSlowServiceTest.class);
+
+    private final CachedSlowService cachedSlowService = new CachedSlowService(new SlowService(), 50);
+    private final StopWatch stopWatch = new StopWatch();
+
+    /**
+     * <pre>
+     * Test plan:
+     * 1) fetch 1 000 messages with ids skewed to a few hot ids in parallel;
+     * 2) assert every message has requested id;
+     * 3) log hit rate and load penalty to size the cache.
+     * </pre>
+     */
+    @Test
+    void testSkewedIds() throws Exception
+    {
+        Random random = new Random(1);
+        List<Integer> ids = random.ints(1_000, 0, 40)
+                .map(id -> id % 2 == 0 ? id % 10 : id)
+                .boxed()
+                .collect(Collectors.toList());
+
+        stopWatch.start();
+        List<DelayedMessage> messages = ids.parallelStream()
+                .map(cachedSlowService::getMessage)
+                .collect(Collectors.toList());
+        stopWatch.stop();
+
+        assertEquals(ids, messages.stream().map(DelayedMessage::getId).collect(Collectors.toList()));
+
+        SegmentedLruCache.Stats stats = cachedSlowService.stats();
+        LOGGER.debug("Fetched {} messages in {} ms with {} stats", messages.size(), stopWatch.getTime(TimeUnit.MILLISECONDS), stats);
+
+        assertTrue(stats.getHitRate() > 0.5d, "Expects hot ids served from cache");
+        assertTrue(stats.getLoadCount() < ids.size());
+    }
+}
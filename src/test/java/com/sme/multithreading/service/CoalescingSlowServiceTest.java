@@ -0,0 +1,158 @@
+package com.sme.multithreading.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
+
+/**
+ * Unit tests of {@link SlowService#getMessages(int[])} and {@link CoalescingSlowService}.
+ */
+public class CoalescingSlowServiceTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingSlowServiceTest.class);
+
+    private final SlowService slowService = new SlowService();
+    private final StopWatch stopWatch = new StopWatch();
+
+    @Test
+    void testGetMessages() throws Exception
+    {
+        List<DelayedMessage> messages = slowService.getMessages(new int[] {3, 1, 2});
+
+        assertEquals(3, messages.size());
+        assertEquals(3, messages.get(0).getId());
+        assertEquals(1, messages.get(1).getId());
+        assertEquals(2, messages.get(2).getId());
+        assertEquals(1, messages.stream().map(DelayedMessage::getDelay).distinct().count(), "Expects one delay for the whole batch");
+    }
+
+    @Test
+    void testFlushByWindow() throws Exception
+    {
+        try (CoalescingSlowService coalescingService = new CoalescingSlowService(slowService, 100, 20, TimeUnit.MILLISECONDS))
+        {
+            CompletableFuture<DelayedMessage> first = coalescingService.getMessage(1);
+            CompletableFuture<DelayedMessage> second = coalescingService.getMessage(2);
+
+            assertEquals(1, first.get(1_500, TimeUnit.MILLISECONDS).getId());
+            assertEquals(2, second.get(1_500, TimeUnit.MILLISECONDS).getId());
+            // a slow scheduler thread may flush the first call before the second one arrives
+            assertTrue(coalescingService.getBatchCount() >= 1 && coalescingService.getBatchCount() <= 2, "Expects one or two batches");
+        }
+    }
+
+    @Test
+    void testCancelBeforeDispatch() throws Exception
+    {
+        RecordingSlowService recordingService = new RecordingSlowService();
+        try (CoalescingSlowService coalescingService = new CoalescingSlowService(recordingService, 100, 50, TimeUnit.MILLISECONDS))
+        {
+            CompletableFuture<DelayedMessage> first = coalescingService.getMessage(1);
+            CompletableFuture<DelayedMessage> second = coalescingService.getMessage(2);
+            assertTrue(first.cancel(false));
+
+            assertEquals(2, second.get(1_500, TimeUnit.MILLISECONDS).getId());
+            assertTrue(recordingService.batches.stream().allMatch(ids -> Arrays.equals(new int[] {2}, ids)), "Expects the canceled id is not sent");
+
+            // all calls of the batch are canceled, so the batch is not sent
+            long batches = coalescingService.getBatchCount();
+            coalescingService.getMessage(3).cancel(false);
+            TimeUnit.MILLISECONDS.sleep(100);
+            assertEquals(batches, coalescingService.getBatchCount());
+        }
+    }
+
+    @Test
+    void testCancelDispatchedBatch() throws Exception
+    {
+        RecordingSlowService recordingService = new RecordingSlowService();
+        try (CoalescingSlowService coalescingService = new CoalescingSlowService(recordingService, 2, 1, TimeUnit.SECONDS))
+        {
+            // the full batch is dispatched at once
+            CompletableFuture<DelayedMessage> first = coalescingService.getMessage(1);
+            CompletableFuture<DelayedMessage> second = coalescingService.getMessage(2);
+            assertEquals(1, coalescingService.getBatchCount());
+
+            first.cancel(false);
+            assertFalse(recordingService.requests.get(0).isCancelled(), "Expects the batch call runs for the other caller");
+            second.cancel(false);
+            assertTrue(recordingService.requests.get(0).isCancelled(), "Expects the batch call is canceled with the last caller");
+        }
+    }
+
+    /**
+     * {@link SlowService} that records the batches and the futures of batch calls.
+     */
+    private static final class RecordingSlowService extends SlowService
+    {
+        private final List<int[]> batches = new CopyOnWriteArrayList<>();
+        private final List<CompletableFuture<List<DelayedMessage>>> requests = new CopyOnWriteArrayList<>();
+
+        RecordingSlowService()
+        {
+            super(new UniformLatencyModel(1, 100, 200));
+        }
+
+        @Override
+        public CompletableFuture<List<DelayedMessage>> getMessagesAsync(int[] ids)
+        {
+            CompletableFuture<List<DelayedMessage>> request = super.getMessagesAsync(ids);
+            batches.add(ids.clone());
+            requests.add(request);
+            return request;
+        }
+    }
+
+    /**
+     * <pre>
+     * Test plan:
+     * 1) fan out 10 000 single calls through the coalescing service with 500 ids in a batch;
+     * 2) assert every caller gets own message;
+     * 3) assert the calls are dispatched in a few batches.
+     * </pre>
+     */
+    @Test
+    void testCoalesceFanOut() throws Exception
+    {
+        final int count = 10_000;
+        final int batchSize = 500;
+
+        try (CoalescingSlowService coalescingService = new CoalescingSlowService(slowService, batchSize, 10, TimeUnit.MILLISECONDS))
+        {
+            stopWatch.start();
+
+            List<CompletableFuture<DelayedMessage>> futures = IntStream.range(0, count)
+                    .parallel()
+                    .mapToObj(coalescingService::getMessage)
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+            stopWatch.stop();
+
+            LOGGER.debug("Dispatched {} requests in {} batches in {} ms", coalescingService.getRequestCount(), coalescingService.getBatchCount(),
+                    stopWatch.getTime(TimeUnit.MILLISECONDS));
+
+            assertEquals(IntStream.range(0, count).boxed().collect(Collectors.toList()),
+                    futures.stream().map(CompletableFuture::join).map(DelayedMessage::getId).collect(Collectors.toList()));
+            assertEquals(count, coalescingService.getRequestCount());
+            assertTrue(coalescingService.getBatchCount() >= count / batchSize, "Expects no batch above the max size");
+            assertTrue(coalescingService.getBatchCount() < count / 10, "Expects calls to be coalesced");
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.sme.multithreading.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.latency.BimodalLatencyModel;
+import com.sme.multithreading.service.latency.LatencyModel;
+import com.sme.multithreading.service.latency.UniformLatencyModel;
+
+/**
+ * Unit tests of {@link HedgedSlowService}.
+ */
+public class HedgedSlowServiceTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgedSlowServiceTest.class);
+
+    private static final int ROUNDS = 10;
+    private static final int CALLS = 200;
+    private static final double MAX_HEDGE_RATIO = 0.05d;
+    // holds about 30 slow calls, so a few more of them do not move p95 to the slow mode
+    private static final int WINDOW = 1_000;
+
+    /**
+     * <pre>
+     * Test plan:
+     * 1) create the service with 3% of slow calls;
+     * 2) fan out 10 rounds of 200 calls with and without hedging;
+     * 3) assert the hedge rate keeps in the budget;
+     * 4) assert p99 with hedging is lower than p99 without hedging;
+     * 5) log p99 of both runs, hedge rate and latency saved.
+     * </pre>
+     */
+    @Test
+    void testHedgeSlowCalls() throws Exception
+    {
+        try (HedgedSlowService hedgedService = new HedgedSlowService(new SlowService(createModel()), 0.95d, WINDOW, MAX_HEDGE_RATIO);
+                HedgedSlowService notHedgedService = new HedgedSlowService(new SlowService(createModel()), 0.95d, WINDOW, 0))
+        {
+            List<Long> hedgedLatencies = fanOut(hedgedService::getMessage);
+            List<Long> notHedgedLatencies = fanOut(notHedgedService::getMessage);
+
+            long hedgedP99 = percentile(hedgedLatencies, 0.99d);
+            long notHedgedP99 = percentile(notHedgedLatencies, 0.99d);
+            LOGGER.debug("p99 with hedging: {} ms, p99 without hedging: {} ms", hedgedP99, notHedgedP99);
+            LOGGER.debug("Hedge threshold: {} ms, hedge rate: {}, backup wins: {}, latency saved: {} ms", hedgedService.getThreshold(),
+                    hedgedService.getHedgeRate(), hedgedService.getBackupWinCount(), hedgedService.getLatencySaved());
+
+            assertEquals(ROUNDS * CALLS, hedgedService.getRequestCount());
+            assertTrue(hedgedService.getHedgeCount() > 0, "Expects backup calls of slow calls");
+            assertTrue(hedgedService.getHedgeRate() <= MAX_HEDGE_RATIO, "Expects hedge rate in the budget");
+            assertTrue(hedgedService.getBackupWinCount() <= hedgedService.getHedgeCount());
+            assertEquals(0, notHedgedService.getHedgeCount(), "Expects no backup calls without budget");
+            assertTrue(hedgedP99 < notHedgedP99, "Expects hedging cuts p99, but got " + hedgedP99 + " ms and " + notHedgedP99 + " ms");
+        }
+    }
+
+    @Test
+    void testFailOnlyWhenAllCallsFail() throws Exception
+    {
+        ScriptedSlowService slowService = new ScriptedSlowService();
+        try (HedgedSlowService service = new HedgedSlowService(slowService, 0.5d, 20, 1.0d))
+        {
+            warmUp(service);
+
+            // the primary call fails after the backup call is sent, the backup one succeeds
+            slowService.script(-100, 150);
+            assertEquals(1, service.getMessage(1).get(1, TimeUnit.SECONDS).getId());
+
+            // both calls fail
+            slowService.script(-100, -150);
+            CompletableFuture<DelayedMessage> future = service.getMessage(2);
+            ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            assertEquals("Expected failure", error.getCause().getMessage());
+            assertEquals(1, service.getBackupWinCount());
+        }
+    }
+
+    @Test
+    void testRecordLosingPrimaryLatency() throws Exception
+    {
+        ScriptedSlowService slowService = new ScriptedSlowService();
+        try (HedgedSlowService service = new HedgedSlowService(slowService, 0.5d, 20, 1.0d))
+        {
+            warmUp(service);
+
+            // the backup call wins, the primary one runs to the end and its latency is counted
+            slowService.script(200, 5);
+            assertEquals(1, service.getMessage(1).get(1, TimeUnit.SECONDS).getId());
+            TimeUnit.MILLISECONDS.sleep(300);
+
+            assertEquals(1, service.getBackupWinCount());
+            assertTrue(service.getLatencySaved() >= 100, "Expects saved latency of the slow primary call, but got " + service.getLatencySaved());
+        }
+    }
+
+    // fills the latency window with fast calls to get the hedge threshold
+    private void warmUp(HedgedSlowService service)
+    {
+        for (int id = 0; id < 20; id++)
+        {
+            service.getMessage(id).join();
+        }
+        assertTrue(service.getThreshold() >= 0, "Expects the hedge threshold after warm up");
+    }
+
+    private LatencyModel createModel()
+    {
+        return new BimodalLatencyModel(1, new UniformLatencyModel(2, 5, 20), new UniformLatencyModel(3, 500, 600), 0.03d);
+    }
+
+    private List<Long> fanOut(IntFunction<CompletableFuture<DelayedMessage>> call)
+    {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        for (int round = 0; round < ROUNDS; round++)
+        {
+            List<CompletableFuture<DelayedMessage>> futures = new ArrayList<>(CALLS);
+            for (int id = 0; id < CALLS; id++)
+            {
+                long start = System.nanoTime();
+                int expectedId = id;
+                futures.add(call.apply(id).whenComplete((message, error) ->
+                {
+                    assertEquals(expectedId, message.getId());
+                    latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        }
+        return latencies;
+    }
+
+    /**
+     * {@link SlowService} with scripted delays, a negative delay fails the call after its absolute value, 5 ms by default.
+     */
+    private static final class ScriptedSlowService extends SlowService
+    {
+        private static final int DEFAULT_DELAY = 5;
+
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final Queue<Integer> delays = new ConcurrentLinkedQueue<>();
+
+        void script(Integer... delays)
+        {
+            this.delays.addAll(Arrays.asList(delays));
+        }
+
+        @Override
+        public CompletableFuture<DelayedMessage> getMessageAsync(int id)
+        {
+            Integer scripted = delays.poll();
+            int delay = scripted == null ? DEFAULT_DELAY : scripted;
+            CompletableFuture<DelayedMessage> future = new CompletableFuture<>();
+            scheduler.schedule(() -> delay < 0
+                    ? future.completeExceptionally(new IllegalStateException("Expected failure"))
+                    : future.complete(new DelayedMessage(id, delay, "Scripted message")), Math.abs(delay), TimeUnit.MILLISECONDS);
+            return future;
+        }
+    }
+
+    private long percentile(List<Long> latencies, double percentile)
+    {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) (percentile * (sorted.size() - 1)));
+    }
+}
@@ -0,0 +1,153 @@
+package com.sme.multithreading.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+
+/**
+ * Compares the blocking {@link SlowService#getMessage(int)} fan-out with the timer based {@link SlowService#getMessageAsync(int)}.
+ * <p>
+ * The blocking path parks one pool thread per call, the async path keeps only a pending timer and a future per call.
+ * </p>
+ */
+public class SlowServiceAsyncTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowServiceAsyncTest.class);
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private final SlowService slowService = new SlowService();
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final StopWatch stopWatch = new StopWatch();
+
+    @BeforeEach
+    void setUp()
+    {
+        stopWatch.reset();
+    }
+
+    @Test
+    void testGetMessageAsync() throws Exception
+    {
+        DelayedMessage message = slowService.getMessageAsync(7).get(1_500, TimeUnit.MILLISECONDS);
+
+        assertEquals(7, message.getId());
+        assertTrue(message.getDelay() < 1_000, "Expects delay in [0..1000) range");
+    }
+
+    @Test
+    void testCancelGetMessageAsync() throws Exception
+    {
+        CompletableFuture<DelayedMessage> future = slowService.getMessageAsync(1);
+
+        assertTrue(future.cancel(false) || future.isDone(), "Expects canceled or already completed future");
+        assertTrue(future.isDone());
+        if (future.isCancelled())
+        {
+            assertThrows(CancellationException.class, future::join);
+        }
+    }
+
+    /**
+     * <pre>
+     * Benchmark plan:
+     * 1) fan out 10 000 calls through the async API and wait all of them;
+     * 2) fan out 1 000 calls through the blocking API in the cached thread pool;
+     * 3) log created threads, peak RSS and wall time of both paths.
+     * </pre>
+     * The async path runs first, because peak RSS is a process high-water mark.
+     */
+    @Test
+    void testCompareAsyncWithBlockingPath() throws Exception
+    {
+        final int asyncCalls = 10_000;
+        final int blockingCalls = 1_000;
+
+        long startedThreads = threadMXBean.getTotalStartedThreadCount();
+        stopWatch.start();
+
+        List<CompletableFuture<DelayedMessage>> futures = IntStream.range(0, asyncCalls)
+                .mapToObj(slowService::getMessageAsync)
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+
+        stopWatch.stop();
+        long asyncThreads = threadMXBean.getTotalStartedThreadCount() - startedThreads;
+        long asyncTime = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        String asyncPeakRss = readProcStatus("VmHWM");
+
+        assertEquals(asyncCalls, futures.stream().map(CompletableFuture::join).count());
+
+        List<Callable<DelayedMessage>> tasks = new ArrayList<>(blockingCalls);
+        IntStream.range(0, blockingCalls).forEach(id -> tasks.add(() -> slowService.getMessage(id)));
+
+        stopWatch.reset();
+        startedThreads = threadMXBean.getTotalStartedThreadCount();
+        stopWatch.start();
+
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        List<Future<DelayedMessage>> blockingResult = executorService.invokeAll(tasks);
+        executorService.shutdown();
+
+        stopWatch.stop();
+        long blockingThreads = threadMXBean.getTotalStartedThreadCount() - startedThreads;
+        long blockingTime = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        String blockingPeakRss = readProcStatus("VmHWM");
+
+        assertEquals(blockingCalls, blockingResult.size());
+
+        LOGGER.debug("Async path: {} calls, {} created threads, {} ms, peak RSS {}", asyncCalls, asyncThreads, asyncTime, asyncPeakRss);
+        LOGGER.debug("Blocking path: {} calls, {} created threads, {} ms, peak RSS {}", blockingCalls, blockingThreads, blockingTime, blockingPeakRss);
+
+        assertTrue(asyncThreads <= 1, "Expects at most the shared scheduler thread to be started in async path");
+        assertTrue(blockingThreads > asyncThreads, "Expects blocking path to park a thread per call");
+    }
+
+    private String readProcStatus(String key)
+    {
+        if (!Files.exists(PROC_STATUS))
+        {
+            return "n/a";
+        }
+
+        try
+        {
+            return Files.readAllLines(PROC_STATUS)
+                    .stream()
+                    .filter(line -> line.startsWith(key + ":"))
+                    .map(line -> line.substring(key.length() + 1).trim())
+                    .findFirst()
+                    .orElse("n/a");
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Cannot read {}", PROC_STATUS, e);
+            return "n/a";
+        }
+    }
+}
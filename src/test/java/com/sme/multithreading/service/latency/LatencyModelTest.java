@@ -0,0 +1,168 @@
+package com.sme.multithreading.service.latency;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.model.DelayedMessage;
+import com.sme.multithreading.service.SlowService;
+
+/**
+ * Unit tests of {@link LatencyModel} implementations.
+ */
+public class LatencyModelTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatencyModelTest.class);
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    void testSameSeedReplaysSameDelays() throws Exception
+    {
+        assertArrayEquals(sample(new UniformLatencyModel(42, 0, 1_000), 100), sample(new UniformLatencyModel(42, 0, 1_000), 100));
+        assertArrayEquals(sample(new LogNormalLatencyModel(42, 50, 1, 10_000), 100), sample(new LogNormalLatencyModel(42, 50, 1, 10_000), 100));
+    }
+
+    @Test
+    void testUniform() throws Exception
+    {
+        int[] delays = sortedSample(new UniformLatencyModel(1, 10, 20));
+
+        assertEquals(10, delays[0]);
+        assertEquals(19, delays[SAMPLES - 1]);
+    }
+
+    @Test
+    void testLogNormal() throws Exception
+    {
+        int[] delays = sortedSample(new LogNormalLatencyModel(1, 100, 0.5, 10_000));
+
+        LOGGER.debug("Log-normal: p50={}, p99={}, max={}", percentile(delays, 0.5), percentile(delays, 0.99), delays[SAMPLES - 1]);
+        assertEquals(100, percentile(delays, 0.5), 5);
+        assertTrue(percentile(delays, 0.99) > 2 * percentile(delays, 0.5), "Expects a long right tail");
+    }
+
+    @Test
+    void testPareto() throws Exception
+    {
+        int[] delays = sortedSample(new ParetoLatencyModel(1, 10, 1.5, 5_000));
+
+        LOGGER.debug("Pareto: p50={}, p99={}, p999={}", percentile(delays, 0.5), percentile(delays, 0.99), percentile(delays, 0.999));
+        assertEquals(10, delays[0]);
+        assertTrue(percentile(delays, 0.99) > 10 * percentile(delays, 0.5), "Expects a heavy tail");
+    }
+
+    @Test
+    void testBimodal() throws Exception
+    {
+        LatencyModel model = new BimodalLatencyModel(1, new UniformLatencyModel(2, 0, 10), new UniformLatencyModel(3, 500, 600), 0.1);
+        int[] delays = sortedSample(model);
+
+        long slowCount = Arrays.stream(delays).filter(delay -> delay >= 500).count();
+        assertEquals(0.1, (double) slowCount / SAMPLES, 0.01);
+        assertEquals(0, Arrays.stream(delays).filter(delay -> delay >= 10 && delay < 500).count(), "Expects no delay between the modes");
+    }
+
+    @Test
+    void testTrace() throws Exception
+    {
+        Path trace = Files.createTempFile("latency", ".trace");
+        try
+        {
+            Files.write(trace, Arrays.asList("# recorded delays", "5", "", "100", "7"), StandardCharsets.UTF_8);
+            TraceLatencyModel model = new TraceLatencyModel(trace);
+
+            int[] delays = IntStream.range(0, 5).map(i -> model.nextDelay()).toArray();
+            assertArrayEquals(new int[] {5, 100, 7, 5, 100}, delays);
+
+            // another thread replays the whole trace with own cursor
+            int[][] other = new int[1][];
+            Thread thread = new Thread(() -> other[0] = IntStream.range(0, 3).map(i -> model.nextDelay()).sorted().toArray());
+            thread.start();
+            thread.join();
+            assertArrayEquals(new int[] {5, 7, 100}, other[0]);
+            assertEquals(7, model.nextDelay());
+        }
+        finally
+        {
+            Files.delete(trace);
+        }
+    }
+
+    @Test
+    void testSlowServiceWithModel() throws Exception
+    {
+        SlowService slowService = new SlowService(new TraceLatencyModel(new int[] {3}));
+        DelayedMessage message = slowService.getMessage(1);
+
+        assertEquals(3, message.getDelay());
+    }
+
+    /**
+     * Compares the shared {@link Random} with the per thread generator of {@link UniformLatencyModel} under the fan-out of 8 threads.
+     */
+    @Test
+    void testCompareWithSharedRandom() throws Exception
+    {
+        Random random = new Random();
+        long sharedTime = measure(() -> random.nextInt(1_000));
+        UniformLatencyModel model = new UniformLatencyModel(1, 0, 1_000);
+        long modelTime = measure(model::nextDelay);
+
+        LOGGER.debug("Shared Random: {} ms, per thread generator: {} ms", sharedTime, modelTime);
+    }
+
+    private long measure(IntSupplier supplier) throws InterruptedException
+    {
+        final int threads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        StopWatch stopWatch = StopWatch.createStarted();
+
+        IntStream.range(0, threads).forEach(thread -> executorService.execute(() ->
+        {
+            long sum = 0;
+            for (int i = 0; i < 1_000_000; i++)
+            {
+                sum += supplier.getAsInt();
+            }
+            LOGGER.trace("Sum {} in {} thread", sum, Thread.currentThread().getName());
+        }));
+
+        executorService.shutdown();
+        executorService.awaitTermination(1, TimeUnit.MINUTES);
+        stopWatch.stop();
+        return stopWatch.getTime(TimeUnit.MILLISECONDS);
+    }
+
+    private int[] sample(LatencyModel model, int count)
+    {
+        return IntStream.range(0, count).map(i -> model.nextDelay()).toArray();
+    }
+
+    private int[] sortedSample(LatencyModel model)
+    {
+        int[] delays = sample(model, SAMPLES);
+        Arrays.sort(delays);
+        return delays;
+    }
+
+    private int percentile(int[] sortedDelays, double percentile)
+    {
+        return sortedDelays[(int) (percentile * (sortedDelays.length - 1))];
+    }
+}
@@ -0,0 +1,194 @@
+package com.sme.multithreading.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sme.multithreading.util.HashedWheelTimer.Timeout;
+
+/**
+ * Unit tests of {@link HashedWheelTimer}.
+ */
+public class HashedWheelTimerTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimerTest.class);
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 512);
+
+    @AfterEach
+    void tearDown()
+    {
+        timer.close();
+    }
+
+    @Test
+    void testScheduleNotEarlierThanDelay() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong firedAfter = new AtomicLong();
+        long start = System.nanoTime();
+
+        Timeout timeout = timer.schedule(() ->
+        {
+            firedAfter.set(System.nanoTime() - start);
+            latch.countDown();
+        }, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertTrue(firedAfter.get() >= TimeUnit.MILLISECONDS.toNanos(50), "Expects the task not earlier than the delay");
+        LOGGER.debug("Fired after {} ms", TimeUnit.NANOSECONDS.toMillis(firedAfter.get()));
+    }
+
+    @Test
+    void testScheduleLongerThanWheelRound() throws Exception
+    {
+        // 2 rounds of 64 ticks wheel
+        try (HashedWheelTimer smallTimer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS, 64))
+        {
+            CountDownLatch latch = new CountDownLatch(1);
+            long start = System.nanoTime();
+            smallTimer.schedule(latch::countDown, 150, TimeUnit.MILLISECONDS);
+
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150), "Expects the task waits the remaining rounds");
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception
+    {
+        AtomicInteger fired = new AtomicInteger();
+        Timeout timeout = timer.schedule(fired::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel(), "Expects the second cancel does nothing");
+        assertEquals(0, timer.getPendingTimeouts());
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertEquals(0, fired.get());
+    }
+
+    @Test
+    void testHugeDelay() throws Exception
+    {
+        AtomicInteger fired = new AtomicInteger();
+        Timeout timeout = timer.schedule(fired::incrementAndGet, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertEquals(0, fired.get(), "Expects the overflowed deadline is not in the past");
+        assertEquals(1, timer.getPendingTimeouts());
+        assertTrue(timeout.cancel());
+    }
+
+    @Test
+    void testErrorInTask() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(() ->
+        {
+            throw new AssertionError("Expected error");
+        }, 1, TimeUnit.MILLISECONDS);
+        timer.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS), "Expects the driver survives the error");
+    }
+
+    @Test
+    void testCloseFromTask() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        timer.schedule(() ->
+        {
+            timer.close();
+            latch.countDown();
+        }, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS), "Expects close does not join the driver thread in own task");
+    }
+
+    @Test
+    void testCompareWithScheduledThreadPool100K() throws Exception
+    {
+        compareWithScheduledThreadPool(100_000);
+    }
+
+    // 1M timeouts take a lot of memory and time, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void testCompareWithScheduledThreadPool1M() throws Exception
+    {
+        compareWithScheduledThreadPool(1_000_000);
+    }
+
+    /**
+     * <pre>
+     * Benchmark plan:
+     * 1) schedule the given count of timeouts with random delay in [100..1000) ms range;
+     * 2) cancel every second timeout;
+     * 3) wait the rest ones to fire;
+     * 4) log schedule and cancel time of the wheel and {@link ScheduledThreadPoolExecutor}.
+     * </pre>
+     */
+    private void compareWithScheduledThreadPool(int count) throws Exception
+    {
+        long[] delays = ThreadLocalRandom.current().longs(count, 100, 1_000).toArray();
+
+        CountDownLatch wheelLatch = new CountDownLatch(count / 2);
+        Timeout[] timeouts = new Timeout[count];
+        StopWatch stopWatch = StopWatch.createStarted();
+        for (int i = 0; i < count; i++)
+        {
+            timeouts[i] = timer.schedule(wheelLatch::countDown, delays[i], TimeUnit.MILLISECONDS);
+        }
+        long wheelSchedule = stopWatch.getTime(TimeUnit.MILLISECONDS);
+        for (int i = 1; i < count; i += 2)
+        {
+            timeouts[i].cancel();
+        }
+        long wheelCancel = stopWatch.getTime(TimeUnit.MILLISECONDS) - wheelSchedule;
+        assertTrue(wheelLatch.await(10, TimeUnit.SECONDS), "Expects all not canceled timeouts fired");
+        stopWatch.stop();
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(true);
+        CountDownLatch executorLatch = new CountDownLatch(count / 2);
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[count];
+        StopWatch executorStopWatch = StopWatch.createStarted();
+        for (int i = 0; i < count; i++)
+        {
+            futures[i] = executor.schedule(executorLatch::countDown, delays[i], TimeUnit.MILLISECONDS);
+        }
+        long executorSchedule = executorStopWatch.getTime(TimeUnit.MILLISECONDS);
+        for (int i = 1; i < count; i += 2)
+        {
+            futures[i].cancel(false);
+        }
+        long executorCancel = executorStopWatch.getTime(TimeUnit.MILLISECONDS) - executorSchedule;
+        assertTrue(executorLatch.await(10, TimeUnit.SECONDS), "Expects all not canceled tasks fired");
+        executorStopWatch.stop();
+        executor.shutdown();
+
+        LOGGER.debug("{} timeouts in wheel: schedule {} ms, cancel {} ms, total {} ms", count, wheelSchedule, wheelCancel,
+                stopWatch.getTime(TimeUnit.MILLISECONDS));
+        LOGGER.debug("{} tasks in ScheduledThreadPoolExecutor: schedule {} ms, cancel {} ms, total {} ms", count, executorSchedule, executorCancel,
+                executorStopWatch.getTime(TimeUnit.MILLISECONDS));
+
+        assertEquals(0, timer.getPendingTimeouts());
+    }
+}
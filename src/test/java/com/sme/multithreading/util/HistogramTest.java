@@ -0,0 +1,74 @@
+package com.sme.multithreading.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link Histogram}.
+ */
+public class HistogramTest
+{
+    private static final int THREADS = 4;
+    private static final int VALUES = 100_000;
+
+    @Test
+    void testPercentiles() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= VALUES; value++)
+        {
+            histogram.record(value);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(VALUES, snapshot.getCount());
+        assertEquals(VALUES, snapshot.getMax());
+        assertEquals((VALUES + 1) / 2.0, snapshot.getMean(), 0.001);
+        assertWithinPrecision(VALUES / 2, snapshot.getValueAtPercentile(50));
+        assertWithinPrecision(VALUES * 99 / 100, snapshot.getValueAtPercentile(99));
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(VALUES, snapshot.getValueAtPercentile(100));
+
+        histogram.record(-1);
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(0));
+    }
+
+    @Test
+    void testSnapshotAndResetConcurrently() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            threads.add(new Thread(() ->
+            {
+                for (int value = 0; value < VALUES; value++)
+                {
+                    histogram.record(value);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        // every value is counted in exactly one snapshot
+        long count = 0;
+        while (threads.stream().anyMatch(Thread::isAlive))
+        {
+            count += histogram.snapshotAndReset().getCount();
+        }
+        count += histogram.snapshotAndReset().getCount();
+
+        assertEquals(THREADS * VALUES, count);
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    private void assertWithinPrecision(long expected, long actual)
+    {
+        assertTrue(Math.abs(expected - actual) <= expected / Histogram.SUB_BUCKETS, "Expects " + expected + ", but got " + actual);
+    }
+}